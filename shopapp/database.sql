@@ -126,4 +126,40 @@ CREATE TABLE order_details(
     number_of_products INT CHECK(number_of_products > 0),
     total_money FLOAT CHECK(total_money >= 0),
     color VARCHAR(20) DEFAULT '' COMMENT 'color of the product',
-);
\ No newline at end of file
+);
+-- Keyset (seek) pagination of products: ORDER BY created_at DESC, id DESC
+CREATE INDEX idx_products_created_at_id ON products(created_at, id);
+
+-- Keyset (seek) pagination of the products of one category:
+-- WHERE category_id = ? ORDER BY created_at DESC, id DESC
+CREATE INDEX idx_products_category_id_created_at_id ON products(category_id, created_at, id);
+
+-- Resized copies of the product images (e.g. 128, 512 and 1024 px wide),
+-- generated in the background after each upload
+CREATE TABLE product_image_variants(
+    id INT PRIMARY KEY AUTO_INCREMENT,
+    product_image_id INT NOT NULL,
+    CONSTRAINT fk_product_image_variants_product_image_id
+        FOREIGN KEY (product_image_id)
+        REFERENCES product_images(id) ON DELETE CASCADE,
+    width INT NOT NULL COMMENT 'width in pixels',
+    image_url VARCHAR(300) NOT NULL COMMENT 'file name of the resized image',
+    UNIQUE (product_image_id, width)
+);
+
+-- Content-addressed image files (uploads/ab/cd/<sha-256>.<extension>): identical uploads
+-- are stored once, ref_count is the number of product images using the file
+CREATE TABLE image_blobs(
+    blob_key VARCHAR(80) PRIMARY KEY COMMENT 'sha-256 of the bytes and file extension',
+    size BIGINT NOT NULL COMMENT 'size in bytes',
+    ref_count INT NOT NULL DEFAULT 0 COMMENT 'number of product_images rows using the file',
+    created_at DATETIME DEFAULT CURRENT_TIMESTAMP
+);
+ALTER TABLE image_blobs ADD COLUMN deleting_since DATETIME NULL
+    COMMENT 'set while a node deletes the unreferenced file, no lock is held meanwhile';
+
+-- Token revocation (logout): tokens.token holds the id of the JWT (jti claim).
+-- Each node polls the tokens revoked since its last poll and expired rows are purged
+ALTER TABLE tokens ADD COLUMN revoked_at DATETIME NULL COMMENT 'set when revoked is set';
+CREATE INDEX idx_tokens_revoked_at ON tokens(revoked_at);
+CREATE INDEX idx_tokens_expiration_date ON tokens(expiration_date);
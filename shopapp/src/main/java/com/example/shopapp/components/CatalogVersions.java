@@ -0,0 +1,128 @@
+package com.example.shopapp.components;
+
+import com.example.shopapp.models.Category;
+import com.example.shopapp.repositories.ProductRepository;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+// Versions of the product and category catalogs, derived from the database
+// They are used as ETags of the list endpoints, so a conditional GET can be answered
+// with 304 Not Modified before anything is read from the database.
+// A products version is the number of products and their latest updated_at, for all products
+// and for each category, so that the pages of a category stay cacheable while products of
+// other categories change. Every node computes the same versions from the same rows: a client
+// moving between nodes keeps its cached pages, and no node answers 304 for a state it never saw
+// once it re-read the database. It does after each write through this node and every
+// product.counters.reconcile-interval for the writes of other nodes and direct database writes.
+// Limit: updated_at is stored to the second, so an update made in the same second as the
+// latest one of its category, and without adding or removing a product, may keep the version.
+// The categories version is a hash of the category snapshot, re-read on its own schedule.
+@Slf4j
+@Component
+public class CatalogVersions {
+
+    private final ProductRepository productRepository;
+
+    // products version of each category, null until read from the database: no ETag then
+    private volatile ProductVersions productVersions;
+    private volatile String categoriesVersion;
+
+    public CatalogVersions(ProductRepository productRepository) {
+        this.productRepository = productRepository;
+    }
+
+    // products were written through this node, called after the commit
+    public void productsChanged() {
+        try {
+            refreshProducts();
+        } catch (DataAccessException e) {
+            // no ETag rather than a version that may not include the write
+            productVersions = null;
+            log.warn("Cannot read the products version: {}", e.getMessage());
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        productsChanged();
+    }
+
+    @Scheduled(
+            initialDelayString = "${product.counters.reconcile-interval}",
+            fixedDelayString = "${product.counters.reconcile-interval}")
+    public void scheduledRefresh() {
+        productsChanged();
+    }
+
+    // the category snapshot was (re)loaded
+    public void categoriesChanged(List<Category> categories) {
+        categoriesVersion = categories.size() + "-" + Integer.toHexString(categories.hashCode());
+    }
+
+    // categoryId is null for the list of all products
+    // null when the version is unknown, the request is then served without ETag
+    public String productsETag(Long categoryId) {
+        ProductVersions versions = productVersions;
+        if (versions == null) {
+            return null;
+        }
+        if (categoryId == null) {
+            return "products-" + versions.all();
+        }
+        return "products-c" + categoryId + "-"
+                + versions.byCategory().getOrDefault(categoryId, "0");
+    }
+
+    public String categoriesETag() {
+        String version = categoriesVersion;
+        return version == null ? null : "categories-" + version;
+    }
+
+    // synchronized so that the last published versions are always read after the last write
+    private synchronized void refreshProducts() {
+        List<Object[]> rows = productRepository.versionGroupByCategory();
+        Map<Long, String> byCategory = new HashMap<>();
+        long total = 0;
+        LocalDateTime latest = null;
+        for (Object[] row : rows) {
+            long count = (Long) row[1];
+            LocalDateTime updatedAt = toLocalDateTime(row[2]);
+            if (row[0] != null) {
+                byCategory.put((Long) row[0], version(count, updatedAt));
+            }
+            total += count;
+            if (updatedAt != null && (latest == null || updatedAt.isAfter(latest))) {
+                latest = updatedAt;
+            }
+        }
+        productVersions = new ProductVersions(version(total, latest), Map.copyOf(byCategory));
+    }
+
+    // read as UTC, so that nodes in different time zones compute the same version
+    private static String version(long count, LocalDateTime updatedAt) {
+        if (updatedAt == null) {
+            return Long.toString(count);
+        }
+        long micros = updatedAt.toEpochSecond(ZoneOffset.UTC) * 1_000_000
+                + updatedAt.getNano() / 1_000;
+        return count + "-" + Long.toString(micros, 36);
+    }
+
+    private static LocalDateTime toLocalDateTime(Object value) {
+        return value instanceof Timestamp timestamp ? timestamp.toLocalDateTime()
+                : (LocalDateTime) value;
+    }
+
+    private record ProductVersions(String all, Map<Long, String> byCategory) {
+    }
+}
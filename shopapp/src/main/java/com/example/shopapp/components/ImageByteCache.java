@@ -0,0 +1,125 @@
+package com.example.shopapp.components;
+
+import com.example.shopapp.storage.BlobMetadata;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.time.Duration;
+import java.util.Optional;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+// Bytes of the most requested product images, kept off-heap
+// A few images (hero products, thumbnails of the first page) get most of the requests,
+// they are served from memory instead of the BlobStore. The content is held in direct
+// ByteBuffers, so a large cache does not grow the heap or slow down the GC, and it is
+// bounded by total bytes (product.images.cache-max-size). Caffeine evicts with W-TinyLFU,
+// a one-off request for a cold image does not push out the hot ones.
+// Images are immutable (content addressed or unique names), an entry only has to be
+// invalidated when the image is deleted (ImageStore.delete).
+// The direct buffers count against -XX:MaxDirectMemorySize (the heap size by default).
+// Images too large to be cached, or missing, are remembered for a while (key only): their
+// requests go straight to the store, without a stat() here nor a cache miss each time.
+// Metrics: cache.* with the tag cache=product-images, product.images.cache.hit-ratio and
+// product.images.cache.resident-bytes
+@Slf4j
+@Component
+public class ImageByteCache {
+
+    // keys not worth looking up again, bounded so that random keys cannot fill the memory
+    private static final int MAXIMUM_UNCACHEABLE_KEYS = 10_000;
+    // a missing image may be uploaded again (same bytes, same key)
+    private static final Duration UNCACHEABLE_TTL = Duration.ofMinutes(10);
+
+    private final Cache<String, CachedImage> cache;
+    private final Cache<String, Boolean> uncacheableKeys;
+    private final long maximumEntrySize;
+
+    public ImageByteCache(
+            @Value("${product.images.cache-max-size}") DataSize maximumSize,
+            @Value("${product.images.cache-max-entry-size}") DataSize maximumEntrySize,
+            MeterRegistry meterRegistry
+    ) {
+        this.maximumEntrySize = Math.min(maximumEntrySize.toBytes(), Integer.MAX_VALUE);
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maximumSize.toBytes())
+                .<String, CachedImage>weigher((key, image) -> image.content().capacity())
+                .recordStats()
+                .build();
+        this.uncacheableKeys = Caffeine.newBuilder()
+                .maximumSize(MAXIMUM_UNCACHEABLE_KEYS)
+                .expireAfterWrite(UNCACHEABLE_TTL)
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "product-images");
+        Gauge.builder("product.images.cache.hit-ratio", cache,
+                        imageCache -> imageCache.stats().hitRate())
+                .description("Share of the image requests served from memory")
+                .register(meterRegistry);
+        Gauge.builder("product.images.cache.resident-bytes", cache,
+                        imageCache -> imageCache.policy().eviction()
+                                .map(eviction -> eviction.weightedSize().orElse(0))
+                                .orElse(0L))
+                .description("Off-heap memory used by the cached images")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    // The cached image, loaded from the store on a miss
+    // Empty if the image does not exist, is larger than the maximum entry size or cannot
+    // be read; the caller then serves it from the store directly
+    Optional<CachedImage> get(String key, ImageStore imageStore) {
+        if (uncacheableKeys.getIfPresent(key) != null) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.ofNullable(cache.get(key, missingKey -> load(missingKey, imageStore)));
+        } catch (UncheckedIOException e) {
+            log.warn("Cannot cache image {}: {}", key, e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    void invalidate(String key) {
+        cache.invalidate(key);
+        uncacheableKeys.invalidate(key);
+    }
+
+    private CachedImage load(String key, ImageStore imageStore) {
+        try {
+            Optional<BlobMetadata> metadata = imageStore.stat(key);
+            if (metadata.isEmpty() || metadata.get().size() > maximumEntrySize) {
+                uncacheableKeys.put(key, Boolean.TRUE);
+                return null;
+            }
+            ByteBuffer content = ByteBuffer.allocateDirect((int) metadata.get().size());
+            try (InputStream inputStream = imageStore.open(key, 0);
+                 ReadableByteChannel channel = Channels.newChannel(inputStream)) {
+                while (content.hasRemaining()) {
+                    if (channel.read(content) < 0) {
+                        throw new IOException("Unexpected end of image " + key);
+                    }
+                }
+            }
+            return new CachedImage(content.flip().asReadOnlyBuffer(),
+                    metadata.get().lastModified());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // content is shared between requests, readers must use duplicate()
+    // lastModified is in milliseconds since the epoch
+    public record CachedImage(ByteBuffer content, long lastModified) {
+
+    }
+}
@@ -0,0 +1,386 @@
+package com.example.shopapp.components;
+
+import com.example.shopapp.components.ImageByteCache.CachedImage;
+import com.example.shopapp.storage.BlobMetadata;
+import com.example.shopapp.storage.BlobStore;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+import java.util.Optional;
+import java.util.regex.Pattern;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+// Content-addressed storage of the product images
+// A file is named after the SHA-256 of its bytes, computed while the upload is streamed to a
+// temporary file, and stored in the BlobStore under a fan-out layout: ab/cd/abcd...ef.jpg.
+// Identical uploads are stored once, image_blobs counts the product images referencing each
+// file and the file (with its resized variants) is deleted when the last one is released.
+// A deletion is claimed in image_blobs (deleting_since) with one short statement, the files
+// are deleted without holding any lock, then the row is removed. A store of the same bytes
+// waits while the claim is recent and adds its reference once the row is gone, so nodes
+// sharing the BlobStore never delete a file another node has just referenced again. A claim
+// older than DELETION_TIMEOUT was abandoned (node stopped) and is taken over.
+// Files uploaded before content addressing (UUID_name.jpg) stay flat at the root.
+@Slf4j
+@Component
+public class ImageStore {
+
+    // <sha-256>[_<extension of the original>][_<variant width>][.<extension>]
+    private static final Pattern CONTENT_KEY = Pattern.compile(
+            "([0-9a-f]{64})(_[a-z0-9]{0,5})?(_\\d{1,5})?(\\.[a-z0-9]{1,5})?");
+    private static final int ORPHAN_SWEEP_BATCH_SIZE = 100;
+    private static final Duration DELETION_TIMEOUT = Duration.ofMinutes(1);
+    private static final long DELETION_POLL_MILLIS = 50;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final BlobStore blobStore;
+    private final ImageByteCache imageByteCache;
+    private final Duration directUrlValidity;
+    // short transactions on an image_blobs row, independent of the caller's
+    private final TransactionTemplate newTransaction;
+
+    public ImageStore(
+            JdbcTemplate jdbcTemplate,
+            BlobStore blobStore,
+            ImageByteCache imageByteCache,
+            PlatformTransactionManager transactionManager,
+            @Value("${storage.direct-url-validity}") Duration directUrlValidity
+    ) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.blobStore = blobStore;
+        this.imageByteCache = imageByteCache;
+        this.directUrlValidity = directUrlValidity;
+        this.newTransaction = new TransactionTemplate(transactionManager);
+        newTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    // Stores the bytes and returns the key to save as image_url
+    // Every call adds a reference, to be given back with release()
+    public String store(InputStream inputStream, String originalFilename) throws IOException {
+        // spooled: the key is only known once the last byte is read, and BlobStore.put needs
+        // the size up front, which a multipart part does not declare
+        Path tempFile = Files.createTempFile("image-", ".part");
+        try {
+            MessageDigest digest = sha256();
+            long size;
+            try (DigestInputStream digestInputStream = new DigestInputStream(inputStream, digest);
+                 OutputStream outputStream = Files.newOutputStream(tempFile)) {
+                size = digestInputStream.transferTo(outputStream);
+            }
+            String hash = HexFormat.of().formatHex(digest.digest());
+            String key = hash + extension(originalFilename);
+            String blobKey = blobKey(key);
+            // the reference is counted first: no deletion of the file can start from then on
+            addReference(key, size);
+            try {
+                // when the same bytes are already stored, only the reference count changes
+                if (blobStore.stat(blobKey).isEmpty()) {
+                    blobStore.putFile(blobKey, tempFile, contentType(key));
+                }
+            } catch (IOException | RuntimeException e) {
+                // nothing uses the key yet, a partial file goes with the reference
+                try {
+                    newTransaction.executeWithoutResult(status -> decrementReferences(key));
+                    deleteIfUnreferenced(key);
+                } catch (RuntimeException releaseException) {
+                    e.addSuppressed(releaseException);
+                }
+                throw e;
+            }
+            return key;
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    // Removes one reference, the file and its variants are deleted with the last one
+    // Within a transaction the reference is removed with the caller's changes and the file is
+    // deleted after the commit; a rollback leaves both untouched.
+    public void release(String key) {
+        if (!CONTENT_KEY.matcher(key).matches()) {
+            // legacy files were never shared
+            afterCommit(() -> deleteQuietly(key));
+            return;
+        }
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            decrementReferences(key);
+        } else {
+            newTransaction.executeWithoutResult(status -> decrementReferences(key));
+        }
+        afterCommit(() -> deleteIfUnreferenced(key));
+    }
+
+    // Deletes the files left unreferenced by a node that stopped before deleting them
+    @Scheduled(
+            initialDelayString = "${storage.orphan-sweep-interval}",
+            fixedDelayString = "${storage.orphan-sweep-interval}")
+    public void deleteOrphans() {
+        try {
+            jdbcTemplate.queryForList("SELECT blob_key FROM image_blobs WHERE ref_count = 0 "
+                            + "LIMIT " + ORPHAN_SWEEP_BATCH_SIZE, String.class)
+                    .forEach(this::deleteIfUnreferenced);
+        } catch (DataAccessException e) {
+            log.warn("Cannot delete the unreferenced images: {}", e.getMessage());
+        }
+    }
+
+    // true if the key can be an image_url (no "..", no sub-directory)
+    public boolean isValidKey(String key) {
+        return blobKey(key) != null;
+    }
+
+    public Optional<BlobMetadata> stat(String key) throws IOException {
+        return blobStore.stat(requireBlobKey(key));
+    }
+
+    public InputStream open(String key, long offset) throws IOException {
+        return blobStore.get(requireBlobKey(key), offset);
+    }
+
+    public void put(String key, byte[] content) throws IOException {
+        blobStore.put(requireBlobKey(key), new ByteArrayInputStream(content), content.length,
+                contentType(key));
+    }
+
+    public void delete(String key) throws IOException {
+        blobStore.delete(requireBlobKey(key));
+        imageByteCache.invalidate(key);
+    }
+
+    // The bytes of a small image from memory, see ImageByteCache
+    // Empty if the image is too large to be cached or does not exist
+    public Optional<CachedImage> cachedContent(String key) {
+        requireBlobKey(key);
+        return imageByteCache.get(key, this);
+    }
+
+    // See BlobStore.directUrl and BlobStore.localPath
+    public Optional<URI> directUrl(String key) {
+        return blobStore.directUrl(requireBlobKey(key), directUrlValidity);
+    }
+
+    public Optional<Path> localPath(String key) {
+        return blobStore.localPath(requireBlobKey(key));
+    }
+
+    // Key of the resized variant of an image, stored next to it
+    // Variants of identical uploads have the same key, so they are generated once. The key of
+    // the original is part of it (abcd.png -> abcd_png_320.jpg): the variants are deleted with
+    // their original, never with another file of the same bytes (abcd.jpg).
+    public static String variantKey(String key, int width, String format) {
+        if (CONTENT_KEY.matcher(key).matches()) {
+            return variantPrefix(key) + width + "." + format;
+        }
+        int extensionStart = key.lastIndexOf('.');
+        String baseName = extensionStart < 0 ? key : key.substring(0, extensionStart);
+        return baseName + "_" + width + "." + format;
+    }
+
+    // Path of the image in the BlobStore, null if the key is not a valid image key
+    private static String blobKey(String key) {
+        if (key == null || key.isBlank()) {
+            return null;
+        }
+        if (CONTENT_KEY.matcher(key).matches()) {
+            return sharded(key);
+        }
+        // a plain file name at the root
+        if (!key.startsWith(".") && !key.contains("/") && !key.contains("\\")) {
+            return key;
+        }
+        return null;
+    }
+
+    private static String requireBlobKey(String key) {
+        String blobKey = blobKey(key);
+        if (blobKey == null) {
+            throw new IllegalArgumentException("Invalid image key: " + key);
+        }
+        return blobKey;
+    }
+
+    // abcd.png -> abcd_png_, abcd -> abcd__
+    private static String variantPrefix(String key) {
+        int extensionStart = key.indexOf('.');
+        return extensionStart < 0 ? key + "__"
+                : key.substring(0, extensionStart) + "_" + key.substring(extensionStart + 1) + "_";
+    }
+
+    // ab/cd/abcd...: the first two bytes of the hash are the directories
+    private static String sharded(String key) {
+        return key.substring(0, 2) + "/" + key.substring(2, 4) + "/" + key;
+    }
+
+    private void deleteQuietly(String key) {
+        try {
+            delete(key);
+        } catch (IOException | RuntimeException e) {
+            log.warn("Cannot delete image {}: {}", key, e.getMessage());
+        }
+    }
+
+    private void decrementReferences(String key) {
+        jdbcTemplate.update("UPDATE image_blobs SET ref_count = ref_count - 1 "
+                + "WHERE blob_key = ? AND ref_count > 0", key);
+    }
+
+    // Adds one reference to the row of the key, created if needed
+    // Waits while another call (of any node) deletes the file: the reference is added to the
+    // new row once that deletion is done, and the file is then stored again.
+    private void addReference(String key, long size) throws IOException {
+        while (!Boolean.TRUE.equals(newTransaction.execute(status -> {
+            jdbcTemplate.update("INSERT INTO image_blobs (blob_key, size, ref_count) "
+                    + "VALUES (?, ?, 0) ON DUPLICATE KEY UPDATE ref_count = ref_count", key, size);
+            return jdbcTemplate.update("UPDATE image_blobs "
+                    + "SET ref_count = ref_count + 1, deleting_since = NULL "
+                    + "WHERE blob_key = ? AND (deleting_since IS NULL OR deleting_since < ?)",
+                    key, LocalDateTime.now().minus(DELETION_TIMEOUT)) == 1;
+        }))) {
+            try {
+                Thread.sleep(DELETION_POLL_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while image " + key
+                        + " is deleted");
+            }
+        }
+    }
+
+    // Deletes the file, its variants and its row if the file is still unreferenced
+    // The deletion is claimed first, no lock is held while the files are deleted.
+    private void deleteIfUnreferenced(String key) {
+        // DATETIME keeps whole seconds, the claim is compared with what was stored
+        LocalDateTime claim = LocalDateTime.now().withNano(0);
+        try {
+            if (!claimDeletion(key, claim)) {
+                return;
+            }
+        } catch (RuntimeException e) {
+            log.warn("Cannot delete image {}: {}", key, e.getMessage());
+            return;
+        }
+        try {
+            deleteFiles(key);
+        } catch (IOException | RuntimeException e) {
+            // the row stays with ref_count = 0 and without claim, deleteOrphans retries
+            log.warn("Cannot delete image {}: {}", key, e.getMessage());
+            releaseClaim(key, claim);
+            return;
+        }
+        try {
+            Integer deleted = newTransaction.execute(status -> jdbcTemplate.update(
+                    "DELETE FROM image_blobs WHERE blob_key = ? AND ref_count = 0 "
+                            + "AND deleting_since = ?", key, claim));
+            if (deleted == null || deleted == 0) {
+                // only after DELETION_TIMEOUT: a store took the claim over and may have found
+                // the file before it was deleted
+                log.warn("Image {} was referenced again while it was deleted", key);
+            }
+        } catch (RuntimeException e) {
+            // the files are gone, the claim expires and deleteOrphans removes the row
+            log.warn("Cannot delete the row of image {}: {}", key, e.getMessage());
+        }
+    }
+
+    // true if this call deletes the files: the key is unreferenced and no other deletion of it
+    // is running
+    private boolean claimDeletion(String key, LocalDateTime claim) {
+        Integer claimed = newTransaction.execute(status -> jdbcTemplate.update(
+                "UPDATE image_blobs SET deleting_since = ? WHERE blob_key = ? AND ref_count = 0 "
+                        + "AND (deleting_since IS NULL OR deleting_since < ?)",
+                claim, key, claim.minus(DELETION_TIMEOUT)));
+        return claimed != null && claimed == 1;
+    }
+
+    private void releaseClaim(String key, LocalDateTime claim) {
+        try {
+            newTransaction.executeWithoutResult(status -> jdbcTemplate.update(
+                    "UPDATE image_blobs SET deleting_since = NULL "
+                            + "WHERE blob_key = ? AND deleting_since = ?", key, claim));
+        } catch (RuntimeException e) {
+            // stores of the same bytes wait until the claim is too old
+            log.warn("Cannot release the deletion of image {}: {}", key, e.getMessage());
+        }
+    }
+
+    private void deleteFiles(String key) throws IOException {
+        delete(key);
+        // only the variants of this key: abcd.png and abcd.jpg have the same hash and distinct
+        // variants, see variantKey
+        String variantPrefix = variantPrefix(key);
+        for (String variantBlobKey : blobStore.list(sharded(variantPrefix))) {
+            String variantKey = variantBlobKey.substring(variantBlobKey.lastIndexOf('/') + 1);
+            if (variantKey.substring(variantPrefix.length())
+                    .matches("\\d{1,5}\\.[a-z0-9]{1,5}")) {
+                blobStore.delete(variantBlobKey);
+                imageByteCache.invalidate(variantKey);
+            }
+        }
+    }
+
+    // Runs the action after the commit of the current transaction, right away without one
+    private static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(
+                new TransactionSynchronization() {
+                    @Override
+                    public void afterCommit() {
+                        action.run();
+                    }
+                });
+    }
+
+    private static String contentType(String key) {
+        return MediaTypeFactory.getMediaType(key)
+                .orElse(MediaType.APPLICATION_OCTET_STREAM)
+                .toString();
+    }
+
+    // ".jpg" for photo.JPEG, "" when there is no usable extension
+    private static String extension(String originalFilename) {
+        if (originalFilename == null || originalFilename.lastIndexOf('.') < 0) {
+            return "";
+        }
+        String extension = originalFilename.substring(originalFilename.lastIndexOf('.') + 1)
+                .toLowerCase();
+        if (extension.equals("jpeg")) {
+            extension = "jpg";
+        }
+        return extension.matches("[a-z0-9]{1,5}") ? "." + extension : "";
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // every JVM supports SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package com.example.shopapp.components;
+
+import com.example.shopapp.models.ProductImage;
+import com.example.shopapp.models.ProductImageVariant;
+import com.example.shopapp.repositories.ProductImageRepository;
+import com.example.shopapp.repositories.ProductImageVariantRepository;
+import com.example.shopapp.services.ProductService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.imageio.ImageIO;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+// Generates resized variants of the uploaded product images in the background
+// Uploads enqueue their images on a bounded queue drained by a few worker threads
+// (resizing is CPU bound). Each variant is stored next to the original, recorded in
+// product_image_variants, and the product gets the first image as thumbnail if it has none.
+// When the queue is full the image is kept without variants rather than blocking the upload.
+// Metrics: product.images.variants.queue (gauge), product.images.variants.latency (timer,
+// from the upload to the variants being recorded), product.images.variants.rejected
+@Slf4j
+@Component
+public class ImageVariantPipeline {
+
+    private static final String VARIANT_FORMAT = "jpg";
+
+    private final ProductService productService;
+    private final ProductImageRepository productImageRepository;
+    private final ProductImageVariantRepository productImageVariantRepository;
+    private final ImageStore imageStore;
+    private final List<Integer> widths;
+    private final int thumbnailWidth;
+    private final ThreadPoolExecutor executor;
+    private final Timer latency;
+    private final Counter rejected;
+
+    public ImageVariantPipeline(
+            ProductService productService,
+            ProductImageRepository productImageRepository,
+            ProductImageVariantRepository productImageVariantRepository,
+            ImageStore imageStore,
+            @Value("${product.images.variant-widths}") List<Integer> widths,
+            @Value("${product.images.thumbnail-width}") int thumbnailWidth,
+            @Value("${product.images.variant-workers}") int workers,
+            @Value("${product.images.variant-queue-capacity}") int queueCapacity,
+            MeterRegistry meterRegistry
+    ) {
+        this.productService = productService;
+        this.productImageRepository = productImageRepository;
+        this.productImageVariantRepository = productImageVariantRepository;
+        this.imageStore = imageStore;
+        this.widths = widths.stream().sorted().toList();
+        this.thumbnailWidth = thumbnailWidth;
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(workers, workers, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> Thread.ofPlatform()
+                        .name("image-variants-" + threadNumber.incrementAndGet())
+                        .daemon()
+                        .unstarted(runnable),
+                new ThreadPoolExecutor.AbortPolicy());
+        Gauge.builder("product.images.variants.queue", executor, e -> e.getQueue().size())
+                .description("Images waiting for their variants")
+                .register(meterRegistry);
+        this.latency = Timer.builder("product.images.variants.latency")
+                .description("Time from the upload to the variants being recorded")
+                .register(meterRegistry);
+        this.rejected = Counter.builder("product.images.variants.rejected")
+                .description("Images left without variants because the queue was full")
+                .register(meterRegistry);
+    }
+
+    // Called after the images are committed, never blocks
+    public void submit(Long productId, List<ProductImage> productImages) {
+        long enqueuedAt = System.nanoTime();
+        for (ProductImage productImage : productImages) {
+            Long productImageId = productImage.getId();
+            String imageUrl = productImage.getImageUrl();
+            try {
+                executor.execute(() -> {
+                    try {
+                        generateVariants(productId, productImageId, imageUrl);
+                    } catch (Exception e) {
+                        log.warn("Cannot generate the variants of {}: {}", imageUrl,
+                                e.getMessage());
+                    } finally {
+                        latency.record(System.nanoTime() - enqueuedAt, TimeUnit.NANOSECONDS);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                rejected.increment();
+                log.warn("Image variant queue is full, {} is kept without variants", imageUrl);
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private void generateVariants(Long productId, Long productImageId, String imageUrl)
+            throws IOException {
+        BufferedImage original;
+        try (InputStream inputStream = imageStore.open(imageUrl, 0)) {
+            original = ImageIO.read(inputStream);
+        }
+        if (original == null) {
+            // no ImageIO reader for this format (e.g. WebP), the original is used as is
+            log.info("Unsupported image format, no variants for {}", imageUrl);
+            productService.setDefaultThumbnail(productId, imageUrl);
+            return;
+        }
+        ProductImage productImage = productImageRepository.getReferenceById(productImageId);
+        List<ProductImageVariant> variants = new ArrayList<>(widths.size());
+        List<String> writtenVariants = new ArrayList<>(widths.size());
+        String thumbnail = imageUrl;
+        try {
+            for (int width : widths) {
+                // never upscale
+                if (width >= original.getWidth()) {
+                    break;
+                }
+                String variantUrl = ImageStore.variantKey(imageUrl, width, VARIANT_FORMAT);
+                // identical images share their variants, they are only generated once
+                if (imageStore.stat(variantUrl).isEmpty()) {
+                    imageStore.put(variantUrl, encode(resize(original, width)));
+                    writtenVariants.add(variantUrl);
+                }
+                variants.add(ProductImageVariant.builder()
+                        .width(width)
+                        .imageUrl(variantUrl)
+                        .productImage(productImage)
+                        .build());
+                // the largest variant not wider than the thumbnail width
+                if (width <= thumbnailWidth) {
+                    thumbnail = variantUrl;
+                }
+            }
+            productImageVariantRepository.saveAll(variants);
+        } catch (IOException | RuntimeException e) {
+            for (String writtenVariant : writtenVariants) {
+                imageStore.delete(writtenVariant);
+            }
+            throw e;
+        }
+        productService.setDefaultThumbnail(productId, thumbnail);
+    }
+
+    // variants are small (at most a few hundred KB), they are encoded in memory
+    private static byte[] encode(BufferedImage image) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        if (!ImageIO.write(image, VARIANT_FORMAT, outputStream)) {
+            throw new IOException("No ImageIO writer for " + VARIANT_FORMAT);
+        }
+        return outputStream.toByteArray();
+    }
+
+    // Downscale by halving first, then one bilinear step to the target width,
+    // which is much sharper than a single bilinear step and cheaper than bicubic
+    private static BufferedImage resize(BufferedImage original, int width) {
+        BufferedImage image = original;
+        int currentWidth = original.getWidth();
+        do {
+            int nextWidth = Math.max(currentWidth / 2, width);
+            int nextHeight = Math.max(1, (int) ((long) original.getHeight() * nextWidth
+                    / original.getWidth()));
+            // JPEG has no alpha channel, draw on an opaque RGB image
+            BufferedImage resized = new BufferedImage(nextWidth, nextHeight,
+                    BufferedImage.TYPE_INT_RGB);
+            Graphics2D graphics = resized.createGraphics();
+            try {
+                graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+                        RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                graphics.drawImage(image, 0, 0, nextWidth, nextHeight, Color.WHITE, null);
+            } finally {
+                graphics.dispose();
+            }
+            image = resized;
+            currentWidth = nextWidth;
+        } while (currentWidth > width);
+        return image;
+    }
+}
@@ -2,50 +2,113 @@ package com.example.shopapp.components;
 
 import com.example.shopapp.exceptions.InvalidParamException;
 import com.example.shopapp.models.User;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
-import io.jsonwebtoken.Jwts.SIG;
-import io.jsonwebtoken.SignatureAlgorithm;
 import io.jsonwebtoken.io.Decoders;
 import io.jsonwebtoken.security.Keys;
-import io.jsonwebtoken.security.SecureDigestAlgorithm;
-import java.security.InvalidParameterException;
-import java.security.Key;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HexFormat;
 import java.util.Map;
+import java.util.UUID;
+import java.util.function.Function;
 import javax.crypto.SecretKey;
-import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Component;
-import java.util.function.Function;
 
 @Component
-@RequiredArgsConstructor
 public class JwtUtils {
 
+    // name of the role of the user, see UserPrincipalCache
+    public static final String ROLE_CLAIM = "role";
+
     // the expiration time of the token in milliseconds, retrieved from the application.properties file
-    @Value("${jwt.expiration}")
-    private long expiration;
-    @Value("${jwt.secret}")
-    private String secretKey;
+    private final long expiration;
+    // the key and the parser are immutable and thread-safe, they are built once
+    private final SecretKey signInKey;
+    private final JwtParser jwtParser;
+    // Tokens already verified, keyed by the SHA-256 of the token (the token itself is not kept)
+    // A client sends the same token with every request, a hit skips the HMAC check and the
+    // JSON parsing. An entry expires with its token, or after jwt.verified-cache.ttl.
+    // Exported as cache.* metrics with the tag cache=jwt-verifications
+    private final Cache<String, VerifiedToken> verifiedTokens;
+
+    public JwtUtils(
+            @Value("${jwt.expiration}") long expiration,
+            @Value("${jwt.secret}") String secretKey,
+            @Value("${jwt.verified-cache.maximum-size}") long verifiedCacheSize,
+            @Value("${jwt.verified-cache.ttl}") Duration verifiedCacheTtl,
+            MeterRegistry meterRegistry
+    ) {
+        this.expiration = expiration;
+        // generate a key from the secret key
+        this.signInKey = Keys.hmacShaKeyFor(Decoders.BASE64.decode(secretKey));
+        // https://stackoverflow.com/a/77408683
+        // The syntax of the Jwts.parser() method has changed in the latest version of the jjwt library
+        this.jwtParser = Jwts.parser()
+                .verifyWith(signInKey)
+                .build();
+        this.verifiedTokens = Caffeine.newBuilder()
+                .maximumSize(verifiedCacheSize)
+                .expireAfter(new Expiry<String, VerifiedToken>() {
+                    @Override
+                    public long expireAfterCreate(String key, VerifiedToken token,
+                            long currentTime) {
+                        Duration untilExpiration = Duration.between(Instant.now(),
+                                token.expiresAt());
+                        return Math.max(0, Math.min(untilExpiration.toNanos(),
+                                verifiedCacheTtl.toNanos()));
+                    }
 
-    public String generateToken(User user) throws InvalidParamException {
+                    @Override
+                    public long expireAfterUpdate(String key, VerifiedToken token,
+                            long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+
+                    @Override
+                    public long expireAfterRead(String key, VerifiedToken token,
+                            long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, verifiedTokens, "jwt-verifications");
+    }
+
+    // the id (jti) identifies the token in the tokens table, it can be revoked by id
+    public IssuedToken generateToken(User user) throws InvalidParamException {
         // The properties of the user that will be included in the token are called claims
         Map<String, Object> claims = new HashMap<>();
         claims.put("phoneNumber", user.getPhoneNumber());
+        claims.put(ROLE_CLAIM, user.getRole().getName());
         // generate a token for the user
         // return the generated token
         try {
+            String tokenId = UUID.randomUUID().toString();
+            Instant expiresAt = Instant.now().plusMillis(expiration);
             // We have to create a separate variable to store the token for debugging purposes
             String token = Jwts.builder()
                     .claims(claims)
+                    .id(tokenId)
                     .subject(user.getPhoneNumber())
-                    .expiration(new Date(System.currentTimeMillis() + expiration))
-                    .signWith(getSignInKey())
+                    .expiration(Date.from(expiresAt))
+                    .signWith(signInKey)
                     .compact();
-            return token;
+            return new IssuedToken(token, tokenId, expiresAt);
         } catch (Exception e) {
             // Instead of printing the error message, you should log it
             // Will add logger later
@@ -55,52 +118,56 @@ public class JwtUtils {
         }
     }
 
-    private SecretKey getSignInKey() {
-        // generate a key from the secret key
-        // return the generated key
-        return Keys.hmacShaKeyFor(Decoders.BASE64.decode(secretKey));
-    }
-
-    private Claims extractAllClaims(String token) {
-        // https://stackoverflow.com/a/77408683
-        // The syntax of the Jwts.parser() method has changed in the latest version of the jjwt library
-        return Jwts.parser()
-                .verifyWith(getSignInKey())
-                .build()
-                .parseSignedClaims(token)
-                .getPayload();
+    // Checks the signature and the expiration date of the token, once
+    // Throws JwtException if the token is malformed, forged or expired
+    public VerifiedToken verify(String token) throws JwtException {
+        String tokenHash = sha256(token);
+        VerifiedToken verifiedToken = verifiedTokens.getIfPresent(tokenHash);
+        if (verifiedToken != null && verifiedToken.expiresAt().isAfter(Instant.now())) {
+            return verifiedToken;
+        }
+        // the parser rejects expired tokens (ExpiredJwtException)
+        Claims claims = jwtParser.parseSignedClaims(token).getPayload();
+        if (claims.getSubject() == null || claims.getExpiration() == null) {
+            throw new JwtException("Token without subject or expiration date");
+        }
+        verifiedToken = new VerifiedToken(claims.getSubject(), claims.getId(),
+                claims.getExpiration().toInstant(), claims);
+        verifiedTokens.put(tokenHash, verifiedToken);
+        return verifiedToken;
     }
 
     public <T> T extractClaim(String token, Function<Claims, T> claimsResolver) {
         // extract a claim from the token
         // return the extracted claim
-        final Claims claims = extractAllClaims(token);
-        return claimsResolver.apply(claims);
-    }
-
-    // check expiration
-    public boolean isTokenExpired(String token) {
-        // extract the expiration date from the token
-        // check if the expiration date is before the current date
-        // return the result of the check
-        Date expirationDate = (Date) this.extractClaim(token, Claims::getExpiration);
-        return expirationDate.before(new Date());
+        return claimsResolver.apply(verify(token).claims());
     }
 
     public String extractPhoneNumber(String token) {
         // extract the phone number from the token
         // return the extracted phone number
-        return extractClaim(token, Claims::getSubject);
+        return verify(token).phoneNumber();
     }
 
-    public boolean validateToken(String token, UserDetails userDetails) {
-        // extract the phone number from the token
-        // extract the expiration date from the token
-        // extract the phone number from the user details
-        // check if the phone number from the token is the same as the phone number from the user details
-        // check if the token is expired
-        // return the result of the checks
-        String phoneNumber = extractPhoneNumber(token);
-        return (phoneNumber.equals(userDetails.getUsername()) && !isTokenExpired(token));
+    private static String sha256(String token) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256")
+                    .digest(token.getBytes(StandardCharsets.US_ASCII)));
+        } catch (NoSuchAlgorithmException e) {
+            // every JVM supports SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public record IssuedToken(String token, String tokenId, Instant expiresAt) {
+
+    }
+
+    // A token whose signature and expiration date were checked
+    // tokenId is null for the tokens issued before they had an id, they cannot be revoked
+    // claims is shared between requests, callers must not modify it
+    public record VerifiedToken(String phoneNumber, String tokenId, Instant expiresAt,
+            Claims claims) {
+
     }
 }
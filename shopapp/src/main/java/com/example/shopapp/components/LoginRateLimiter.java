@@ -0,0 +1,116 @@
+package com.example.shopapp.components;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+// Rate limit of POST /users/login and /users/register, per client IP and per phone number
+// Both endpoints run BCrypt and database queries before any authentication, a credential
+// stuffing burst is rejected here (429) before it costs anything.
+// Token buckets implemented with GCRA: the whole state of a key is one AtomicLong (the
+// theoretical arrival time), updated with a CAS, so a decision takes no lock and allocates
+// nothing once the key exists. A key unused for burst intervals has a full bucket again and
+// expires; beyond login.rate-limit.max-keys keys the least useful ones are evicted, a flood of
+// new keys never blocks the keys already tracked nor the other new ones.
+// Metrics: login.rate-limit.keys (gauge) and login.rate-limit.rejected, tagged by key type
+@Component
+public class LoginRateLimiter {
+
+    private final Limit byIp;
+    private final Limit byPhoneNumber;
+
+    public LoginRateLimiter(
+            @Value("${login.rate-limit.ip.requests-per-minute}") int ipRequestsPerMinute,
+            @Value("${login.rate-limit.ip.burst}") int ipBurst,
+            @Value("${login.rate-limit.phone-number.requests-per-minute}")
+            int phoneNumberRequestsPerMinute,
+            @Value("${login.rate-limit.phone-number.burst}") int phoneNumberBurst,
+            @Value("${login.rate-limit.max-keys}") int maximumKeys,
+            MeterRegistry meterRegistry
+    ) {
+        this.byIp = new Limit("ip", ipRequestsPerMinute, ipBurst, maximumKeys, meterRegistry);
+        this.byPhoneNumber = new Limit("phone_number", phoneNumberRequestsPerMinute,
+                phoneNumberBurst, maximumKeys, meterRegistry);
+    }
+
+    // 0 if the request is allowed, otherwise the time to wait before retrying
+    // phoneNumber may be null (invalid request), only the IP is limited then
+    public Duration tryAcquire(String ip, String phoneNumber) {
+        return tryAcquire(ip, phoneNumber, System.nanoTime());
+    }
+
+    Duration tryAcquire(String ip, String phoneNumber, long now) {
+        long waitNanos = byIp.tryAcquire(ip, now);
+        if (waitNanos == 0 && phoneNumber != null) {
+            waitNanos = byPhoneNumber.tryAcquire(phoneNumber, now);
+            if (waitNanos != 0) {
+                // a rejected request must not consume the IP bucket, otherwise a client
+                // retrying a limited phone number would also lock itself out of other ones
+                byIp.refund(ip);
+            }
+        }
+        return waitNanos == 0 ? Duration.ZERO : Duration.ofNanos(waitNanos);
+    }
+
+    private static final class Limit {
+        // time between two requests at the sustained rate
+        private final long emissionIntervalNanos;
+        // how far ahead of the sustained rate a key can be, burst - 1 intervals
+        private final long toleranceNanos;
+        // theoretical arrival time of the next request, in System.nanoTime()
+        private final Cache<String, AtomicLong> arrivalTimes;
+        private final Counter rejected;
+
+        private Limit(String name, int requestsPerMinute, int burst, int maximumKeys,
+                MeterRegistry meterRegistry) {
+            this.emissionIntervalNanos = Duration.ofMinutes(1).toNanos() / requestsPerMinute;
+            this.toleranceNanos = emissionIntervalNanos * (Math.max(burst, 1) - 1);
+            // an arrival time is at most burst intervals ahead, a key idle for that long has
+            // a full bucket and forgetting it changes nothing; an evicted active key only gets a
+            // new bucket
+            this.arrivalTimes = Caffeine.newBuilder()
+                    .maximumSize(maximumKeys)
+                    .expireAfterAccess(Duration.ofNanos(toleranceNanos + emissionIntervalNanos))
+                    .build();
+            Gauge.builder("login.rate-limit.keys", arrivalTimes, Cache::estimatedSize)
+                    .description("Clients and phone numbers tracked by the login rate limit")
+                    .tag("key", name)
+                    .register(meterRegistry);
+            this.rejected = Counter.builder("login.rate-limit.rejected")
+                    .description("Login and registration requests rejected with 429")
+                    .tag("key", name)
+                    .register(meterRegistry);
+        }
+
+        private long tryAcquire(String key, long now) {
+            AtomicLong arrivalTime = arrivalTimes.get(key, k -> new AtomicLong(now));
+            while (true) {
+                long current = arrivalTime.get();
+                long theoretical = current - now < 0 ? now : current;
+                long waitNanos = theoretical - toleranceNanos - now;
+                if (waitNanos > 0) {
+                    rejected.increment();
+                    return waitNanos;
+                }
+                if (arrivalTime.compareAndSet(current, theoretical + emissionIntervalNanos)) {
+                    return 0;
+                }
+            }
+        }
+
+        // gives back the request acquired last, an arrival time moved before now is the
+        // same as a full bucket
+        private void refund(String key) {
+            AtomicLong arrivalTime = arrivalTimes.getIfPresent(key);
+            if (arrivalTime != null) {
+                arrivalTime.addAndGet(-emissionIntervalNanos);
+            }
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.example.shopapp.components;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Component;
+
+// BCrypt hashing and verification on a dedicated, bounded pool
+// BCrypt is deliberately slow (~100ms of CPU), a burst of logins on the request threads would
+// starve every other request. Here at most login.hashing-threads hashes run at the same time,
+// login.hashing-queue-capacity wait, and beyond that RejectedExecutionException is thrown
+// right away (503 for the client) instead of queueing work that would time out anyway.
+// Metrics: login.hashing.queue (gauge), login.hashing.rejected
+@Component
+public class PasswordHasher {
+
+    private final PasswordEncoder passwordEncoder;
+    private final ThreadPoolExecutor executor;
+    private final long timeoutNanos;
+    private final Counter rejected;
+    // hash compared against when the user does not exist, so that unknown phone numbers
+    // take as long as wrong passwords
+    private final String unknownUserHash;
+
+    public PasswordHasher(
+            PasswordEncoder passwordEncoder,
+            @Value("${login.hashing-threads}") int threads,
+            @Value("${login.hashing-queue-capacity}") int queueCapacity,
+            @Value("${login.hashing-timeout}") Duration timeout,
+            MeterRegistry meterRegistry
+    ) {
+        this.passwordEncoder = passwordEncoder;
+        this.timeoutNanos = timeout.toNanos();
+        int workers = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        if (queueCapacity < 0) {
+            throw new IllegalArgumentException(
+                    "login.hashing-queue-capacity must be 0 or more: " + queueCapacity);
+        }
+        // 0: no login waits, a login is rejected unless a thread is idle
+        BlockingQueue<Runnable> queue = queueCapacity == 0
+                ? new SynchronousQueue<>()
+                : new ArrayBlockingQueue<>(queueCapacity);
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(workers, workers, 0, TimeUnit.MILLISECONDS,
+                queue,
+                runnable -> Thread.ofPlatform()
+                        .name("password-hashing-" + threadNumber.incrementAndGet())
+                        .daemon()
+                        .unstarted(runnable),
+                new ThreadPoolExecutor.AbortPolicy());
+        Gauge.builder("login.hashing.queue", executor, e -> e.getQueue().size())
+                .description("Password hashes waiting for a thread")
+                .register(meterRegistry);
+        this.rejected = Counter.builder("login.hashing.rejected")
+                .description("Logins and registrations rejected because the pool was full")
+                .register(meterRegistry);
+        this.unknownUserHash = passwordEncoder.encode("unknown user");
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    // encodedPassword null: the user does not exist or has no password, false after the same
+    // amount of work
+    public boolean matches(String rawPassword, String encodedPassword) {
+        if (encodedPassword == null) {
+            run(() -> passwordEncoder.matches(rawPassword, unknownUserHash));
+            return false;
+        }
+        return run(() -> passwordEncoder.matches(rawPassword, encodedPassword));
+    }
+
+    public String encode(String rawPassword) {
+        return run(() -> passwordEncoder.encode(rawPassword));
+    }
+
+    // Throws RejectedExecutionException when the pool is saturated or the hash takes longer
+    // than login.hashing-timeout
+    private <T> T run(Callable<T> task) {
+        Future<T> future;
+        try {
+            future = executor.submit(task);
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            throw e;
+        }
+        try {
+            return future.get(timeoutNanos, TimeUnit.NANOSECONDS);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof RuntimeException runtimeException
+                    ? runtimeException : new IllegalStateException(e.getCause());
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            rejected.increment();
+            throw new RejectedExecutionException("Password hashing timed out");
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException("Password hashing interrupted");
+        }
+    }
+}
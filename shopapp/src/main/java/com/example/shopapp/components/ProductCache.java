@@ -0,0 +1,56 @@
+package com.example.shopapp.components;
+
+import com.example.shopapp.responses.ProductResponse;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+// Read-through cache in front of ProductRepository.findProductResponseById
+// Products are read far more often than they are written, so GET /products/{id}
+// and image uploads are served from memory, bounded by size and TTL.
+// It holds detached ProductResponse objects, never managed entities.
+// Hit, miss and eviction counters are exported as cache.* metrics with the tag cache=products
+@Component
+public class ProductCache {
+
+    private final Cache<Long, ProductResponse> cache;
+
+    public ProductCache(
+            @Value("${product.cache.maximum-size}") long maximumSize,
+            @Value("${product.cache.ttl}") Duration ttl,
+            MeterRegistry meterRegistry
+    ) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "products");
+    }
+
+    // The returned product is shared between requests, callers must not modify it
+    // loader returns null when the product does not exist, missing products are not cached
+    public Optional<ProductResponse> get(Long id, Function<Long, ProductResponse> loader) {
+        return Optional.ofNullable(cache.get(id, loader));
+    }
+
+    // Products found among ids, the missing ones are read together with loader, which returns
+    // only the products that exist
+    public Map<Long, ProductResponse> getAll(Collection<Long> ids,
+            Function<Set<? extends Long>, Map<Long, ProductResponse>> loader) {
+        return cache.getAll(ids, loader);
+    }
+
+    public void invalidate(Long id) {
+        cache.invalidate(id);
+    }
+}
@@ -0,0 +1,131 @@
+package com.example.shopapp.components;
+
+import com.example.shopapp.repositories.ProductRepository;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+// Number of products, globally and per category, maintained in memory
+// so that listing products does not need a SELECT COUNT(*) on every request.
+// ProductServiceImpl updates the counters on every write and they are reconciled
+// against the database periodically, which also fixes any drift caused by
+// writes that bypass the service or by other application nodes.
+// Products without a category count in the total only.
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ProductCounters {
+
+    private final ProductRepository productRepository;
+
+    private final AtomicLong totalCount = new AtomicLong();
+    private final Map<Long, AtomicLong> categoryCounts = new ConcurrentHashMap<>();
+    // false until the counters have been loaded from the database once
+    private volatile boolean reconciled = false;
+
+    public long count() {
+        ensureReconciled();
+        return Math.max(totalCount.get(), 0);
+    }
+
+    public long countByCategory(Long categoryId) {
+        ensureReconciled();
+        if (categoryId == null) {
+            return 0;
+        }
+        AtomicLong categoryCount = categoryCounts.get(categoryId);
+        return categoryCount == null ? 0 : Math.max(categoryCount.get(), 0);
+    }
+
+    public void increment(Long categoryId) {
+        totalCount.incrementAndGet();
+        addToCategory(categoryId, 1);
+    }
+
+    public void decrement(Long categoryId) {
+        totalCount.decrementAndGet();
+        addToCategory(categoryId, -1);
+    }
+
+    // a product was moved from one category to another, the total does not change
+    public void move(Long oldCategoryId, Long newCategoryId) {
+        if (Objects.equals(oldCategoryId, newCategoryId)) {
+            return;
+        }
+        addToCategory(oldCategoryId, -1);
+        addToCategory(newCategoryId, 1);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        try {
+            reconcile();
+        } catch (DataAccessException e) {
+            // the database may not be reachable yet, the next reconciliation will retry
+            log.warn("Cannot load product counters: {}", e.getMessage());
+        }
+    }
+
+    @Scheduled(
+            initialDelayString = "${product.counters.reconcile-interval}",
+            fixedDelayString = "${product.counters.reconcile-interval}")
+    public void scheduledReconcile() {
+        onApplicationReady();
+    }
+
+    // Bring the in-memory counters to the counts from the database
+    // One GROUP BY query instead of one COUNT(*) per listing request
+    // The counters are read before the query and only the difference with the database is
+    // added to them: the increments and decrements made while the query runs are kept, and
+    // counters are never replaced nor removed (a category without products stays at 0).
+    public synchronized void reconcile() {
+        long totalBefore = totalCount.get();
+        Map<Long, Long> categoryCountsBefore = new HashMap<>();
+        categoryCounts.forEach((categoryId, categoryCount) ->
+                categoryCountsBefore.put(categoryId, categoryCount.get()));
+        List<Object[]> rows = productRepository.countGroupByCategory();
+        Map<Long, Long> countsFromDatabase = new HashMap<>();
+        long total = 0;
+        for (Object[] row : rows) {
+            Long categoryId = (Long) row[0];
+            long count = (Long) row[1];
+            if (categoryId != null) {
+                countsFromDatabase.put(categoryId, count);
+            }
+            total += count;
+        }
+        totalCount.addAndGet(total - totalBefore);
+        countsFromDatabase.keySet().forEach(this::categoryCount);
+        // a counter created during the query started from 0
+        categoryCounts.forEach((categoryId, categoryCount) -> categoryCount.addAndGet(
+                countsFromDatabase.getOrDefault(categoryId, 0L)
+                        - categoryCountsBefore.getOrDefault(categoryId, 0L)));
+        reconciled = true;
+    }
+
+    private void ensureReconciled() {
+        if (!reconciled) {
+            reconcile();
+        }
+    }
+
+    private void addToCategory(Long categoryId, long delta) {
+        if (categoryId != null) {
+            categoryCount(categoryId).addAndGet(delta);
+        }
+    }
+
+    private AtomicLong categoryCount(Long categoryId) {
+        return categoryCounts.computeIfAbsent(categoryId, key -> new AtomicLong());
+    }
+}
@@ -0,0 +1,783 @@
+package com.example.shopapp.components;
+
+import com.example.shopapp.models.Product;
+import com.example.shopapp.repositories.ProductRepository;
+import com.example.shopapp.responses.ProductResponse;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.UnaryOperator;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Component;
+
+// In-process full-text index over Product.name and Product.description
+// An inverted index (term -> sorted document ordinals and term frequencies) ranked with BM25,
+// matches in the name weigh more than matches in the description. A product matches when it
+// contains every term of the query.
+// The index is an immutable snapshot replaced on every write, searches never take a lock:
+// - a large base segment, rebuilt from the database at startup (and after imports) and
+//   merged with the recent writes in the background
+// - a small delta segment holding the products written since, rebuilt on every write
+// - the base documents replaced or removed since, in a bitset
+// Only the id, category, price and length of a product are kept, the search returns ranked
+// ids and ProductServiceImpl reads the products themselves through the product cache.
+// Postings are primitive arrays intersected by galloping from the shortest one; with a full
+// top-k, blocks of documents whose best possible score cannot enter it are skipped.
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ProductSearchIndex {
+
+    // a term found in the name counts as this many occurrences
+    private static final int NAME_WEIGHT = 3;
+    // BM25 parameters
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+    private static final int REBUILD_BATCH_SIZE = 1000;
+    // beyond this many recent writes the delta is merged into the base segment
+    private static final int MAXIMUM_DELTA_SIZE = 1024;
+    // postings are split in blocks of 16 documents for the score upper bounds
+    private static final int BLOCK_SHIFT = 4;
+
+    private final ProductRepository productRepository;
+
+    // replaced on every write, read without lock
+    private volatile Snapshot snapshot = Snapshot.EMPTY;
+    // serializes the writes, never taken by searches
+    private final Object writeLock = new Object();
+    // writes received while a new base segment is built (rebuild or merge), replayed on it;
+    // guarded by writeLock
+    private List<UnaryOperator<Snapshot>> pendingWrites = null;
+    private boolean mergeScheduled = false;
+
+    public void index(Product product) {
+        Document document = toDocument(ProductResponse.fromProduct(product));
+        write(current -> current.replace(document.productId(), document));
+    }
+
+    public void remove(Long productId) {
+        write(current -> current.replace(productId, null));
+    }
+
+    // Ids of the products matching every term of the query, most relevant first
+    // categoryId, minPrice and maxPrice are optional filters (null = no filter)
+    public List<Long> search(String query, Long categoryId, Float minPrice, Float maxPrice,
+            int limit) {
+        List<String> terms = tokenize(query).stream().distinct().toList();
+        if (terms.isEmpty() || limit <= 0) {
+            return List.of();
+        }
+        Snapshot current = snapshot;
+        int documentCount = current.documentCount();
+        if (documentCount == 0) {
+            return List.of();
+        }
+        double averageLength = Math.max(1.0, (double) current.totalLength() / documentCount);
+        double[] idfs = new double[terms.size()];
+        for (int i = 0; i < terms.size(); ++i) {
+            // replaced base documents are still counted, like in Lucene until a merge
+            int documentFrequency = Math.min(documentCount,
+                    current.base.documentFrequency(terms.get(i))
+                            + current.delta.documentFrequency(terms.get(i)));
+            if (documentFrequency == 0) {
+                return List.of();
+            }
+            idfs[i] = Math.log(1 + (documentCount - documentFrequency + 0.5)
+                    / (documentFrequency + 0.5));
+        }
+        Filter filter = new Filter(categoryId, minPrice, maxPrice);
+        TopHits topHits = new TopHits(limit);
+        current.base.search(terms, idfs, averageLength, filter, current.deleted, topHits);
+        current.delta.search(terms, idfs, averageLength, filter, null, topHits);
+        return topHits.productIdsByRelevance();
+    }
+
+    public int size() {
+        return snapshot.documentCount();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        // do not block the startup, searches return partial results until the rebuild finishes
+        rebuildInBackground();
+    }
+
+    // e.g. after a bulk import that inserted products without going through ProductServiceImpl
+    public void rebuildInBackground() {
+        Thread.ofVirtual().name("product-search-rebuild").start(() -> {
+            try {
+                rebuild();
+            } catch (Exception e) {
+                log.warn("Cannot build the product search index: {}", e.getMessage());
+            }
+        });
+    }
+
+    // Read every product in id order and swap the new index in when done
+    public synchronized void rebuild() {
+        startBuild();
+        Segment base = null;
+        try {
+            SegmentBuilder builder = new SegmentBuilder();
+            long lastId = 0;
+            List<ProductResponse> products;
+            do {
+                products = productRepository.findProductResponsesAfterId(
+                        lastId, Pageable.ofSize(REBUILD_BATCH_SIZE));
+                for (ProductResponse product : products) {
+                    builder.add(toDocument(product));
+                    lastId = product.getId();
+                }
+            } while (products.size() == REBUILD_BATCH_SIZE);
+            base = builder.build();
+        } finally {
+            // keep the current index if the rebuild failed half way
+            finishBuild(base);
+        }
+        log.info("Product search index built with {} products", base.size());
+    }
+
+    // Merge the delta and the removed documents into a new base segment
+    synchronized void merge() {
+        Snapshot current = startBuild();
+        Segment base = null;
+        try {
+            base = Segment.merge(current.base, current.deleted, current.delta);
+        } finally {
+            finishBuild(base);
+        }
+    }
+
+    private Snapshot startBuild() {
+        synchronized (writeLock) {
+            pendingWrites = new ArrayList<>();
+            mergeScheduled = false;
+            return snapshot;
+        }
+    }
+
+    private void finishBuild(Segment base) {
+        synchronized (writeLock) {
+            if (base != null) {
+                Snapshot next = Snapshot.of(base);
+                for (UnaryOperator<Snapshot> write : pendingWrites) {
+                    next = write.apply(next);
+                }
+                snapshot = next;
+            }
+            pendingWrites = null;
+        }
+    }
+
+    private void write(UnaryOperator<Snapshot> write) {
+        synchronized (writeLock) {
+            Snapshot next = write.apply(snapshot);
+            snapshot = next;
+            if (pendingWrites != null) {
+                pendingWrites.add(write);
+            } else if (!mergeScheduled && (next.delta.size() > MAXIMUM_DELTA_SIZE
+                    || next.deletedCount > MAXIMUM_DELTA_SIZE
+                    && next.deletedCount > next.base.size() / 4)) {
+                // the writer does not wait for the merge
+                mergeScheduled = true;
+                Thread.ofVirtual().name("product-search-merge").start(() -> {
+                    try {
+                        merge();
+                    } catch (Exception e) {
+                        log.warn("Cannot merge the product search index: {}", e.getMessage());
+                    }
+                });
+            }
+        }
+    }
+
+    private static Document toDocument(ProductResponse product) {
+        Map<String, Integer> termFrequencies = new HashMap<>();
+        for (String term : tokenize(product.getName())) {
+            termFrequencies.merge(term, NAME_WEIGHT, Integer::sum);
+        }
+        for (String term : tokenize(product.getDescription())) {
+            termFrequencies.merge(term, 1, Integer::sum);
+        }
+        int length = termFrequencies.values().stream().mapToInt(Integer::intValue).sum();
+        return new Document(
+                product.getId(),
+                product.getCategoryId() == null ? 0 : product.getCategoryId(),
+                product.getPrice() == null ? Float.NaN : product.getPrice(),
+                termFrequencies,
+                length);
+    }
+
+    // lower case, accents removed, split on anything that is not a letter or a digit
+    static List<String> tokenize(String text) {
+        List<String> terms = new ArrayList<>();
+        if (text == null || text.isEmpty()) {
+            return terms;
+        }
+        String normalized = Normalizer.normalize(text, Normalizer.Form.NFD)
+                .replaceAll("\\p{M}", "")
+                .toLowerCase();
+        int start = -1;
+        for (int i = 0; i <= normalized.length(); ++i) {
+            boolean letterOrDigit = i < normalized.length()
+                    && Character.isLetterOrDigit(normalized.charAt(i));
+            if (letterOrDigit && start < 0) {
+                start = i;
+            } else if (!letterOrDigit && start >= 0) {
+                terms.add(normalized.substring(start, i));
+                start = -1;
+            }
+        }
+        return terms;
+    }
+
+    // BM25 weight of a term in a document, before the idf
+    // Grows with the frequency and shrinks with the length of the document
+    private static double termScore(int frequency, int length, double averageLength) {
+        return frequency * (K1 + 1) / (frequency + K1 * (1 - B + B * length / averageLength));
+    }
+
+    // First index >= from whose document is >= target, documents.length if there is none
+    // Probes from, from + 1, from + 3, from + 7... then binary searches the last gap
+    static int gallop(int[] documents, int from, int target) {
+        if (from >= documents.length || documents[from] >= target) {
+            return from;
+        }
+        // documents[low] < target
+        int low = from;
+        int step = 1;
+        int high = from + step;
+        while (high < documents.length && documents[high] < target) {
+            low = high;
+            step <<= 1;
+            high = from + step;
+        }
+        high = Math.min(high, documents.length);
+        // the answer is in (low, high]
+        int first = low + 1;
+        while (first < high) {
+            int middle = (first + high) >>> 1;
+            if (documents[middle] < target) {
+                first = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return first;
+    }
+
+    // A product as written by ProductServiceImpl, kept only while it is in the delta
+    private record Document(
+            long productId,
+            // 0 without category
+            long categoryId,
+            // NaN without price
+            float price,
+            Map<String, Integer> termFrequencies,
+            int length
+    ) {
+
+    }
+
+    private record Filter(Long categoryId, Float minPrice, Float maxPrice) {
+
+        boolean matches(long documentCategoryId, float price) {
+            if (categoryId != null && categoryId != documentCategoryId) {
+                return false;
+            }
+            // comparisons with NaN (no price) are false
+            if (minPrice != null && !(price >= minPrice)) {
+                return false;
+            }
+            return maxPrice == null || price <= maxPrice;
+        }
+    }
+
+    // Immutable state of the index
+    private static final class Snapshot {
+        private static final Snapshot EMPTY = of(new SegmentBuilder().build());
+
+        private final Segment base;
+        // base ordinals replaced or removed since the base was built, null if none
+        private final long[] deleted;
+        private final int deletedCount;
+        private final long deletedLength;
+        // sorted by product id
+        private final List<Document> deltaDocuments;
+        private final Segment delta;
+
+        private Snapshot(Segment base, long[] deleted, int deletedCount, long deletedLength,
+                List<Document> deltaDocuments, Segment delta) {
+            this.base = base;
+            this.deleted = deleted;
+            this.deletedCount = deletedCount;
+            this.deletedLength = deletedLength;
+            this.deltaDocuments = deltaDocuments;
+            this.delta = delta;
+        }
+
+        static Snapshot of(Segment base) {
+            return new Snapshot(base, null, 0, 0, List.of(), new SegmentBuilder().build());
+        }
+
+        int documentCount() {
+            return base.size() - deletedCount + delta.size();
+        }
+
+        long totalLength() {
+            return base.totalLength - deletedLength + delta.totalLength;
+        }
+
+        // A copy where the product is replaced by document, or removed if document is null
+        Snapshot replace(long productId, Document document) {
+            long[] nextDeleted = deleted;
+            int nextDeletedCount = deletedCount;
+            long nextDeletedLength = deletedLength;
+            int ordinal = Arrays.binarySearch(base.productIds, productId);
+            if (ordinal >= 0 && !isDeleted(deleted, ordinal)) {
+                nextDeleted = deleted == null ? new long[(base.size() + 63) >>> 6]
+                        : deleted.clone();
+                nextDeleted[ordinal >>> 6] |= 1L << ordinal;
+                ++nextDeletedCount;
+                nextDeletedLength += base.lengths[ordinal];
+            }
+            List<Document> nextDeltaDocuments = new ArrayList<>(deltaDocuments.size() + 1);
+            boolean deltaChanged = document != null;
+            boolean inserted = document == null;
+            for (Document deltaDocument : deltaDocuments) {
+                if (!inserted && deltaDocument.productId() > productId) {
+                    nextDeltaDocuments.add(document);
+                    inserted = true;
+                }
+                if (deltaDocument.productId() == productId) {
+                    deltaChanged = true;
+                } else {
+                    nextDeltaDocuments.add(deltaDocument);
+                }
+            }
+            if (!inserted) {
+                nextDeltaDocuments.add(document);
+            }
+            if (!deltaChanged && nextDeleted == deleted) {
+                return this;
+            }
+            Segment nextDelta = delta;
+            if (deltaChanged) {
+                SegmentBuilder builder = new SegmentBuilder();
+                nextDeltaDocuments.forEach(builder::add);
+                nextDelta = builder.build();
+            }
+            return new Snapshot(base, nextDeleted, nextDeletedCount, nextDeletedLength,
+                    Collections.unmodifiableList(nextDeltaDocuments), nextDelta);
+        }
+    }
+
+    private static boolean isDeleted(long[] deleted, int ordinal) {
+        return deleted != null && (deleted[ordinal >>> 6] & (1L << ordinal)) != 0;
+    }
+
+    // Immutable set of documents, ordinals are assigned in product id order
+    private static final class Segment {
+        private final long[] productIds;
+        private final long[] categoryIds;
+        private final float[] prices;
+        private final int[] lengths;
+        private final long totalLength;
+        private final Map<String, Postings> postings;
+
+        private Segment(long[] productIds, long[] categoryIds, float[] prices, int[] lengths,
+                Map<String, Postings> postings) {
+            this.productIds = productIds;
+            this.categoryIds = categoryIds;
+            this.prices = prices;
+            this.lengths = lengths;
+            this.totalLength = Arrays.stream(lengths).asLongStream().sum();
+            this.postings = postings;
+        }
+
+        int size() {
+            return productIds.length;
+        }
+
+        int documentFrequency(String term) {
+            Postings termPostings = postings.get(term);
+            return termPostings == null ? 0 : termPostings.documents.length;
+        }
+
+        // Adds the live documents containing every term to topHits
+        void search(List<String> terms, double[] idfs, double averageLength, Filter filter,
+                long[] deleted, TopHits topHits) {
+            int termCount = terms.size();
+            Postings[] lists = new Postings[termCount];
+            double[] weights = new double[termCount];
+            for (int i = 0; i < termCount; ++i) {
+                lists[i] = postings.get(terms.get(i));
+                if (lists[i] == null) {
+                    return;
+                }
+                weights[i] = idfs[i];
+            }
+            // the shortest list leads, the others are only probed at its documents
+            for (int i = 1; i < termCount; ++i) {
+                for (int j = i; j > 0
+                        && lists[j].documents.length < lists[j - 1].documents.length; --j) {
+                    Postings list = lists[j];
+                    lists[j] = lists[j - 1];
+                    lists[j - 1] = list;
+                    double weight = weights[j];
+                    weights[j] = weights[j - 1];
+                    weights[j - 1] = weight;
+                }
+            }
+            Conjunction conjunction = new Conjunction(this, lists, weights, averageLength,
+                    filter, deleted, topHits);
+            conjunction.scan();
+        }
+
+        // A segment with the live documents of base and the documents of delta
+        static Segment merge(Segment base, long[] deleted, Segment delta) {
+            int[] baseOrdinals = new int[base.size()];
+            int[] deltaOrdinals = new int[delta.size()];
+            int size = base.size() + delta.size();
+            long[] productIds = new long[size];
+            long[] categoryIds = new long[size];
+            float[] prices = new float[size];
+            int[] lengths = new int[size];
+            int count = 0;
+            int b = 0;
+            int d = 0;
+            // both segments are in product id order, so are the merged ordinals
+            while (b < base.size() || d < delta.size()) {
+                boolean fromBase = d >= delta.size()
+                        || b < base.size() && base.productIds[b] < delta.productIds[d];
+                Segment source = fromBase ? base : delta;
+                int ordinal = fromBase ? b++ : d++;
+                if (fromBase && isDeleted(deleted, ordinal)) {
+                    baseOrdinals[ordinal] = -1;
+                    continue;
+                }
+                (fromBase ? baseOrdinals : deltaOrdinals)[ordinal] = count;
+                productIds[count] = source.productIds[ordinal];
+                categoryIds[count] = source.categoryIds[ordinal];
+                prices[count] = source.prices[ordinal];
+                lengths[count] = source.lengths[ordinal];
+                ++count;
+            }
+            productIds = Arrays.copyOf(productIds, count);
+            categoryIds = Arrays.copyOf(categoryIds, count);
+            prices = Arrays.copyOf(prices, count);
+            lengths = Arrays.copyOf(lengths, count);
+
+            Set<String> terms = new HashSet<>(base.postings.keySet());
+            terms.addAll(delta.postings.keySet());
+            Map<String, Postings> postings = new HashMap<>(terms.size() * 4 / 3 + 1);
+            for (String term : terms) {
+                Postings basePostings = base.postings.get(term);
+                Postings deltaPostings = delta.postings.get(term);
+                int capacity = (basePostings == null ? 0 : basePostings.documents.length)
+                        + (deltaPostings == null ? 0 : deltaPostings.documents.length);
+                int[] documents = new int[capacity];
+                short[] frequencies = new short[capacity];
+                int length = 0;
+                int x = 0;
+                int y = 0;
+                int baseLength = basePostings == null ? 0 : basePostings.documents.length;
+                int deltaLength = deltaPostings == null ? 0 : deltaPostings.documents.length;
+                while (x < baseLength || y < deltaLength) {
+                    int fromBase = x < baseLength
+                            ? baseOrdinals[basePostings.documents[x]] : Integer.MAX_VALUE;
+                    if (x < baseLength && fromBase < 0) {
+                        ++x;
+                        continue;
+                    }
+                    int fromDelta = y < deltaLength
+                            ? deltaOrdinals[deltaPostings.documents[y]] : Integer.MAX_VALUE;
+                    if (fromBase < fromDelta) {
+                        documents[length] = fromBase;
+                        frequencies[length++] = basePostings.frequencies[x++];
+                    } else {
+                        documents[length] = fromDelta;
+                        frequencies[length++] = deltaPostings.frequencies[y++];
+                    }
+                }
+                if (length > 0) {
+                    postings.put(term, Postings.of(documents, frequencies, length, lengths));
+                }
+            }
+            return new Segment(productIds, categoryIds, prices, lengths, postings);
+        }
+    }
+
+    // Documents of a segment containing every term of a query, scored into topHits
+    private static final class Conjunction {
+        private final Segment segment;
+        // the shortest list first
+        private final Postings[] lists;
+        private final double[] weights;
+        private final double averageLength;
+        private final Filter filter;
+        private final long[] deleted;
+        private final TopHits topHits;
+        private final int[] cursors;
+        private final int[] blocks;
+
+        private Conjunction(Segment segment, Postings[] lists, double[] weights,
+                double averageLength, Filter filter, long[] deleted, TopHits topHits) {
+            this.segment = segment;
+            this.lists = lists;
+            this.weights = weights;
+            this.averageLength = averageLength;
+            this.filter = filter;
+            this.deleted = deleted;
+            this.topHits = topHits;
+            this.cursors = new int[lists.length];
+            this.blocks = new int[lists.length];
+        }
+
+        // Scores the documents of the lead found in every other list
+        void scan() {
+            int termCount = lists.length;
+            Postings lead = lists[0];
+            int i = 0;
+            while (i < lead.documents.length) {
+                int document = lead.documents[i];
+                if (topHits.isFull()) {
+                    // best possible score of the documents up to the end of the first block
+                    // ending among the blocks of the lists holding this document
+                    double upperBound = 0;
+                    int lastDocument = Integer.MAX_VALUE;
+                    for (int term = 0; term < termCount; ++term) {
+                        Postings list = lists[term];
+                        int block = term == 0 ? i >>> BLOCK_SHIFT
+                                : gallop(list.blockLastDocuments, blocks[term], document);
+                        if (block == list.blockLastDocuments.length) {
+                            return;
+                        }
+                        blocks[term] = block;
+                        upperBound += weights[term] * termScore(
+                                list.blockMaximumFrequencies[block],
+                                list.blockMinimumLengths[block], averageLength);
+                        lastDocument = Math.min(lastDocument, list.blockLastDocuments[block]);
+                    }
+                    if (upperBound < topHits.minimumScore()) {
+                        i = gallop(lead.documents, i, lastDocument + 1);
+                        continue;
+                    }
+                }
+                int term = 1;
+                for (; term < termCount; ++term) {
+                    int[] documents = lists[term].documents;
+                    cursors[term] = gallop(documents, cursors[term], document);
+                    if (cursors[term] == documents.length) {
+                        return;
+                    }
+                    if (documents[cursors[term]] != document) {
+                        // leapfrog: no lead document before this one can match
+                        i = gallop(lead.documents, i, documents[cursors[term]]);
+                        break;
+                    }
+                }
+                if (term < termCount) {
+                    continue;
+                }
+                if (!isDeleted(deleted, document) && filter.matches(
+                        segment.categoryIds[document], segment.prices[document])) {
+                    cursors[0] = i;
+                    double score = 0;
+                    for (int t = 0; t < termCount; ++t) {
+                        score += weights[t] * termScore(lists[t].frequencies[cursors[t]],
+                                segment.lengths[document], averageLength);
+                    }
+                    topHits.offer(score, segment.productIds[document]);
+                }
+                ++i;
+            }
+        }
+    }
+
+    // Documents containing a term, in ordinal order
+    private static final class Postings {
+        private final int[] documents;
+        private final short[] frequencies;
+        // per block of documents, for the upper bound of their scores
+        private final int[] blockLastDocuments;
+        private final short[] blockMaximumFrequencies;
+        private final int[] blockMinimumLengths;
+
+        private Postings(int[] documents, short[] frequencies, int[] blockLastDocuments,
+                short[] blockMaximumFrequencies, int[] blockMinimumLengths) {
+            this.documents = documents;
+            this.frequencies = frequencies;
+            this.blockLastDocuments = blockLastDocuments;
+            this.blockMaximumFrequencies = blockMaximumFrequencies;
+            this.blockMinimumLengths = blockMinimumLengths;
+        }
+
+        // lengths: lengths of the documents of the segment, by ordinal
+        static Postings of(int[] documents, short[] frequencies, int length, int[] lengths) {
+            int blocks = (length + (1 << BLOCK_SHIFT) - 1) >>> BLOCK_SHIFT;
+            int[] blockLastDocuments = new int[blocks];
+            short[] blockMaximumFrequencies = new short[blocks];
+            int[] blockMinimumLengths = new int[blocks];
+            Arrays.fill(blockMinimumLengths, Integer.MAX_VALUE);
+            for (int i = 0; i < length; ++i) {
+                int block = i >>> BLOCK_SHIFT;
+                blockLastDocuments[block] = documents[i];
+                blockMaximumFrequencies[block] =
+                        (short) Math.max(blockMaximumFrequencies[block], frequencies[i]);
+                blockMinimumLengths[block] =
+                        Math.min(blockMinimumLengths[block], lengths[documents[i]]);
+            }
+            return new Postings(Arrays.copyOf(documents, length),
+                    Arrays.copyOf(frequencies, length), blockLastDocuments,
+                    blockMaximumFrequencies, blockMinimumLengths);
+        }
+    }
+
+    // Builds a segment from documents added in product id order
+    private static final class SegmentBuilder {
+        private long[] productIds = new long[16];
+        private long[] categoryIds = new long[16];
+        private float[] prices = new float[16];
+        private int[] lengths = new int[16];
+        private int size = 0;
+        private final Map<String, PostingsBuilder> postings = new HashMap<>();
+
+        void add(Document document) {
+            if (size == productIds.length) {
+                int capacity = size * 2;
+                productIds = Arrays.copyOf(productIds, capacity);
+                categoryIds = Arrays.copyOf(categoryIds, capacity);
+                prices = Arrays.copyOf(prices, capacity);
+                lengths = Arrays.copyOf(lengths, capacity);
+            }
+            productIds[size] = document.productId();
+            categoryIds[size] = document.categoryId();
+            prices[size] = document.price();
+            lengths[size] = document.length();
+            int ordinal = size++;
+            document.termFrequencies().forEach((term, frequency) ->
+                    postings.computeIfAbsent(term, key -> new PostingsBuilder())
+                            .add(ordinal, frequency));
+        }
+
+        Segment build() {
+            int[] segmentLengths = Arrays.copyOf(lengths, size);
+            Map<String, Postings> segmentPostings = new HashMap<>(postings.size() * 4 / 3 + 1);
+            postings.forEach((term, builder) -> segmentPostings.put(term, Postings.of(
+                    builder.documents, builder.frequencies, builder.length, segmentLengths)));
+            return new Segment(Arrays.copyOf(productIds, size),
+                    Arrays.copyOf(categoryIds, size), Arrays.copyOf(prices, size),
+                    segmentLengths, segmentPostings);
+        }
+    }
+
+    private static final class PostingsBuilder {
+        private int[] documents = new int[4];
+        private short[] frequencies = new short[4];
+        private int length = 0;
+
+        void add(int document, int frequency) {
+            if (length == documents.length) {
+                documents = Arrays.copyOf(documents, length * 2);
+                frequencies = Arrays.copyOf(frequencies, length * 2);
+            }
+            documents[length] = document;
+            frequencies[length++] = (short) Math.min(frequency, Short.MAX_VALUE);
+        }
+    }
+
+    // The best "limit" documents seen so far, in a min-heap of (score, product id)
+    private static final class TopHits {
+        private final double[] scores;
+        private final long[] productIds;
+        private int size = 0;
+
+        TopHits(int limit) {
+            this.scores = new double[limit];
+            this.productIds = new long[limit];
+        }
+
+        boolean isFull() {
+            return size == scores.length;
+        }
+
+        double minimumScore() {
+            return scores[0];
+        }
+
+        void offer(double score, long productId) {
+            if (size < scores.length) {
+                int i = size++;
+                // sift up
+                while (i > 0) {
+                    int parent = (i - 1) >>> 1;
+                    if (!isBetter(scores[parent], productIds[parent], score, productId)) {
+                        break;
+                    }
+                    scores[i] = scores[parent];
+                    productIds[i] = productIds[parent];
+                    i = parent;
+                }
+                scores[i] = score;
+                productIds[i] = productId;
+                return;
+            }
+            if (!isBetter(score, productId, scores[0], productIds[0])) {
+                return;
+            }
+            // replace the worst and sift down
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= size) {
+                    break;
+                }
+                if (child + 1 < size && isBetter(scores[child], productIds[child],
+                        scores[child + 1], productIds[child + 1])) {
+                    ++child;
+                }
+                if (!isBetter(score, productId, scores[child], productIds[child])) {
+                    break;
+                }
+                scores[i] = scores[child];
+                productIds[i] = productIds[child];
+                i = child;
+            }
+            scores[i] = score;
+            productIds[i] = productId;
+        }
+
+        List<Long> productIdsByRelevance() {
+            Integer[] order = new Integer[size];
+            for (int i = 0; i < size; ++i) {
+                order[i] = i;
+            }
+            // best first
+            Arrays.sort(order, (x, y) -> scores[x] != scores[y]
+                    ? Double.compare(scores[y], scores[x])
+                    : Long.compare(productIds[y], productIds[x]));
+            List<Long> result = new ArrayList<>(size);
+            for (Integer i : order) {
+                result.add(productIds[i]);
+            }
+            return result;
+        }
+
+        // higher score first, then higher id (newer product)
+        private static boolean isBetter(double score, long productId, double otherScore,
+                long otherProductId) {
+            return score > otherScore || score == otherScore && productId > otherProductId;
+        }
+    }
+}
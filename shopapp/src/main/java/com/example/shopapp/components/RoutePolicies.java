@@ -0,0 +1,228 @@
+package com.example.shopapp.components;
+
+import com.example.shopapp.models.Role;
+import jakarta.servlet.http.HttpServletRequest;
+import java.util.Arrays;
+import java.util.function.Supplier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpMethod;
+import org.springframework.security.authentication.AuthenticationTrustResolver;
+import org.springframework.security.authentication.AuthenticationTrustResolverImpl;
+import org.springframework.security.authorization.AuthorizationDecision;
+import org.springframework.security.authorization.AuthorizationManager;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.web.access.intercept.RequestAuthorizationContext;
+import org.springframework.stereotype.Component;
+
+// Who can call each route of the API, in one table
+// The JWT filter skips the token of the PUBLIC routes and the security filter chain authorizes
+// every request with the same table, so both always agree. The table is compiled into a trie
+// of path segments with one access per HTTP method: a lookup walks the URI in place, without
+// splitting it or allocating. Routes missing from the table require authentication.
+// Path segments are literals or {variables}, literals win over variables like in Spring MVC.
+// HEAD has the access of GET: Spring MVC serves it with the GET handler.
+@Component
+public class RoutePolicies implements AuthorizationManager<RequestAuthorizationContext> {
+
+    private static final AuthorizationDecision GRANTED = new AuthorizationDecision(true);
+    private static final AuthorizationDecision DENIED = new AuthorizationDecision(false);
+    private static final AuthenticationTrustResolver TRUST_RESOLVER =
+            new AuthenticationTrustResolverImpl();
+    private static final HttpMethod[] METHODS = {HttpMethod.GET, HttpMethod.POST,
+            HttpMethod.PUT, HttpMethod.PATCH, HttpMethod.DELETE, HttpMethod.OPTIONS};
+
+    private final Node root = new Node();
+
+    public RoutePolicies(@Value("${api.prefix}") String apiPrefix) {
+        route(apiPrefix, HttpMethod.POST, "/users/register", Access.PUBLIC);
+        route(apiPrefix, HttpMethod.POST, "/users/login", Access.PUBLIC);
+        route(apiPrefix, HttpMethod.POST, "/users/logout", Access.AUTHENTICATED);
+        route(apiPrefix, HttpMethod.POST, "/users/{user_id}/tokens/revoke", Access.ADMIN);
+
+        route(apiPrefix, HttpMethod.GET, "/categories", Access.PUBLIC);
+        route(apiPrefix, HttpMethod.POST, "/categories", Access.ADMIN);
+        route(apiPrefix, HttpMethod.PUT, "/categories/{id}", Access.ADMIN);
+        route(apiPrefix, HttpMethod.DELETE, "/categories/{id}", Access.ADMIN);
+
+        // the catalog can be browsed without an account
+        route(apiPrefix, HttpMethod.GET, "/products", Access.PUBLIC);
+        route(apiPrefix, HttpMethod.GET, "/products/search", Access.PUBLIC);
+        route(apiPrefix, HttpMethod.GET, "/products/{id}", Access.PUBLIC);
+        route(apiPrefix, HttpMethod.GET, "/products/export", Access.ADMIN);
+        route(apiPrefix, HttpMethod.POST, "/products", Access.ADMIN);
+        route(apiPrefix, HttpMethod.POST, "/products/import", Access.ADMIN);
+        route(apiPrefix, HttpMethod.PUT, "/products/{id}", Access.ADMIN);
+        route(apiPrefix, HttpMethod.DELETE, "/products/{id}", Access.ADMIN);
+        // uploaded images are public, the file name is random
+        route(apiPrefix, HttpMethod.GET, "/products/images/{filename}", Access.PUBLIC);
+        route(apiPrefix, HttpMethod.DELETE, "/products/images/{image_id}", Access.ADMIN);
+        route(apiPrefix, HttpMethod.POST, "/products/uploads/{product_id}", Access.ADMIN);
+        route(apiPrefix, HttpMethod.POST, "/products/uploads/{product_id}/stream", Access.ADMIN);
+
+        route(apiPrefix, HttpMethod.POST, "/orders", Access.USER);
+        route(apiPrefix, HttpMethod.POST, "/orders/checkout", Access.USER);
+        route(apiPrefix, HttpMethod.GET, "/orders/export", Access.ADMIN);
+        route(apiPrefix, HttpMethod.GET, "/orders/user/{user_id}", Access.USER_OR_ADMIN);
+        route(apiPrefix, HttpMethod.GET, "/orders/{order_id}", Access.USER_OR_ADMIN);
+        route(apiPrefix, HttpMethod.PUT, "/orders/{order_id}", Access.ADMIN);
+        route(apiPrefix, HttpMethod.DELETE, "/orders/{order_id}", Access.ADMIN);
+
+        route(apiPrefix, HttpMethod.POST, "/order_details", Access.USER);
+        route(apiPrefix, HttpMethod.GET, "/order_details/{id}", Access.USER_OR_ADMIN);
+        route(apiPrefix, HttpMethod.GET, "/order_details/order/{order_id}", Access.USER_OR_ADMIN);
+        route(apiPrefix, HttpMethod.PUT, "/order_details/{id}", Access.ADMIN);
+        route(apiPrefix, HttpMethod.DELETE, "/order_details/{id}", Access.ADMIN);
+    }
+
+    public Access accessOf(HttpServletRequest request) {
+        int method = methodIndex(request.getMethod());
+        if (method < 0) {
+            return Access.AUTHENTICATED;
+        }
+        String path = request.getRequestURI();
+        Access access = find(root, path, 0, method);
+        return access != null ? access : Access.AUTHENTICATED;
+    }
+
+    // true if the route can be called without a token
+    public boolean isPublic(HttpServletRequest request) {
+        return accessOf(request) == Access.PUBLIC;
+    }
+
+    @Override
+    public AuthorizationDecision check(Supplier<Authentication> authentication,
+            RequestAuthorizationContext context) {
+        Access access = accessOf(context.getRequest());
+        if (access == Access.PUBLIC) {
+            return GRANTED;
+        }
+        Authentication currentAuthentication = authentication.get();
+        // requests without a token have an anonymous authentication
+        if (!TRUST_RESOLVER.isAuthenticated(currentAuthentication)) {
+            return DENIED;
+        }
+        if (access == Access.AUTHENTICATED) {
+            return GRANTED;
+        }
+        for (GrantedAuthority authority : currentAuthentication.getAuthorities()) {
+            if (access.isGrantedTo(authority.getAuthority())) {
+                return GRANTED;
+            }
+        }
+        return DENIED;
+    }
+
+    private void route(String apiPrefix, HttpMethod method, String path, Access access) {
+        Node node = root;
+        for (String segment : (apiPrefix + path).split("/")) {
+            if (segment.isEmpty()) {
+                continue;
+            }
+            node = segment.startsWith("{") ? node.variableChild() : node.literalChild(segment);
+        }
+        int index = methodIndex(method.name());
+        if (index < 0 || method == HttpMethod.HEAD) {
+            throw new IllegalArgumentException("Unsupported method " + method + " " + path);
+        }
+        if (node.access[index] != null) {
+            throw new IllegalStateException("Duplicate route " + method + " " + path);
+        }
+        node.access[index] = access;
+    }
+
+    // Access of the route matching path[start..], null if there is none
+    // Empty segments (double or trailing slashes) are skipped
+    private static Access find(Node node, String path, int start, int method) {
+        while (start < path.length() && path.charAt(start) == '/') {
+            ++start;
+        }
+        if (start >= path.length()) {
+            return node.access[method];
+        }
+        int end = path.indexOf('/', start);
+        if (end < 0) {
+            end = path.length();
+        }
+        int length = end - start;
+        for (int i = 0; i < node.literals.length; ++i) {
+            String literal = node.literals[i];
+            if (literal.length() == length && path.regionMatches(start, literal, 0, length)) {
+                Access access = find(node.literalChildren[i], path, end, method);
+                if (access != null) {
+                    return access;
+                }
+                break;
+            }
+        }
+        return node.variable != null ? find(node.variable, path, end, method) : null;
+    }
+
+    private static int methodIndex(String method) {
+        if (HttpMethod.HEAD.matches(method)) {
+            method = HttpMethod.GET.name();
+        }
+        for (int i = 0; i < METHODS.length; ++i) {
+            if (METHODS[i].name().equals(method)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public enum Access {
+        // no token needed
+        PUBLIC,
+        // any user with a valid token
+        AUTHENTICATED,
+        USER(Role.USER),
+        ADMIN(Role.ADMIN),
+        USER_OR_ADMIN(Role.USER, Role.ADMIN);
+
+        // ROLE_USER, ROLE_ADMIN, ... like the authorities of UserPrincipal
+        private final String[] authorities;
+
+        Access(String... roles) {
+            this.authorities = Arrays.stream(roles)
+                    .map(role -> "ROLE_" + role)
+                    .toArray(String[]::new);
+        }
+
+        boolean isGrantedTo(String authority) {
+            for (String grantedAuthority : authorities) {
+                if (grantedAuthority.equals(authority)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    // Written at startup only, read concurrently afterwards
+    private static final class Node {
+        private String[] literals = new String[0];
+        private Node[] literalChildren = new Node[0];
+        private Node variable;
+        private final Access[] access = new Access[METHODS.length];
+
+        private Node literalChild(String segment) {
+            for (int i = 0; i < literals.length; ++i) {
+                if (literals[i].equals(segment)) {
+                    return literalChildren[i];
+                }
+            }
+            literals = Arrays.copyOf(literals, literals.length + 1);
+            literalChildren = Arrays.copyOf(literalChildren, literalChildren.length + 1);
+            literals[literals.length - 1] = segment;
+            literalChildren[literalChildren.length - 1] = new Node();
+            return literalChildren[literalChildren.length - 1];
+        }
+
+        private Node variableChild() {
+            if (variable == null) {
+                variable = new Node();
+            }
+            return variable;
+        }
+    }
+}
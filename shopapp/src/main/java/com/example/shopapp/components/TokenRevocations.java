@@ -0,0 +1,221 @@
+package com.example.shopapp.components;
+
+import com.example.shopapp.repositories.TokenRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+// Ids (jti) of the revoked tokens that have not expired yet, kept in memory
+// so that JwtTokenFilter checks every request without querying the tokens table.
+// A Bloom filter answers "not revoked" for almost every token without touching the exact map,
+// which is only read for the few ids the filter might contain. Loaded from the database when
+// the application starts, then the tokens revoked since the last poll (by any node) are read
+// every jwt.revocation.refresh-interval. Expired tokens are deleted from the table in batches
+// and dropped from memory, the Bloom filter is rebuilt without them.
+// Metrics: jwt.revoked-tokens (gauge)
+@Slf4j
+@Component
+public class TokenRevocations {
+
+    // rows are read again for this long after their revoked_at, a transaction committing late
+    // or a node with a slow clock cannot make a revocation fall behind the watermark
+    private static final Duration REFRESH_OVERLAP = Duration.ofMinutes(1);
+    private static final LocalDateTime BEGINNING = LocalDateTime.of(1970, 1, 1, 0, 0);
+    private static final double FALSE_POSITIVE_RATE = 0.01;
+
+    private final TokenRepository tokenRepository;
+    private final int purgeBatchSize;
+    // token id -> expiration date
+    private final Map<String, Instant> revokedTokens = new ConcurrentHashMap<>();
+    // replaced when rebuilt, written under the lock of this object, read without lock
+    private volatile BloomFilter bloomFilter;
+    private LocalDateTime watermark = BEGINNING;
+
+    public TokenRevocations(
+            TokenRepository tokenRepository,
+            @Value("${jwt.revocation.expected-tokens}") int expectedTokens,
+            @Value("${jwt.revocation.purge-batch-size}") int purgeBatchSize,
+            MeterRegistry meterRegistry
+    ) {
+        this.tokenRepository = tokenRepository;
+        this.purgeBatchSize = purgeBatchSize;
+        this.bloomFilter = new BloomFilter(expectedTokens);
+        Gauge.builder("jwt.revoked-tokens", revokedTokens, Map::size)
+                .description("Revoked tokens that have not expired yet")
+                .register(meterRegistry);
+    }
+
+    public boolean isRevoked(String tokenId) {
+        return tokenId != null && bloomFilter.mightContain(tokenId)
+                && revokedTokens.containsKey(tokenId);
+    }
+
+    // A token revoked by this node, visible here right away and to the other nodes at their
+    // next refresh
+    public synchronized void revoked(String tokenId, Instant expiresAt) {
+        // the exact map first: a reader that sees the bit also sees the entry
+        revokedTokens.put(tokenId, expiresAt);
+        if (revokedTokens.size() > bloomFilter.expectedEntries) {
+            rebuild(revokedTokens.size() * 2);
+        } else {
+            bloomFilter.put(tokenId);
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        refreshQuietly();
+    }
+
+    @Scheduled(
+            initialDelayString = "${jwt.revocation.refresh-interval}",
+            fixedDelayString = "${jwt.revocation.refresh-interval}")
+    public void scheduledRefresh() {
+        refreshQuietly();
+    }
+
+    // Reads the tokens revoked since the previous refresh (all of them the first time)
+    public synchronized void refresh() {
+        LocalDateTime since = watermark.equals(BEGINNING)
+                ? BEGINNING : watermark.minus(REFRESH_OVERLAP);
+        List<Object[]> rows = tokenRepository.findRevokedSince(since, LocalDateTime.now());
+        for (Object[] row : rows) {
+            String tokenId = (String) row[0];
+            Instant expiresAt = toInstant((LocalDateTime) row[1]);
+            LocalDateTime revokedAt = (LocalDateTime) row[2];
+            if (!revokedTokens.containsKey(tokenId)) {
+                revoked(tokenId, expiresAt);
+            }
+            if (revokedAt.isAfter(watermark)) {
+                watermark = revokedAt;
+            }
+        }
+    }
+
+    @Scheduled(
+            initialDelayString = "${jwt.revocation.purge-interval}",
+            fixedDelayString = "${jwt.revocation.purge-interval}")
+    public void purge() {
+        LocalDateTime now = LocalDateTime.now();
+        try {
+            long deleted = 0;
+            int batch;
+            do {
+                batch = tokenRepository.deleteExpired(now, purgeBatchSize);
+                deleted += batch;
+            } while (batch == purgeBatchSize);
+            if (deleted > 0) {
+                log.info("Deleted {} expired tokens", deleted);
+            }
+        } catch (DataAccessException e) {
+            log.warn("Cannot delete the expired tokens: {}", e.getMessage());
+        }
+        // expired tokens are rejected by the JWT parser, they no longer need to be revoked
+        synchronized (this) {
+            Instant expiredBefore = toInstant(now);
+            if (revokedTokens.values().removeIf(expiresAt -> expiresAt.isBefore(expiredBefore))) {
+                rebuild(bloomFilter.expectedEntries);
+            }
+        }
+    }
+
+    private void refreshQuietly() {
+        try {
+            refresh();
+        } catch (DataAccessException e) {
+            // the database may not be reachable yet, the next refresh will retry
+            log.warn("Cannot load the revoked tokens: {}", e.getMessage());
+        }
+    }
+
+    // called with the lock held
+    private void rebuild(int expectedEntries) {
+        BloomFilter rebuilt = new BloomFilter(expectedEntries);
+        revokedTokens.keySet().forEach(rebuilt::put);
+        bloomFilter = rebuilt;
+    }
+
+    private static Instant toInstant(LocalDateTime dateTime) {
+        return dateTime.atZone(ZoneId.systemDefault()).toInstant();
+    }
+
+    // Fixed size Bloom filter, bits can be set concurrently with reads
+    // The k indexes are derived from two 64-bit hashes (Kirsch-Mitzenmacher)
+    private static final class BloomFilter {
+        private final int expectedEntries;
+        private final AtomicLongArray words;
+        private final long bits;
+        private final int hashes;
+
+        private BloomFilter(int expectedEntries) {
+            this.expectedEntries = Math.max(expectedEntries, 1024);
+            long optimalBits = (long) Math.ceil(-this.expectedEntries
+                    * Math.log(FALSE_POSITIVE_RATE) / (Math.log(2) * Math.log(2)));
+            this.words = new AtomicLongArray((int) ((optimalBits + 63) / 64));
+            this.bits = words.length() * 64L;
+            this.hashes = Math.max(1,
+                    (int) Math.round((double) bits / this.expectedEntries * Math.log(2)));
+        }
+
+        private void put(String value) {
+            long hash1 = hash(value);
+            long hash2 = mix(hash1);
+            for (int i = 0; i < hashes; ++i) {
+                long bit = Math.floorMod(hash1 + i * hash2, bits);
+                int word = (int) (bit >>> 6);
+                long mask = 1L << bit;
+                long current;
+                do {
+                    current = words.get(word);
+                } while ((current & mask) == 0
+                        && !words.compareAndSet(word, current, current | mask));
+            }
+        }
+
+        private boolean mightContain(String value) {
+            long hash1 = hash(value);
+            long hash2 = mix(hash1);
+            for (int i = 0; i < hashes; ++i) {
+                long bit = Math.floorMod(hash1 + i * hash2, bits);
+                if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        // 64-bit FNV-1a over the characters, no allocation
+        private static long hash(String value) {
+            long hash = 0xcbf29ce484222325L;
+            for (int i = 0; i < value.length(); ++i) {
+                hash ^= value.charAt(i);
+                hash *= 0x100000001b3L;
+            }
+            return mix(hash);
+        }
+
+        // MurmurHash3 finalizer
+        private static long mix(long hash) {
+            hash ^= hash >>> 33;
+            hash *= 0xff51afd7ed558ccdL;
+            hash ^= hash >>> 33;
+            hash *= 0xc4ceb9fe1a85ec53L;
+            hash ^= hash >>> 33;
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.example.shopapp.components;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+// Bounds the number of image uploads processed at the same time
+// An upload that finds no free slot is rejected at once (503) instead of queuing, so a burst
+// of uploads cannot exhaust the heap, the temporary disk space or the storage bandwidth.
+// Metrics: product.images.uploads.active, product.images.uploads.bytes-in-flight (declared
+// Content-Length of the admitted uploads) and product.images.uploads.rejected
+@Component
+public class UploadLimiter {
+
+    private final Semaphore slots;
+    private final AtomicLong bytesInFlight = new AtomicLong();
+    private final Counter rejected;
+
+    public UploadLimiter(
+            @Value("${product.images.max-concurrent-uploads}") int maximumConcurrentUploads,
+            MeterRegistry meterRegistry
+    ) {
+        this.slots = new Semaphore(maximumConcurrentUploads);
+        Gauge.builder("product.images.uploads.active", slots,
+                        semaphore -> maximumConcurrentUploads - semaphore.availablePermits())
+                .description("Image uploads being processed")
+                .register(meterRegistry);
+        Gauge.builder("product.images.uploads.bytes-in-flight", bytesInFlight, AtomicLong::get)
+                .description("Size of the image uploads being processed")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        this.rejected = Counter.builder("product.images.uploads.rejected")
+                .description("Image uploads rejected because all slots were taken")
+                .register(meterRegistry);
+    }
+
+    // Returns null when all the slots are taken, otherwise a slot to close when the upload
+    // is done; contentLength is -1 when unknown (chunked request)
+    public Slot tryAcquire(long contentLength) {
+        if (!slots.tryAcquire()) {
+            rejected.increment();
+            return null;
+        }
+        long bytes = Math.max(contentLength, 0);
+        bytesInFlight.addAndGet(bytes);
+        return new Slot(bytes);
+    }
+
+    public final class Slot implements AutoCloseable {
+        private final long bytes;
+        private boolean released = false;
+
+        private Slot(long bytes) {
+            this.bytes = bytes;
+        }
+
+        @Override
+        public void close() {
+            if (!released) {
+                released = true;
+                bytesInFlight.addAndGet(-bytes);
+                slots.release();
+            }
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.example.shopapp.components;
+
+import com.example.shopapp.models.Role;
+import com.example.shopapp.models.User;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+// JPA entity listener of User and Role, evicts the cached principals they change
+// Instantiated by Hibernate through the Spring bean container, so it can be injected; the
+// cache is looked up lazily, it depends on the entity manager being created.
+// The principal is evicted when the change is flushed and again after the commit, a request
+// reading the user in between would otherwise cache the old row.
+@RequiredArgsConstructor
+public class UserChangeListener {
+
+    private final ObjectProvider<UserPrincipalCache> userPrincipalCache;
+
+    @PostUpdate
+    @PostRemove
+    public void onUserChange(Object entity) {
+        if (entity instanceof User user) {
+            afterCommit(() -> userPrincipalCache.getObject().invalidate(user.getId()));
+        } else if (entity instanceof Role) {
+            // every user of the role is affected
+            afterCommit(() -> userPrincipalCache.getObject().invalidateAll());
+        }
+    }
+
+    private static void afterCommit(Runnable invalidation) {
+        invalidation.run();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(
+                    new TransactionSynchronization() {
+                        @Override
+                        public void afterCommit() {
+                            invalidation.run();
+                        }
+                    });
+        }
+    }
+}
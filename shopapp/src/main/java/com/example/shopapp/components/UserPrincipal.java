@@ -0,0 +1,40 @@
+package com.example.shopapp.components;
+
+import com.example.shopapp.models.User;
+import java.util.Collection;
+import java.util.List;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.userdetails.UserDetails;
+
+// The authenticated user of a request, see UserPrincipalCache
+// Immutable and shared between requests: the authorities are computed once and the password
+// is not kept, authentication with a password (login) uses the User entity.
+// id is null when the principal was built from the claims of the token
+public record UserPrincipal(Long id, String phoneNumber, List<GrantedAuthority> authorities)
+        implements UserDetails {
+
+    public static UserPrincipal of(User user) {
+        return new UserPrincipal(user.getId(), user.getPhoneNumber(),
+                authoritiesOf(user.getRole().getName()));
+    }
+
+    public static List<GrantedAuthority> authoritiesOf(String roleName) {
+        return List.of(new SimpleGrantedAuthority("ROLE_" + roleName.toUpperCase()));
+    }
+
+    @Override
+    public Collection<? extends GrantedAuthority> getAuthorities() {
+        return authorities;
+    }
+
+    @Override
+    public String getPassword() {
+        return null;
+    }
+
+    @Override
+    public String getUsername() {
+        return phoneNumber;
+    }
+}
@@ -0,0 +1,70 @@
+package com.example.shopapp.components;
+
+import com.example.shopapp.components.JwtUtils.VerifiedToken;
+import com.example.shopapp.repositories.UserRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import java.time.Duration;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.stereotype.Component;
+
+// Principals of the authenticated requests, keyed by phone number
+// Without it every request with a token reads the user and its role from the database.
+// Entries are invalidated when a user or a role is updated or deleted (UserChangeListener).
+// That invalidation is local: a change made on another node or directly in the database is
+// only seen here when the entry expires, jwt.principal-cache.ttl is the bound of that delay.
+// Revoked tokens (logout) do not wait for it, TokenRevocations is shared between nodes.
+// With jwt.principal-from-claims the principal is built from the role claim of the token and
+// the database is not read at all; a role change then applies when the token expires.
+// Exported as cache.* metrics with the tag cache=user-principals
+@Component
+public class UserPrincipalCache {
+
+    private final UserRepository userRepository;
+    private final boolean principalFromClaims;
+    private final Cache<String, UserPrincipal> cache;
+
+    public UserPrincipalCache(
+            UserRepository userRepository,
+            @Value("${jwt.principal-from-claims}") boolean principalFromClaims,
+            @Value("${jwt.principal-cache.maximum-size}") long maximumSize,
+            @Value("${jwt.principal-cache.ttl}") Duration ttl,
+            MeterRegistry meterRegistry
+    ) {
+        this.userRepository = userRepository;
+        this.principalFromClaims = principalFromClaims;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "user-principals");
+    }
+
+    // Throws UsernameNotFoundException if the user of the token does not exist (anymore),
+    // unknown users are not cached
+    public UserPrincipal get(VerifiedToken token) {
+        String roleName = token.claims().get(JwtUtils.ROLE_CLAIM, String.class);
+        if (principalFromClaims && roleName != null) {
+            return new UserPrincipal(null, token.phoneNumber(),
+                    UserPrincipal.authoritiesOf(roleName));
+        }
+        return cache.get(token.phoneNumber(), phoneNumber -> userRepository
+                .findByPhoneNumber(phoneNumber)
+                .map(UserPrincipal::of)
+                .orElseThrow(() -> new UsernameNotFoundException(
+                        "Cannot find user with phone number: " + phoneNumber)));
+    }
+
+    // by id rather than phone number, the phone number itself may have changed
+    public void invalidate(Long userId) {
+        cache.asMap().values().removeIf(principal -> userId.equals(principal.id()));
+    }
+
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+}
@@ -0,0 +1,15 @@
+package com.example.shopapp.configuration;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class ExecutorConfiguration {
+    // one virtual thread per uploaded file, the threads only wait on disk I/O
+    @Bean(destroyMethod = "close")
+    public ExecutorService imageUploadExecutor() {
+        return Executors.newVirtualThreadPerTaskExecutor();
+    }
+}
@@ -1,5 +1,6 @@
 package com.example.shopapp.controllers;
 
+import com.example.shopapp.components.CatalogVersions;
 import com.example.shopapp.dtos.CategoryDTO;
 import com.example.shopapp.models.Category;
 import com.example.shopapp.services.CategoryService;
@@ -19,6 +20,7 @@ import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.ServletWebRequest;
 
 @RestController
 @RequestMapping("${api.prefix}/categories")
@@ -28,6 +30,7 @@ import org.springframework.web.bind.annotation.RestController;
 public class CategoryController {
 
     private final CategoryService categoryService;
+    private final CatalogVersions catalogVersions;
 
     @PostMapping("")
     public ResponseEntity<?> createCategory(@Valid @RequestBody CategoryDTO categoryDTO,
@@ -43,13 +46,20 @@ public class CategoryController {
         return ResponseEntity.ok("Insert category successfully");
     }
 
-    // http://localhost:8088/api/v1/categories?page=1&limit=10
+    // http://localhost:8088/api/v1/categories?page=0&limit=10
+    // page is zero-based: page=0 returns the first 10 categories, ordered by id
     @GetMapping("")
     public ResponseEntity<List<Category>> getCategories(
             @RequestParam("page") int page,
-            @RequestParam("limit") int limit
+            @RequestParam("limit") int limit,
+            ServletWebRequest webRequest
     ) {
-        List<Category> categories = categoryService.getAllCategories();
+        // categories are served from memory, but 304 still saves the serialization and transfer
+        if (ConditionalRequests.checkNotModified(webRequest,
+                catalogVersions.categoriesETag(), -1)) {
+            return null;
+        }
+        List<Category> categories = categoryService.getAllCategories(page, limit);
         return ResponseEntity.ok(categories);
     }
 
@@ -0,0 +1,31 @@
+package com.example.shopapp.controllers;
+
+import java.time.Duration;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.context.request.ServletWebRequest;
+
+// Conditional GET (If-None-Match / If-Modified-Since) for the catalog endpoints
+final class ConditionalRequests {
+
+    // catalog data is the same for every user, so reverse proxies may cache it
+    static final CacheControl CATALOG_CACHE_CONTROL = CacheControl
+            .maxAge(Duration.ofSeconds(30))
+            .cachePublic();
+
+    private ConditionalRequests() {
+    }
+
+    // Adds ETag, Last-Modified and Cache-Control to the response and returns true if the
+    // client copy is still valid. The response is then already a 304 Not Modified and the
+    // controller must return null without building a body.
+    // eTag is null and lastModified -1 when unknown, the request is then never a 304
+    static boolean checkNotModified(ServletWebRequest webRequest, String eTag,
+            long lastModified) {
+        if (webRequest.getResponse() != null) {
+            webRequest.getResponse().setHeader(HttpHeaders.CACHE_CONTROL,
+                    CATALOG_CACHE_CONTROL.getHeaderValue());
+        }
+        return webRequest.checkNotModified(eTag, lastModified);
+    }
+}
@@ -0,0 +1,195 @@
+package com.example.shopapp.controllers;
+
+import com.example.shopapp.storage.BlobMetadata;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.util.List;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.web.context.request.ServletWebRequest;
+
+// Serves files like a static file server: conditional requests, single byte ranges (206)
+// and, for local files, zero-copy transfer through the Tomcat sendfile support
+final class FileResponses {
+
+    // uploaded files get a unique name and are never modified
+    static final CacheControl IMMUTABLE_CACHE_CONTROL = CacheControl
+            .maxAge(Duration.ofDays(365))
+            .cachePublic()
+            .immutable();
+
+    // request attributes of the Tomcat sendfile support (NIO connector)
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    private FileResponses() {
+    }
+
+    // Writes the whole file or the requested range to the response
+    // The file must exist, the controller must return null afterwards
+    static void writeFile(HttpServletRequest request, HttpServletResponse response, Path file)
+            throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        write(request, response, file.getFileName().toString(), attributes.size(),
+                attributes.lastModifiedTime().toMillis(), (start, end) -> {
+                    if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+                        // Tomcat writes the file with sendfile() after the servlet returns,
+                        // the bytes never go through the JVM heap
+                        request.setAttribute(SENDFILE_FILENAME, file.toAbsolutePath().toString());
+                        request.setAttribute(SENDFILE_START, start);
+                        request.setAttribute(SENDFILE_END, end + 1);
+                        return;
+                    }
+                    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                        WritableByteChannel output = Channels.newChannel(
+                                response.getOutputStream());
+                        long position = start;
+                        while (position <= end) {
+                            long transferred = channel.transferTo(position, end + 1 - position,
+                                    output);
+                            if (transferred <= 0) {
+                                throw new IOException("Unexpected end of file "
+                                        + file.getFileName());
+                            }
+                            position += transferred;
+                        }
+                    }
+                });
+    }
+
+    // Same as writeFile for content that is not a local file
+    // opener returns a stream positioned at the given offset
+    static void writeStream(HttpServletRequest request, HttpServletResponse response,
+            String filename, BlobMetadata metadata, StreamOpener opener) throws IOException {
+        write(request, response, filename, metadata.size(), metadata.lastModified(),
+                (start, end) -> {
+                    try (InputStream inputStream = opener.open(start)) {
+                        long remaining = end + 1 - start;
+                        byte[] buffer = new byte[(int) Math.min(remaining, 64 * 1024)];
+                        OutputStream output = response.getOutputStream();
+                        while (remaining > 0) {
+                            int read = inputStream.read(buffer, 0,
+                                    (int) Math.min(buffer.length, remaining));
+                            if (read < 0) {
+                                throw new IOException("Unexpected end of " + filename);
+                            }
+                            output.write(buffer, 0, read);
+                            remaining -= read;
+                        }
+                    }
+                });
+    }
+
+    // Same as writeFile for content held in memory
+    // content is not modified, only a duplicate is read
+    static void writeBuffer(HttpServletRequest request, HttpServletResponse response,
+            String filename, ByteBuffer content, long lastModified) throws IOException {
+        write(request, response, filename, content.remaining(), lastModified, (start, end) -> {
+            ByteBuffer body = content.duplicate();
+            body.limit(body.position() + (int) end + 1).position(body.position() + (int) start);
+            WritableByteChannel output = Channels.newChannel(response.getOutputStream());
+            while (body.hasRemaining()) {
+                output.write(body);
+            }
+        });
+    }
+
+    private static void write(HttpServletRequest request, HttpServletResponse response,
+            String filename, long length, long lastModified, BodyWriter bodyWriter)
+            throws IOException {
+        String eTag = "\"" + Long.toHexString(lastModified) + "-" + Long.toHexString(length)
+                + "\"";
+        response.setHeader(HttpHeaders.CACHE_CONTROL, IMMUTABLE_CACHE_CONTROL.getHeaderValue());
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        if (new ServletWebRequest(request, response).checkNotModified(eTag, lastModified)) {
+            return;
+        }
+        response.setContentType(MediaTypeFactory.getMediaType(filename)
+                .orElse(MediaType.APPLICATION_OCTET_STREAM)
+                .toString());
+
+        long start = 0;
+        long end = length - 1;
+        HttpRange range = requestedRange(request, eTag, lastModified);
+        if (range != null) {
+            boolean satisfiable;
+            try {
+                start = range.getRangeStart(length);
+                end = range.getRangeEnd(length);
+                // HttpRange does not reject a first byte past the end of the file
+                satisfiable = start < length && start <= end;
+            } catch (IllegalArgumentException e) {
+                satisfiable = false;
+            }
+            if (!satisfiable) {
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+                response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                return;
+            }
+            response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+            response.setHeader(HttpHeaders.CONTENT_RANGE,
+                    "bytes " + start + "-" + end + "/" + length);
+        }
+        long contentLength = end - start + 1;
+        response.setContentLengthLong(contentLength);
+        if ("HEAD".equals(request.getMethod()) || contentLength == 0) {
+            return;
+        }
+        bodyWriter.write(start, end);
+    }
+
+    // Only a single range is served as 206, several ranges (multipart/byteranges) and
+    // a stale If-Range get the whole file
+    private static HttpRange requestedRange(HttpServletRequest request, String eTag,
+            long lastModified) {
+        String rangeHeader = request.getHeader(HttpHeaders.RANGE);
+        if (rangeHeader == null) {
+            return null;
+        }
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        if (ifRange != null && !ifRange.equals(eTag)) {
+            long ifRangeDate = -1;
+            try {
+                ifRangeDate = request.getDateHeader(HttpHeaders.IF_RANGE);
+            } catch (IllegalArgumentException e) {
+                // neither our ETag nor a date
+            }
+            if (ifRangeDate < 0 || lastModified / 1000 > ifRangeDate / 1000) {
+                return null;
+            }
+        }
+        try {
+            List<HttpRange> ranges = HttpRange.parseRanges(rangeHeader);
+            return ranges.size() == 1 ? ranges.get(0) : null;
+        } catch (IllegalArgumentException e) {
+            // a malformed Range header is ignored (RFC 9110)
+            return null;
+        }
+    }
+
+    interface StreamOpener {
+        InputStream open(long offset) throws IOException;
+    }
+
+    // writes the bytes from start to end (inclusive)
+    private interface BodyWriter {
+        void write(long start, long end) throws IOException;
+    }
+}
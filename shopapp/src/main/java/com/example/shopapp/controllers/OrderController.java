@@ -1,12 +1,17 @@
 package com.example.shopapp.controllers;
 
 
+import com.example.shopapp.dtos.CheckoutDTO;
 import com.example.shopapp.dtos.OrderDTO;
+import com.example.shopapp.responses.CheckoutResponse;
 import com.example.shopapp.responses.OrderResponse;
+import com.example.shopapp.services.ExportService;
 import com.example.shopapp.services.OrderService;
 import jakarta.validation.Valid;
 import java.util.List;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.BindingResult;
 import org.springframework.validation.FieldError;
@@ -17,13 +22,16 @@ import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 @RestController
 @RequestMapping("${api.prefix}/orders")
 @RequiredArgsConstructor
 public class OrderController {
     private final OrderService orderService;
+    private final ExportService exportService;
 
     @PostMapping("")
     public ResponseEntity<?> createOrder(@RequestBody @Valid OrderDTO orderDTO,
@@ -41,6 +49,44 @@ public class OrderController {
         }
     }
 
+    @PostMapping("/checkout") // Create an order with all its details in one request
+    public ResponseEntity<?> checkout(@RequestBody @Valid CheckoutDTO checkoutDTO,
+            BindingResult bindingResult) {
+        try {
+            if (bindingResult.hasErrors()) {
+                List<String> errorMessages = bindingResult.getFieldErrors().stream()
+                        .map(FieldError::getDefaultMessage).toList();
+                return ResponseEntity.badRequest().body(errorMessages);
+            }
+            CheckoutResponse checkoutResponse = orderService.checkout(checkoutDTO);
+            return ResponseEntity.ok(checkoutResponse);
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+
+    @GetMapping("/export") // Export all orders with their details
+    // GET http://localhost:8088/api/v1/orders/export?format=ndjson
+    // Admin export, streamed from a database cursor
+    public ResponseEntity<?> exportOrders(
+            @RequestParam(value = "format", defaultValue = ExportService.FORMAT_NDJSON)
+            String format
+    ) {
+        if (!ExportService.FORMAT_CSV.equals(format)
+                && !ExportService.FORMAT_NDJSON.equals(format)) {
+            return ResponseEntity.badRequest().body("Unsupported export format: " + format);
+        }
+        StreamingResponseBody responseBody = outputStream ->
+                exportService.exportOrders(outputStream, format);
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION,
+                        "attachment; filename=\"orders." + format + "\"")
+                .contentType(ExportService.FORMAT_CSV.equals(format)
+                        ? MediaType.parseMediaType("text/csv")
+                        : MediaType.parseMediaType("application/x-ndjson"))
+                .body(responseBody);
+    }
+
     @GetMapping("/user/{user_id}") // Get orders by user ID
     // GET http://localhost:8088/api/v1/orders/1
     public ResponseEntity<?> getOrdersByUserId(@Valid @PathVariable("user_id") Long userId) {
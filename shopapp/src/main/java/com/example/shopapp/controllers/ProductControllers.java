@@ -1,30 +1,43 @@
 package com.example.shopapp.controllers;
 
+import com.example.shopapp.components.CatalogVersions;
+import com.example.shopapp.components.ImageByteCache.CachedImage;
+import com.example.shopapp.components.ImageStore;
 import com.example.shopapp.dtos.ProductDTO;
-import com.example.shopapp.dtos.ProductImageDTO;
 import com.example.shopapp.exceptions.DataNotFoundException;
+import com.example.shopapp.exceptions.InvalidParamException;
 import com.example.shopapp.models.Product;
 import com.example.shopapp.models.ProductImage;
+import com.example.shopapp.responses.ProductImportResponse;
 import com.example.shopapp.responses.ProductListResponse;
 import com.example.shopapp.responses.ProductResponse;
+import com.example.shopapp.services.ExportService;
+import com.example.shopapp.services.ProductImageUploadService;
+import com.example.shopapp.services.ProductImportService;
 import com.example.shopapp.services.ProductService;
+import com.example.shopapp.storage.BlobMetadata;
 import com.github.javafaker.Faker;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
 import java.io.IOException;
+import java.net.URI;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.nio.file.StandardCopyOption;
+import java.time.ZoneId;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Objects;
+import java.util.Optional;
 import lombok.RequiredArgsConstructor;
+import org.apache.commons.fileupload2.core.FileUploadSizeException;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Sort;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
-import org.springframework.util.StringUtils;
 import org.springframework.validation.BindingResult;
 import org.springframework.validation.FieldError;
 import org.springframework.web.bind.annotation.DeleteMapping;
@@ -37,14 +50,24 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RequestPart;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.ServletWebRequest;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 @RestController
 @RequestMapping("${api.prefix}/products")
 @RequiredArgsConstructor
 public class ProductControllers {
 
+    // upper bound of the limit request parameter of GET /products
+    private static final int MAXIMUM_PAGE_LIMIT = 100;
+
     private final ProductService productService;
+    private final CatalogVersions catalogVersions;
+    private final ProductImportService productImportService;
+    private final ExportService exportService;
+    private final ProductImageUploadService productImageUploadService;
+    private final ImageStore imageStore;
 
     @PostMapping("") // http://localhost:8088/api/v1/products
     public ResponseEntity<?> createProduct(
@@ -67,6 +90,22 @@ public class ProductControllers {
         }
     }
 
+    @PostMapping(value = "/import", consumes = {"text/csv", "application/x-ndjson"})
+    // POST http://localhost:8088/api/v1/products/import
+    // Admin bulk import, the body is streamed and inserted in JDBC batches
+    public ResponseEntity<?> importProducts(HttpServletRequest request) {
+        String format = request.getContentType().startsWith("text/csv")
+                ? ProductImportService.FORMAT_CSV
+                : ProductImportService.FORMAT_NDJSON;
+        try {
+            ProductImportResponse productImportResponse = productImportService.importProducts(
+                    request.getInputStream(), format);
+            return ResponseEntity.ok(productImportResponse);
+        } catch (InvalidParamException | IOException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+
     @PostMapping(value = "/uploads/{product_id}")
     // http://localhost:8088/api/v1/products/upload
     public ResponseEntity<?> uploadImages(
@@ -75,13 +114,13 @@ public class ProductControllers {
             // https://blogs.perficient.com/2020/07/27/requestbody-and-multipart-on-spring-boot/
     ) {
         try {
-            Product existingProduct = productService.getProductById(productId);
             files = files == null ? new ArrayList<>(0) : files;
             if (files.size() > ProductImage.MAXIMUM_IMAGES_PER_PRODUCT) {
                 return ResponseEntity.badRequest()
                         .body("You can only upload a maximum of 5 images");
             }
-            List<ProductImage> productImages = new ArrayList<>();
+            // validate every file before writing any of them
+            List<MultipartFile> imageFiles = new ArrayList<>(files.size());
             for (MultipartFile file : files) {
                 if (file.getSize() == 0) {
                     // skip empty files
@@ -94,74 +133,119 @@ public class ProductControllers {
                 }
 
                 String contentType = file.getContentType();
-                if (contentType == null || !contentType.startsWith("image/")) {
+                if (contentType == null || !contentType.startsWith("image/")
+                        || file.getOriginalFilename() == null) {
                     return ResponseEntity.status(HttpStatus.UNSUPPORTED_MEDIA_TYPE)
                             .body("Only image files are supported");
                 }
-
-                // Save files and update in DTO
-                String fileName = storeFile(file); // replace with actual file name after saving
-
-                // Save the file to the server
-                // The file is saved in product_images table
-                ProductImage productImage = productService.createProductImage(
-                        existingProduct.getId(),
-                        ProductImageDTO.builder()
-                                .imageUrl(fileName)
-                                .build()
-                );
-                productImages.add(productImage);
-
+                imageFiles.add(file);
             }
+            // the files are written concurrently and the rows inserted in one transaction
+            List<ProductImage> productImages = productImageUploadService.uploadImages(
+                    productId, imageFiles);
             return ResponseEntity.ok().body(productImages);
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
         }
     }
 
-    private String storeFile(MultipartFile file) throws IOException {
-        if (!isImage(file) || file.getOriginalFilename() == null) {
-            throw new IOException("Invalid file format");
-        }
-
-        // get original filename
-        // cleanPath is used to prevent directory traversal attacks
-        String filename = StringUtils.cleanPath(Objects.requireNonNull(file.getOriginalFilename()));
-
-        // Insert UUID to the filename to ensure that the filename is unique
-        String uniqueFilename = java.util.UUID.randomUUID().toString() + "_" + filename;
-
-        // Get the folder path that you want to save
-        Path uploadDir = Paths.get("uploads");
-
-        // Create the folder if it does not exist
-        if (!Files.exists(uploadDir)) {
-            Files.createDirectories(uploadDir);
+    @PostMapping(value = "/uploads/{product_id}/stream",
+            consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    // http://localhost:8088/api/v1/products/uploads/1/stream
+    // Same form as /uploads/{product_id}, the parts are stored while they are received
+    public ResponseEntity<?> uploadImageStream(
+            @PathVariable("product_id") Long productId,
+            HttpServletRequest request
+    ) {
+        try {
+            List<ProductImage> productImages = productImageUploadService.uploadImageStream(
+                    productId, request);
+            return ResponseEntity.ok().body(productImages);
+        } catch (FileUploadSizeException e) {
+            return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE)
+                    .body("File size is too large! Max file size is 10MB");
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
         }
-
-        // Full path to the file
-        Path destionationPath = Paths.get(uploadDir.toString(), uniqueFilename);
-
-        // Copy file into the folder
-        Files.copy(file.getInputStream(), destionationPath, StandardCopyOption.REPLACE_EXISTING);
-
-        return uniqueFilename;
     }
 
-    private boolean isImage(MultipartFile file) {
-        String contentType = file.getContentType();
-        return contentType != null && contentType.startsWith("image/");
+    @GetMapping("/images/{filename}")
+    // http://localhost:8088/api/v1/products/images/<sha-256>.jpg
+    // Public, so that the images can be used in <img> tags without a token
+    public ResponseEntity<?> getImage(
+            @PathVariable("filename") String filename,
+            HttpServletRequest request,
+            HttpServletResponse response
+    ) throws IOException {
+        // only image keys are accepted (no "..", no sub-directory)
+        if (!imageStore.isValidKey(filename)) {
+            return ResponseEntity.badRequest().body("Invalid file name");
+        }
+        // object stores: the client downloads the image directly from the store
+        Optional<URI> directUrl = imageStore.directUrl(filename);
+        if (directUrl.isPresent()) {
+            // the URL expires, the redirect itself must not be cached
+            return ResponseEntity.status(HttpStatus.FOUND)
+                    .location(directUrl.get())
+                    .cacheControl(CacheControl.noStore())
+                    .build();
+        }
+        // the most requested images are served from memory
+        Optional<CachedImage> cachedImage = imageStore.cachedContent(filename);
+        if (cachedImage.isPresent()) {
+            FileResponses.writeBuffer(request, response, filename,
+                    cachedImage.get().content(), cachedImage.get().lastModified());
+            return null;
+        }
+        Optional<Path> file = imageStore.localPath(filename);
+        if (file.isPresent()) {
+            if (!Files.isRegularFile(file.get())) {
+                return ResponseEntity.notFound().build();
+            }
+            FileResponses.writeFile(request, response, file.get());
+            return null;
+        }
+        Optional<BlobMetadata> metadata = imageStore.stat(filename);
+        if (metadata.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        FileResponses.writeStream(request, response, filename, metadata.get(),
+                offset -> imageStore.open(filename, offset));
+        return null;
     }
 
-    @GetMapping("") // http://localhost:8088/api/v1/products?page=1&limit=10
-    public ResponseEntity<ProductListResponse> getProducts(
-            @RequestParam("page") int page,
-            @RequestParam("limit") int limit
+    @GetMapping("") // http://localhost:8088/api/v1/products?page=0&limit=10
+    // cursor mode: http://localhost:8088/api/v1/products?limit=10&after=<next_cursor>
+    // both modes accept an optional category filter: &category_id=2
+    public ResponseEntity<?> getProducts(
+            @RequestParam(value = "page", required = false) Integer page,
+            @RequestParam("limit") int limit,
+            @RequestParam(value = "after", required = false) String after,
+            @RequestParam(value = "category_id", required = false) Long categoryId,
+            ServletWebRequest webRequest
     ) {
+        // answer 304 before touching the database if no product (of the category)
+        // changed since the last fetch
+        if (ConditionalRequests.checkNotModified(webRequest,
+                catalogVersions.productsETag(categoryId), -1)) {
+            return null;
+        }
+        // never let a client ask for an unbounded page
+        limit = Math.max(1, Math.min(limit, MAXIMUM_PAGE_LIMIT));
+        if (page == null) {
+            // no page number means keyset (cursor) pagination, no OFFSET and no COUNT(*)
+            try {
+                return ResponseEntity.ok(productService.getProductsAfter(categoryId, after, limit));
+            } catch (InvalidParamException e) {
+                return ResponseEntity.badRequest().body(e.getMessage());
+            }
+        }
         // Create Pageable from page and limit
         // page is zero-based
-        PageRequest pageRequest = PageRequest.of(page, limit, Sort.by("createdAt").descending());
-        Page<ProductResponse> productResponsePage = productService.getAllProducts(pageRequest);
+        PageRequest pageRequest = PageRequest.of(Math.max(page, 0), limit,
+                Sort.by("createdAt").descending());
+        Page<ProductResponse> productResponsePage = productService.getAllProducts(categoryId,
+                pageRequest);
         // get total pages
         int totalPages = productResponsePage.getTotalPages();
         // get list of products
@@ -175,11 +259,62 @@ public class ProductControllers {
         );
     }
 
+    @GetMapping("/export") // http://localhost:8088/api/v1/products/export?format=csv
+    // Admin export of the whole catalog, streamed from a database cursor
+    public ResponseEntity<?> exportProducts(
+            @RequestParam(value = "format", defaultValue = ExportService.FORMAT_NDJSON)
+            String format
+    ) {
+        if (!ExportService.FORMAT_CSV.equals(format)
+                && !ExportService.FORMAT_NDJSON.equals(format)) {
+            return ResponseEntity.badRequest().body("Unsupported export format: " + format);
+        }
+        StreamingResponseBody responseBody = outputStream ->
+                exportService.exportProducts(outputStream, format);
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION,
+                        "attachment; filename=\"products." + format + "\"")
+                .contentType(ExportService.FORMAT_CSV.equals(format)
+                        ? MediaType.parseMediaType("text/csv")
+                        : MediaType.parseMediaType("application/x-ndjson"))
+                .body(responseBody);
+    }
+
+    @GetMapping("/search") // http://localhost:8088/api/v1/products/search?q=iphone&limit=10
+    public ResponseEntity<ProductListResponse> searchProducts(
+            @RequestParam("q") String query,
+            @RequestParam(value = "category_id", required = false) Long categoryId,
+            @RequestParam(value = "min_price", required = false) Float minPrice,
+            @RequestParam(value = "max_price", required = false) Float maxPrice,
+            @RequestParam(value = "limit", defaultValue = "20") int limit
+    ) {
+        // products are ranked by relevance, most relevant first
+        List<ProductResponse> productResponses = productService.searchProducts(query, categoryId,
+                minPrice, maxPrice, Math.max(1, Math.min(limit, MAXIMUM_PAGE_LIMIT)));
+        return ResponseEntity.ok(
+                ProductListResponse
+                        .builder()
+                        .products(productResponses)
+                        .build()
+        );
+    }
+
     @GetMapping("/{id}") // http://localhost:8088/api/v1/products/1
-    public ResponseEntity<?> getProductById(@PathVariable("id") Long productId) {
+    public ResponseEntity<?> getProductById(
+            @PathVariable("id") Long productId,
+            ServletWebRequest webRequest
+    ) {
         try {
-            Product existingProduct = productService.getProductById(productId);
-            return ResponseEntity.ok(ProductResponse.fromProduct(existingProduct));
+            // usually served from the product cache, the ETag is derived from updatedAt
+            ProductResponse productResponse = productService.getProductResponseById(productId);
+            long lastModified = productResponse.getUpdatedAt() == null ? -1
+                    : productResponse.getUpdatedAt()
+                            .atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+            String eTag = "product-" + productId + "-" + lastModified;
+            if (ConditionalRequests.checkNotModified(webRequest, eTag, lastModified)) {
+                return null;
+            }
+            return ResponseEntity.ok(productResponse);
         } catch (DataNotFoundException e) {
             return ResponseEntity.status(HttpStatus.NOT_FOUND).body(e.getMessage());
         }
@@ -204,6 +339,18 @@ public class ProductControllers {
         }
     }
 
+    @DeleteMapping("/images/{image_id}") // http://localhost:8088/api/v1/products/images/1
+    public ResponseEntity<String> deleteProductImage(@PathVariable("image_id") Long imageId) {
+        try {
+            // the file itself is only deleted when no other product image uses the same bytes
+            productService.deleteProductImage(imageId);
+            return ResponseEntity.ok("Product image with id " + imageId
+                    + " has been deleted successfully");
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+
     @DeleteMapping("/{id}") // http://localhost:8088/api/v1/products/1
     public ResponseEntity<String> deleteProduct(@PathVariable("id") int productId) {
         productService.deleteProduct((long) productId);
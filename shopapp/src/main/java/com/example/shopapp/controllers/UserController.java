@@ -1,18 +1,27 @@
 package com.example.shopapp.controllers;
 
+import com.example.shopapp.components.LoginRateLimiter;
 import com.example.shopapp.dtos.UserDTO;
 import com.example.shopapp.dtos.UserLoginDTO;
 import com.example.shopapp.exceptions.DataNotFoundException;
 import com.example.shopapp.models.User;
 import com.example.shopapp.services.UserService;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
+import java.time.Duration;
 import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.BindingResult;
 import org.springframework.validation.FieldError;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
@@ -21,11 +30,20 @@ import org.springframework.web.bind.annotation.RestController;
 @RequiredArgsConstructor
 public class UserController {
     private final UserService userService;
+    private final LoginRateLimiter loginRateLimiter;
+    @Value("${login.retry-after}")
+    private Duration retryAfter;
     @PostMapping("/register")
     public ResponseEntity<?> createUser(
             @Valid @RequestBody UserDTO userDTO,
-            BindingResult bindingResult
+            BindingResult bindingResult,
+            HttpServletRequest request
     ) {
+        Duration wait = loginRateLimiter.tryAcquire(request.getRemoteAddr(),
+                userDTO.getPhoneNumber());
+        if (!wait.isZero()) {
+            return tooManyRequests(wait);
+        }
         try {
             if (bindingResult.hasErrors()) {
                 List<String> errorMessages = bindingResult.getFieldErrors().stream()
@@ -38,21 +56,74 @@ public class UserController {
             User user = userService.createUser(userDTO);
 //            return ResponseEntity.ok("Registered successfully: ");
             return ResponseEntity.ok(user);
+        } catch (RejectedExecutionException e) {
+            return passwordHashingUnavailable();
         } catch (Exception e) {
             return ResponseEntity.badRequest().body(e.getMessage());
         }
     }
 
     @PostMapping("/login")
-    public ResponseEntity<?> loginUser(@Valid @RequestBody UserLoginDTO userLoginDTO) {
+    public ResponseEntity<?> loginUser(
+            @Valid @RequestBody UserLoginDTO userLoginDTO,
+            HttpServletRequest request
+    ) {
+        // limited per client IP and per phone number, see LoginRateLimiter
+        Duration wait = loginRateLimiter.tryAcquire(request.getRemoteAddr(),
+                userLoginDTO.getPhoneNumber());
+        if (!wait.isZero()) {
+            return tooManyRequests(wait);
+        }
         // Valid login credentials and generate a token
         String token = null;
         try {
             token = userService.loginUser(userLoginDTO.getPhoneNumber(), userLoginDTO.getPassword());
             // Return the token in response
             return ResponseEntity.ok(token);
+        } catch (RejectedExecutionException e) {
+            return passwordHashingUnavailable();
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+
+    @PostMapping("/logout")
+    // Revokes the token of the request
+    public ResponseEntity<?> logoutUser(
+            @RequestHeader(HttpHeaders.AUTHORIZATION) String authorization
+    ) {
+        try {
+            userService.logout(authorization.substring("Bearer ".length()));
+            return ResponseEntity.ok("Logged out successfully");
         } catch (Exception e) {
             return ResponseEntity.badRequest().body(e.getMessage());
         }
     }
+
+    @PostMapping("/{user_id}/tokens/revoke")
+    // Admin only: signs the user out of every device, e.g. after a password leak
+    public ResponseEntity<?> revokeTokens(@PathVariable("user_id") Long userId) {
+        try {
+            int revokedTokens = userService.revokeTokens(userId);
+            return ResponseEntity.ok("Revoked " + revokedTokens + " tokens");
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+
+    private ResponseEntity<?> tooManyRequests(Duration wait) {
+        // Retry-After is in whole seconds, rounded up
+        long retryAfterSeconds = Math.max(1, (wait.toMillis() + 999) / 1000);
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds))
+                .body("Too many attempts, retry in " + retryAfterSeconds + " seconds");
+    }
+
+    // too many logins and registrations at the same time, see PasswordHasher
+    private ResponseEntity<?> passwordHashingUnavailable() {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER,
+                        String.valueOf(Math.max(1, retryAfter.toSeconds())))
+                .body("Too many login attempts in progress, retry later");
+    }
 }
@@ -0,0 +1,29 @@
+package com.example.shopapp.dtos;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotNull;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// One line of a checkout, the price is read from the product, never sent by the client
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class CartItemDTO {
+    @JsonProperty("product_id")
+    @NotNull(message = "Product ID is required")
+    @Min(value = 1, message = "Product ID must be greater than 0")
+    private Long productId;
+
+    @JsonProperty("number_of_products")
+    @NotNull(message = "Number of products is required")
+    @Min(value = 1, message = "Number of products must be greater than 0")
+    private Integer numberOfProducts;
+
+    @JsonProperty("color")
+    private String color;
+}
@@ -0,0 +1,29 @@
+package com.example.shopapp.dtos;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonUnwrapped;
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Size;
+import java.util.List;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// The fields of OrderDTO plus the lines of the order, in one request
+// total_money is ignored, it is computed from the prices of the products
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class CheckoutDTO {
+    @JsonUnwrapped
+    @Valid
+    private OrderDTO order;
+
+    @JsonProperty("cart_items")
+    @NotEmpty(message = "Cart items are required")
+    @Size(max = 100, message = "An order cannot have more than 100 lines")
+    private List<@Valid CartItemDTO> cartItems;
+}
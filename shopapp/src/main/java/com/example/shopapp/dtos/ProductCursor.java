@@ -0,0 +1,45 @@
+package com.example.shopapp.dtos;
+
+import com.example.shopapp.exceptions.InvalidParamException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Position of the last product returned by a keyset (seek) page
+// Clients only see it as an opaque token, for example: ?after=MjAyNC0xMC0wMVQxMDowMDowMHwxMjM
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ProductCursor {
+    private static final String SEPARATOR = "|";
+
+    private LocalDateTime createdAt;
+
+    private Long id;
+
+    public String encode() {
+        String raw = createdAt + SEPARATOR + id;
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static ProductCursor decode(String token) throws InvalidParamException {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            int separatorIndex = raw.lastIndexOf(SEPARATOR);
+            if (separatorIndex < 0) {
+                throw new InvalidParamException("Invalid cursor: " + token);
+            }
+            return new ProductCursor(
+                    LocalDateTime.parse(raw.substring(0, separatorIndex)),
+                    Long.parseLong(raw.substring(separatorIndex + 1)));
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            // NumberFormatException is an IllegalArgumentException
+            throw new InvalidParamException("Invalid cursor: " + token, e);
+        }
+    }
+}
@@ -1,21 +1,20 @@
 package com.example.shopapp.filters;
 
 import com.example.shopapp.components.JwtUtils;
+import com.example.shopapp.components.JwtUtils.VerifiedToken;
+import com.example.shopapp.components.RoutePolicies;
+import com.example.shopapp.components.TokenRevocations;
+import com.example.shopapp.components.UserPrincipalCache;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import java.io.IOException;
-import java.util.Arrays;
-import java.util.List;
 import lombok.RequiredArgsConstructor;
-import org.springframework.beans.factory.annotation.Value;
-import org.springframework.data.util.Pair;
 import org.springframework.lang.NonNull;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
-import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.web.authentication.WebAuthenticationDetailsSource;
 import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
@@ -24,13 +23,11 @@ import org.springframework.web.filter.OncePerRequestFilter;
 @RequiredArgsConstructor
 public class JwtTokenFilter extends OncePerRequestFilter {
 
-    private final UserDetailsService userDetailsService;
-
-    // userDetailsService is used to load the user details from the database
-    // it is injected via the constructor, and it is a bean defined in the SecurityConfig class
+    // the principals are cached, requests with a token do not query the users table
+    private final UserPrincipalCache userPrincipalCache;
     private final JwtUtils jwtUtils;
-    @Value("${api.prefix}")
-    private String apiPrefix;
+    private final RoutePolicies routePolicies;
+    private final TokenRevocations tokenRevocations;
 
     @Override
     protected void doFilterInternal(
@@ -60,15 +57,22 @@ public class JwtTokenFilter extends OncePerRequestFilter {
             }
             String token = authHeader.substring(
                     "Bearer ".length()); // remove "Bearer " from the token
-            String phoneNumber = jwtUtils.extractPhoneNumber(token);
-            // if the phone number is not null and the authentication is null then we set the authentication
-            // via the userDetailsService
-            if (phoneNumber != null
-                    && SecurityContextHolder.getContext().getAuthentication() == null) {
-                // get the user details from the userDetailsService
-                var userDetails = userDetailsService.loadUserByUsername(phoneNumber);
-                // validate the token
-                if (jwtUtils.validateToken(token, userDetails)) {
+            // the signature and the expiration date are checked once, the claims are reused
+            VerifiedToken verifiedToken = jwtUtils.verify(token);
+            // logged out or revoked by an admin, checked in memory
+            if (tokenRevocations.isRevoked(verifiedToken.tokenId())) {
+                SecurityContextHolder.clearContext();
+                response.sendError(HttpServletResponse.SC_UNAUTHORIZED, "Token revoked");
+                return;
+            }
+            String phoneNumber = verifiedToken.phoneNumber();
+            // if the authentication is null then we set the authentication
+            // via the userPrincipalCache
+            if (SecurityContextHolder.getContext().getAuthentication() == null) {
+                // get the user details from the userPrincipalCache
+                var userDetails = userPrincipalCache.get(verifiedToken);
+                // the token must belong to the loaded user
+                if (phoneNumber.equals(userDetails.getUsername())) {
                     var authenticationToken = new UsernamePasswordAuthenticationToken(
                             userDetails, null,
                             userDetails.getAuthorities()
@@ -89,18 +93,7 @@ public class JwtTokenFilter extends OncePerRequestFilter {
     }
 
     private boolean isBypassToken(@NonNull HttpServletRequest request) {
-        final List<Pair<String, String>> bypassTokens = Arrays.asList(
-                Pair.of(String.format("%s/users/register", apiPrefix), "POST"),
-                Pair.of(String.format("%s/users/login", apiPrefix), "POST"),
-                Pair.of(String.format("%s/products", apiPrefix), "GET"),
-                Pair.of(String.format("%s/categories", apiPrefix), "GET")
-        );
-        for (Pair<String, String> bypassToken : bypassTokens) {
-            if (request.getRequestURI().equals(bypassToken.getFirst())
-                    && request.getMethod().equals(bypassToken.getSecond())) {
-                return true;
-            }
-        }
-        return false;
+        // public routes, see RoutePolicies
+        return routePolicies.isPublic(request);
     }
 }
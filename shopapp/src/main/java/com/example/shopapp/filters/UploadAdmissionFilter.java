@@ -0,0 +1,57 @@
+package com.example.shopapp.filters;
+
+import com.example.shopapp.components.UploadLimiter;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.time.Duration;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+// Admission control of POST /products/uploads/**, see UploadLimiter
+// It runs before the multipart body is parsed, so a rejected upload is never read.
+@Component
+public class UploadAdmissionFilter extends OncePerRequestFilter {
+
+    private final UploadLimiter uploadLimiter;
+    private final String uploadPathPrefix;
+    private final String retryAfterSeconds;
+
+    public UploadAdmissionFilter(
+            UploadLimiter uploadLimiter,
+            @Value("${api.prefix}") String apiPrefix,
+            @Value("${product.images.upload-retry-after}") Duration retryAfter
+    ) {
+        this.uploadLimiter = uploadLimiter;
+        this.uploadPathPrefix = String.format("%s/products/uploads/", apiPrefix);
+        this.retryAfterSeconds = String.valueOf(Math.max(1, retryAfter.toSeconds()));
+    }
+
+    @Override
+    protected boolean shouldNotFilter(@NonNull HttpServletRequest request) {
+        return !request.getMethod().equals("POST")
+                || !request.getRequestURI().startsWith(uploadPathPrefix);
+    }
+
+    @Override
+    protected void doFilterInternal(
+            @NonNull HttpServletRequest request,
+            @NonNull HttpServletResponse response,
+            @NonNull FilterChain filterChain
+    ) throws ServletException, IOException {
+        try (UploadLimiter.Slot slot = uploadLimiter.tryAcquire(request.getContentLengthLong())) {
+            if (slot == null) {
+                response.setHeader(HttpHeaders.RETRY_AFTER, retryAfterSeconds);
+                response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+                response.getWriter().write("Too many uploads in progress, retry later");
+                return;
+            }
+            filterChain.doFilter(request, response);
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.example.shopapp.models;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.JoinColumn;
+import jakarta.persistence.ManyToOne;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Resized copy of a product image, generated in the background after the upload
+@Entity
+@Table(name = "product_image_variants")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ProductImageVariant {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "id")
+    private Long id;
+
+    // width in pixels, the height keeps the aspect ratio of the original
+    @Column(name = "width", nullable = false)
+    private Integer width;
+
+    @Column(name = "image_url", nullable = false, length = 300)
+    private String imageUrl;
+
+    @ManyToOne
+    @JoinColumn(name = "product_image_id", referencedColumnName = "id", nullable = false)
+    @JsonIgnore
+    private ProductImage productImage;
+}
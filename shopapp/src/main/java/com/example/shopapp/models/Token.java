@@ -10,6 +10,7 @@ import jakarta.persistence.ManyToOne;
 import jakarta.persistence.Table;
 import java.time.LocalDateTime;
 import lombok.AllArgsConstructor;
+import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
@@ -18,12 +19,16 @@ import lombok.NoArgsConstructor;
 @Data
 @AllArgsConstructor
 @NoArgsConstructor
+@Builder
 public class Token {
+    public static final String BEARER = "Bearer";
+
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     @Column(name = "id")
     private Long id;
 
+    // the id of the JWT (jti claim), not the JWT itself
     @Column(name = "token", nullable = false)
     private String token;
 
@@ -39,6 +44,10 @@ public class Token {
     @Column(name = "expired")
     private boolean expired;
 
+    // set with revoked, other application nodes poll the tokens revoked since their last poll
+    @Column(name = "revoked_at")
+    private LocalDateTime revokedAt;
+
     @ManyToOne
     @JoinColumn(name = "user_id", referencedColumnName = "id", nullable = false)
     private User user;
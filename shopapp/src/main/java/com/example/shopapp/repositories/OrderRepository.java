@@ -1,12 +1,30 @@
 package com.example.shopapp.repositories;
 
 import com.example.shopapp.models.Order;
+import jakarta.persistence.QueryHint;
 import java.util.List;
+import java.util.stream.Stream;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 
 public interface OrderRepository extends JpaRepository<Order, Long> {
     // Find all orders by user id
     List<Order> findByUserId(Long userId);
 
+    // Forward-only cursor over all orders with their details, for exports
+    // One row per order detail (or one row with null details for an order without details):
+    // [order, detail id, product id, price, number of products, total money, color]
+    // The user and role are fetched in the same query and the details are read as columns,
+    // so no other query runs while the result set is streamed
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE,
+            value = ProductRepository.STREAMING_FETCH_SIZE))
+    @Query("SELECT o, od.id, od.product.id, od.price, od.numberOfProducts, od.totalMoney, "
+            + "od.color "
+            + "FROM Order o JOIN FETCH o.user u JOIN FETCH u.role "
+            + "LEFT JOIN OrderDetail od ON od.order = o "
+            + "ORDER BY o.id, od.id")
+    Stream<Object[]> streamOrdersWithDetails();
 
 }
@@ -0,0 +1,9 @@
+package com.example.shopapp.repositories;
+
+import com.example.shopapp.models.ProductImageVariant;
+import java.util.List;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+public interface ProductImageVariantRepository extends JpaRepository<ProductImageVariant, Long> {
+    List<ProductImageVariant> findByProductImageId(Long productImageId);
+}
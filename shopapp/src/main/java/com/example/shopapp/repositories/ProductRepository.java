@@ -1,15 +1,38 @@
 package com.example.shopapp.repositories;
 
 import com.example.shopapp.models.Product;
+import com.example.shopapp.responses.ProductResponse;
 import jakarta.annotation.Nonnull;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 
 public interface ProductRepository extends JpaRepository<Product, Long> {
-    // find products by category id
-    List<Product> findByCategoryId(Long categoryId);
+    // Integer.MIN_VALUE makes MySQL Connector/J stream the rows one by one
+    // instead of reading the whole result set into memory
+    String STREAMING_FETCH_SIZE = "" + Integer.MIN_VALUE;
+
+    // Select exactly the columns of ProductResponse with a constructor expression
+    // No Product entity is hydrated or dirty-tracked, and p.category.id is read from
+    // the category_id foreign key without joining the categories table
+    String SELECT_PRODUCT_RESPONSE = "SELECT new com.example.shopapp.responses.ProductResponse("
+            + "p.id, p.name, p.price, p.thumbnail, p.description, p.category.id, "
+            + "p.createdAt, p.updatedAt) "
+            + "FROM Product p ";
 
     // Check if product exists by name
     boolean existsByName(String name);
@@ -17,4 +40,94 @@ public interface ProductRepository extends JpaRepository<Product, Long> {
     // pagination for products
     @Nonnull
     Page<Product> findAll(@Nonnull Pageable pageable);
+
+    @Query(SELECT_PRODUCT_RESPONSE + "WHERE p.id = :id")
+    Optional<ProductResponse> findProductResponseById(@Param("id") Long id);
+
+    // offset pagination without the COUNT(*) query of findAll(Pageable)
+    // the total number of products comes from ProductCounters
+    @Query(SELECT_PRODUCT_RESPONSE)
+    Slice<ProductResponse> findProductResponses(Pageable pageable);
+
+    @Query(SELECT_PRODUCT_RESPONSE + "WHERE p.category.id = :categoryId")
+    Slice<ProductResponse> findProductResponsesByCategoryId(
+            @Param("categoryId") Long categoryId,
+            Pageable pageable);
+
+    // read all products in id order, batch by batch (used to build the search index)
+    @Query(SELECT_PRODUCT_RESPONSE + "WHERE p.id IN :ids")
+    List<ProductResponse> findProductResponsesByIdIn(@Param("ids") Collection<Long> ids);
+
+    @Query(SELECT_PRODUCT_RESPONSE + "WHERE p.id > :id ORDER BY p.id")
+    List<ProductResponse> findProductResponsesAfterId(@Param("id") Long id, Pageable pageable);
+
+    // forward-only cursor over all products, for exports
+    // must be consumed inside a transaction and closed
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = STREAMING_FETCH_SIZE))
+    @Query(SELECT_PRODUCT_RESPONSE + "ORDER BY p.id")
+    Stream<ProductResponse> streamProductResponses();
+
+    // SELECT ... FOR UPDATE on the product row, only the id is read
+    // must be called in a transaction, the lock is held until it ends
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT p.id FROM Product p WHERE p.id = :id")
+    Optional<Long> lockById(@Param("id") Long id);
+
+    // set the thumbnail only if the product has none, returns the number of updated rows
+    // (bulk updates skip @PreUpdate, so updatedAt is set here)
+    @Modifying
+    @Query("UPDATE Product p SET p.thumbnail = :thumbnail, p.updatedAt = :updatedAt "
+            + "WHERE p.id = :id AND (p.thumbnail IS NULL OR p.thumbnail = '')")
+    int updateThumbnailIfEmpty(
+            @Param("id") Long id,
+            @Param("thumbnail") String thumbnail,
+            @Param("updatedAt") LocalDateTime updatedAt);
+
+    // [id, price] of the given products, one IN query and no entity loaded
+    @Query("SELECT p.id, p.price FROM Product p WHERE p.id IN :ids")
+    List<Object[]> findPricesByIdIn(@Param("ids") Collection<Long> ids);
+
+    // number of products per category: [category id, count]
+    @Query("SELECT p.category.id, COUNT(p) FROM Product p GROUP BY p.category.id")
+    List<Object[]> countGroupByCategory();
+
+    // version of the products of each category: [category id, count, latest updated_at]
+    @Query("SELECT p.category.id, COUNT(p), MAX(p.updatedAt) FROM Product p "
+            + "GROUP BY p.category.id")
+    List<Object[]> versionGroupByCategory();
+
+    // keyset (seek) pagination for products, newest first
+    // the order is part of the query, so pass an unsorted Pageable (e.g. Pageable.ofSize(limit))
+    // a Slice fetches limit + 1 rows to know if there is a next page and never runs COUNT(*)
+    @Query(SELECT_PRODUCT_RESPONSE + "ORDER BY p.createdAt DESC, p.id DESC")
+    Slice<ProductResponse> findFirstPage(Pageable pageable);
+
+    // the redundant createdAt <= :createdAt lets MySQL use a range scan on (created_at, id)
+    @Query(SELECT_PRODUCT_RESPONSE
+            + "WHERE p.createdAt <= :createdAt "
+            + "AND (p.createdAt < :createdAt OR p.id < :id) "
+            + "ORDER BY p.createdAt DESC, p.id DESC")
+    Slice<ProductResponse> findPageAfter(
+            @Param("createdAt") LocalDateTime createdAt,
+            @Param("id") Long id,
+            Pageable pageable);
+
+    // keyset pagination of one category, uses the (category_id, created_at, id) index
+    @Query(SELECT_PRODUCT_RESPONSE
+            + "WHERE p.category.id = :categoryId "
+            + "ORDER BY p.createdAt DESC, p.id DESC")
+    Slice<ProductResponse> findFirstPageByCategoryId(
+            @Param("categoryId") Long categoryId,
+            Pageable pageable);
+
+    @Query(SELECT_PRODUCT_RESPONSE
+            + "WHERE p.category.id = :categoryId "
+            + "AND p.createdAt <= :createdAt "
+            + "AND (p.createdAt < :createdAt OR p.id < :id) "
+            + "ORDER BY p.createdAt DESC, p.id DESC")
+    Slice<ProductResponse> findPageAfterByCategoryId(
+            @Param("categoryId") Long categoryId,
+            @Param("createdAt") LocalDateTime createdAt,
+            @Param("id") Long id,
+            Pageable pageable);
 }
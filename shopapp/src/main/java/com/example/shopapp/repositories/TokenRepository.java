@@ -0,0 +1,44 @@
+package com.example.shopapp.repositories;
+
+import com.example.shopapp.models.Token;
+import java.time.LocalDateTime;
+import java.util.List;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+public interface TokenRepository extends JpaRepository<Token, Long> {
+    // revoke one token by its id (jti), returns the number of updated rows
+    @Modifying
+    @Query("UPDATE Token t SET t.revoked = true, t.revokedAt = :revokedAt "
+            + "WHERE t.token = :tokenId AND t.revoked = false")
+    int revoke(@Param("tokenId") String tokenId, @Param("revokedAt") LocalDateTime revokedAt);
+
+    // revoke every token of a user that has not expired yet
+    @Modifying
+    @Query("UPDATE Token t SET t.revoked = true, t.revokedAt = :revokedAt "
+            + "WHERE t.user.id = :userId AND t.revoked = false AND t.expirationDate > :revokedAt")
+    int revokeByUserId(@Param("userId") Long userId, @Param("revokedAt") LocalDateTime revokedAt);
+
+    // tokens of a user that are still valid: [token id, expiration date]
+    @Query("SELECT t.token, t.expirationDate FROM Token t "
+            + "WHERE t.user.id = :userId AND t.revoked = false AND t.expirationDate > :now")
+    List<Object[]> findValidByUserId(@Param("userId") Long userId, @Param("now") LocalDateTime now);
+
+    // tokens revoked since a date and not expired yet: [token id, expiration date, revoked at]
+    @Query("SELECT t.token, t.expirationDate, t.revokedAt FROM Token t "
+            + "WHERE t.revoked = true AND t.revokedAt >= :since AND t.expirationDate > :now")
+    List<Object[]> findRevokedSince(
+            @Param("since") LocalDateTime since,
+            @Param("now") LocalDateTime now);
+
+    // DELETE ... LIMIT keeps each transaction (and its locks) short, call it until it returns
+    // less than limit
+    @Transactional
+    @Modifying
+    @Query(value = "DELETE FROM tokens WHERE expiration_date < :now LIMIT :limit",
+            nativeQuery = true)
+    int deleteExpired(@Param("now") LocalDateTime now, @Param("limit") int limit);
+}
@@ -0,0 +1,22 @@
+package com.example.shopapp.responses;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonUnwrapped;
+import java.util.List;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// The created order, with the same fields as OrderResponse, and its details
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class CheckoutResponse {
+    @JsonUnwrapped
+    private OrderResponse order;
+
+    @JsonProperty("order_details")
+    private List<OrderDetailResponse> orderDetails;
+}
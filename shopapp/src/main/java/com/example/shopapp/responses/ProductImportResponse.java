@@ -0,0 +1,63 @@
+package com.example.shopapp.responses;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import java.util.List;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class ProductImportResponse {
+    @JsonProperty("imported_rows")
+    private long importedRows;
+
+    @JsonProperty("rejected_rows")
+    private long rejectedRows;
+
+    @JsonProperty("elapsed_ms")
+    private long elapsedMs;
+
+    // one entry per JDBC batch, in insertion order
+    private List<BatchProgress> batches;
+
+    // the first rejected rows with the reason (the list is capped, rejected_rows is not)
+    private List<RejectedRow> rejected;
+
+    @Data
+    @AllArgsConstructor
+    @NoArgsConstructor
+    public static class BatchProgress {
+        private int batch;
+
+        @JsonProperty("inserted_rows")
+        private int insertedRows;
+
+        // rows of this batch rejected by the validation or by the database
+        @JsonProperty("rejected_rows")
+        private int rejectedRows;
+
+        // total number of rows inserted so far, including this batch
+        @JsonProperty("total_inserted_rows")
+        private long totalInsertedRows;
+
+        @JsonProperty("elapsed_ms")
+        private long elapsedMs;
+
+        // set when the batch failed as a whole, its rows were then inserted one by one
+        private String error;
+    }
+
+    @Data
+    @AllArgsConstructor
+    @NoArgsConstructor
+    public static class RejectedRow {
+        // line number in the request body, starting at 1
+        private long line;
+
+        private String reason;
+    }
+}
@@ -1,5 +1,6 @@
 package com.example.shopapp.responses;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import java.util.List;
 import lombok.AllArgsConstructor;
@@ -11,8 +12,15 @@ import lombok.NoArgsConstructor;
 @AllArgsConstructor
 @NoArgsConstructor
 @Builder
+@JsonInclude(JsonInclude.Include.NON_NULL)
 public class ProductListResponse {
     private List<ProductResponse> products;
+
+    // only filled in offset mode (?page=)
     @JsonProperty("total_pages")
-    private int totalPages;
+    private Integer totalPages;
+
+    // only filled in cursor mode (?after=), null when there is no next page
+    @JsonProperty("next_cursor")
+    private String nextCursor;
 }
@@ -2,6 +2,7 @@ package com.example.shopapp.responses;
 
 import com.example.shopapp.models.Product;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import java.time.LocalDateTime;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -14,6 +15,7 @@ import lombok.NoArgsConstructor;
 @AllArgsConstructor
 @Builder
 public class ProductResponse extends BaseResponse {
+    private Long id;
     private String name;
     private Float price;
     private String thumbnail;
@@ -21,8 +23,18 @@ public class ProductResponse extends BaseResponse {
     @JsonProperty("category_id")
     private Long categoryId;
 
+    // used by the constructor expressions of ProductRepository
+    public ProductResponse(Long id, String name, Float price, String thumbnail,
+            String description, Long categoryId, LocalDateTime createdAt,
+            LocalDateTime updatedAt) {
+        this(id, name, price, thumbnail, description, categoryId);
+        setCreatedAt(createdAt);
+        setUpdatedAt(updatedAt);
+    }
+
     public static ProductResponse fromProduct(Product product) {
         ProductResponse productResponse = ProductResponse.builder()
+                .id(product.getId())
                 .name(product.getName())
                 .price(product.getPrice())
                 .thumbnail(product.getThumbnail())
@@ -8,6 +8,7 @@ public interface CategoryService {
     Category createCategory(CategoryDTO categoryDTO);
     Category getCategoryById(Long id);
     List<Category> getAllCategories();
+    List<Category> getAllCategories(int page, int limit);
     Category updateCategory(Long id, CategoryDTO category);
     void deleteCategory(Long id);
 }
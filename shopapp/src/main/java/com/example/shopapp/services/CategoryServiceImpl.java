@@ -1,12 +1,19 @@
 package com.example.shopapp.services;
 
+import com.example.shopapp.components.CatalogVersions;
 import com.example.shopapp.dtos.CategoryDTO;
 import com.example.shopapp.models.Category;
 import com.example.shopapp.repositories.CategoryRepository;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.domain.Sort;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+@Slf4j
 @Service
 @RequiredArgsConstructor
 // Lombok will generate a constructor with all the required fields (final fields) of the class
@@ -14,13 +21,22 @@ public class CategoryServiceImpl implements CategoryService {
 
     // CategoryRepository will be injected by Spring
     private final CategoryRepository categoryRepository;
+    private final CatalogVersions catalogVersions;
+
+    // Categories change a few times a year, so reads are served from an immutable snapshot
+    // instead of the database. Every write replaces the whole snapshot atomically, and it is
+    // reloaded every category.snapshot-refresh-interval for the writes of other nodes.
+    // null means the snapshot has not been loaded yet
+    private final AtomicReference<List<Category>> categorySnapshot = new AtomicReference<>();
 
     @Override
     public Category createCategory(CategoryDTO categoryDTO) {
         Category category = Category.builder()
                 .name(categoryDTO.getName())
                 .build();
-        return categoryRepository.save(category);
+        Category savedCategory = categoryRepository.save(category);
+        refreshSnapshot();
+        return savedCategory;
     }
 
     @Override
@@ -31,19 +47,70 @@ public class CategoryServiceImpl implements CategoryService {
 
     @Override
     public List<Category> getAllCategories() {
-        return categoryRepository.findAll();
+        List<Category> categories = categorySnapshot.get();
+        return categories != null ? categories : refreshSnapshot();
+    }
+
+    @Override
+    public List<Category> getAllCategories(int page, int limit) {
+        // page is zero-based, same as the products pagination
+        List<Category> categories = getAllCategories();
+        if (page < 0 || limit <= 0) {
+            return List.of();
+        }
+        long fromIndex = (long) page * limit;
+        if (fromIndex >= categories.size()) {
+            return List.of();
+        }
+        int toIndex = (int) Math.min(fromIndex + limit, categories.size());
+        // a sub list of an immutable list is immutable as well
+        return categories.subList((int) fromIndex, toIndex);
+    }
+
+    @Scheduled(
+            initialDelayString = "${category.snapshot-refresh-interval}",
+            fixedDelayString = "${category.snapshot-refresh-interval}")
+    public void scheduledRefresh() {
+        try {
+            refreshSnapshot();
+        } catch (DataAccessException e) {
+            // the current snapshot is kept, the next refresh will retry
+            log.warn("Cannot reload categories: {}", e.getMessage());
+        }
+    }
+
+    // Reload all categories from the database and publish them as the new snapshot
+    // synchronized so that the last published snapshot is always read after the last write
+    private synchronized List<Category> refreshSnapshot() {
+        // copy the entities so that nobody can modify the snapshot through a managed entity
+        // sorted by id so that pages stay stable between snapshots
+        List<Category> categories = categoryRepository.findAll(Sort.by("id"))
+                .stream()
+                .map(category -> Category.builder()
+                        .id(category.getId())
+                        .name(category.getName())
+                        .build())
+                .toList();
+        // an unchanged snapshot keeps its ETag
+        if (!categories.equals(categorySnapshot.getAndSet(categories))) {
+            catalogVersions.categoriesChanged(categories);
+        }
+        return categories;
     }
 
     @Override
     public Category updateCategory(Long id, CategoryDTO categoryDTO) {
         Category existingCategory = getCategoryById(id);
         existingCategory.setName(categoryDTO.getName());
-        return categoryRepository.save(existingCategory);
+        Category updatedCategory = categoryRepository.save(existingCategory);
+        refreshSnapshot();
+        return updatedCategory;
     }
 
     @Override
     public void deleteCategory(Long id) {
         // delete category by id
         categoryRepository.deleteById(id);
+        refreshSnapshot();
     }
 }
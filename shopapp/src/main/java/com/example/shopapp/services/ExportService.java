@@ -0,0 +1,16 @@
+package com.example.shopapp.services;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+public interface ExportService {
+    String FORMAT_CSV = "csv";
+    String FORMAT_NDJSON = "ndjson";
+
+    // Write every product to the output stream, one product per line
+    void exportProducts(OutputStream outputStream, String format) throws IOException;
+
+    // Write every order with its details, one order per line in NDJSON
+    // and one order detail per line in CSV
+    void exportOrders(OutputStream outputStream, String format) throws IOException;
+}
@@ -0,0 +1,175 @@
+package com.example.shopapp.services;
+
+import com.example.shopapp.models.Order;
+import com.example.shopapp.repositories.OrderRepository;
+import com.example.shopapp.repositories.ProductRepository;
+import com.example.shopapp.responses.OrderDetailResponse;
+import com.example.shopapp.responses.OrderResponse;
+import com.example.shopapp.responses.ProductResponse;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import jakarta.persistence.EntityManager;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
+import lombok.RequiredArgsConstructor;
+import org.modelmapper.ModelMapper;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+@Service
+@RequiredArgsConstructor
+public class ExportServiceImpl implements ExportService {
+
+    // clear the persistence context after this many orders so that it does not keep
+    // every exported entity alive until the end of the export
+    private static final int CLEAR_EVERY_ORDERS = 500;
+
+    private final ProductRepository productRepository;
+    private final OrderRepository orderRepository;
+    private final EntityManager entityManager;
+    private final ObjectMapper objectMapper;
+    private final ModelMapper modelMapper;
+
+    @Override
+    @Transactional(readOnly = true) // the stream needs an open connection until it is consumed
+    public void exportProducts(OutputStream outputStream, String format) throws IOException {
+        Writer writer = newWriter(outputStream);
+        if (FORMAT_CSV.equals(format)) {
+            writeCsvLine(writer, "id", "name", "price", "thumbnail", "description",
+                    "category_id", "created_at", "updated_at");
+        }
+        // products are read as ProductResponse projections, no entity enters the
+        // persistence context, so the heap usage does not depend on the number of products
+        try (Stream<ProductResponse> products = productRepository.streamProductResponses()) {
+            Iterator<ProductResponse> iterator = products.iterator();
+            while (iterator.hasNext()) {
+                ProductResponse product = iterator.next();
+                if (FORMAT_CSV.equals(format)) {
+                    writeCsvLine(writer, product.getId(), product.getName(), product.getPrice(),
+                            product.getThumbnail(), product.getDescription(),
+                            product.getCategoryId(), product.getCreatedAt(),
+                            product.getUpdatedAt());
+                } else {
+                    writer.write(objectMapper.writeValueAsString(product));
+                    writer.write('\n');
+                }
+            }
+        }
+        writer.flush();
+    }
+
+    @Override
+    @Transactional(readOnly = true) // the stream needs an open connection until it is consumed
+    public void exportOrders(OutputStream outputStream, String format) throws IOException {
+        Writer writer = newWriter(outputStream);
+        if (FORMAT_CSV.equals(format)) {
+            writeCsvLine(writer, "order_id", "user_id", "full_name", "email", "phone_number",
+                    "address", "status", "order_date", "total_money", "payment_method",
+                    "order_detail_id", "product_id", "price", "number_of_products",
+                    "detail_total_money", "color");
+        }
+        try (Stream<Object[]> rows = orderRepository.streamOrdersWithDetails()) {
+            Iterator<Object[]> iterator = rows.iterator();
+            // rows are sorted by order id, the details of an order are consecutive
+            Order currentOrder = null;
+            List<OrderDetailResponse> currentOrderDetails = new ArrayList<>();
+            int exportedOrders = 0;
+            while (iterator.hasNext()) {
+                Object[] row = iterator.next();
+                Order order = (Order) row[0];
+                if (currentOrder != null && !currentOrder.getId().equals(order.getId())) {
+                    writeOrder(writer, format, currentOrder, currentOrderDetails);
+                    currentOrderDetails.clear();
+                    if (++exportedOrders % CLEAR_EVERY_ORDERS == 0) {
+                        entityManager.clear();
+                    }
+                }
+                currentOrder = order;
+                if (row[1] != null) {
+                    currentOrderDetails.add(OrderDetailResponse.builder()
+                            .id((Long) row[1])
+                            .orderId(order.getId())
+                            .productId((Long) row[2])
+                            .price((Float) row[3])
+                            .numberOfProducts((Integer) row[4])
+                            .totalMoney((Float) row[5])
+                            .color((String) row[6])
+                            .build());
+                }
+            }
+            if (currentOrder != null) {
+                writeOrder(writer, format, currentOrder, currentOrderDetails);
+            }
+        }
+        writer.flush();
+    }
+
+    private void writeOrder(Writer writer, String format, Order order,
+            List<OrderDetailResponse> orderDetails) throws IOException {
+        OrderResponse orderResponse = modelMapper.map(order, OrderResponse.class);
+        if (FORMAT_CSV.equals(format)) {
+            if (orderDetails.isEmpty()) {
+                writeOrderCsvLine(writer, orderResponse, null);
+            }
+            for (OrderDetailResponse orderDetail : orderDetails) {
+                writeOrderCsvLine(writer, orderResponse, orderDetail);
+            }
+            return;
+        }
+        ObjectNode orderNode = objectMapper.valueToTree(orderResponse);
+        orderNode.set("order_details", objectMapper.valueToTree(orderDetails));
+        writer.write(objectMapper.writeValueAsString(orderNode));
+        writer.write('\n');
+    }
+
+    private static void writeOrderCsvLine(Writer writer, OrderResponse order,
+            OrderDetailResponse orderDetail) throws IOException {
+        boolean hasDetail = orderDetail != null;
+        writeCsvLine(writer, order.getId(), order.getUserId(), order.getFullName(),
+                order.getEmail(), order.getPhoneNumber(), order.getAddress(), order.getStatus(),
+                order.getOrderDate(), order.getTotalMoney(), order.getPaymentMethod(),
+                hasDetail ? orderDetail.getId() : null,
+                hasDetail ? orderDetail.getProductId() : null,
+                hasDetail ? orderDetail.getPrice() : null,
+                hasDetail ? orderDetail.getNumberOfProducts() : null,
+                hasDetail ? orderDetail.getTotalMoney() : null,
+                hasDetail ? orderDetail.getColor() : null);
+    }
+
+    private static Writer newWriter(OutputStream outputStream) {
+        // the buffer is flushed to the client whenever it is full
+        return new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8),
+                64 * 1024);
+    }
+
+    private static void writeCsvLine(Writer writer, Object... values) throws IOException {
+        for (int i = 0; i < values.length; ++i) {
+            if (i > 0) {
+                writer.write(',');
+            }
+            writer.write(csvField(values[i]));
+        }
+        writer.write('\n');
+    }
+
+    // quote the field if it contains a separator, a quote or a line break (RFC 4180)
+    private static String csvField(Object value) {
+        if (value == null) {
+            return "";
+        }
+        String text = value.toString();
+        if (text.indexOf(',') < 0 && text.indexOf('"') < 0 && text.indexOf('\n') < 0
+                && text.indexOf('\r') < 0) {
+            return text;
+        }
+        return '"' + text.replace("\"", "\"\"") + '"';
+    }
+}
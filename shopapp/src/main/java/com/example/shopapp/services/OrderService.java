@@ -1,12 +1,18 @@
 package com.example.shopapp.services;
 
+import com.example.shopapp.dtos.CheckoutDTO;
 import com.example.shopapp.dtos.OrderDTO;
 import com.example.shopapp.exceptions.DataNotFoundException;
+import com.example.shopapp.exceptions.InvalidParamException;
+import com.example.shopapp.responses.CheckoutResponse;
 import com.example.shopapp.responses.OrderResponse;
 import java.util.List;
 
 public interface OrderService {
     OrderResponse createOrder(OrderDTO orderDTO) throws DataNotFoundException;
+    // the order and all its details in one transaction, the total is computed from the prices
+    CheckoutResponse checkout(CheckoutDTO checkoutDTO)
+            throws DataNotFoundException, InvalidParamException;
     OrderResponse getOrderById(Long id) throws DataNotFoundException;
     OrderResponse updateOrder(Long id, OrderDTO orderDTO) throws DataNotFoundException;
     void deleteOrder(Long id);
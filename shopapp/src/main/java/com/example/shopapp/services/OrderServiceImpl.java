@@ -1,26 +1,51 @@
 package com.example.shopapp.services;
 
+import com.example.shopapp.dtos.CartItemDTO;
+import com.example.shopapp.dtos.CheckoutDTO;
 import com.example.shopapp.dtos.OrderDTO;
 import com.example.shopapp.exceptions.DataNotFoundException;
+import com.example.shopapp.exceptions.InvalidParamException;
 import com.example.shopapp.models.Order;
 import com.example.shopapp.models.OrderStatus;
 import com.example.shopapp.models.User;
 import com.example.shopapp.repositories.OrderRepository;
+import com.example.shopapp.repositories.ProductRepository;
 import com.example.shopapp.repositories.UserRepository;
+import com.example.shopapp.responses.CheckoutResponse;
+import com.example.shopapp.responses.OrderDetailResponse;
 import com.example.shopapp.responses.OrderResponse;
 import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
 import lombok.RequiredArgsConstructor;
 import org.modelmapper.ModelMapper;
+import org.springframework.dao.DataRetrievalFailureException;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 @Service
 @RequiredArgsConstructor
 public class OrderServiceImpl implements OrderService {
 
+    private static final String INSERT_ORDER_DETAIL_SQL = "INSERT INTO order_details "
+            + "(order_id, product_id, price, number_of_products, total_money, color) "
+            + "VALUES (?, ?, ?, ?, ?, ?)";
+
     private final OrderRepository orderRepository;
     private final UserRepository userRepository;
+    private final ProductRepository productRepository;
+    private final JdbcTemplate jdbcTemplate;
     private final ModelMapper modelMapper;
 
     @Override
@@ -29,12 +54,113 @@ public class OrderServiceImpl implements OrderService {
         // if yes then create an order and save it to the database
         User existingUser = userRepository.findById(orderDTO.getUserId())
                 .orElseThrow(() -> new DataNotFoundException("User not found"));
+        Order order = newOrder(orderDTO, existingUser);
+        return modelMapper.map(orderRepository.save(order), OrderResponse.class);
+    }
+
+    @Override
+    @Transactional
+    public CheckoutResponse checkout(CheckoutDTO checkoutDTO)
+            throws DataNotFoundException, InvalidParamException {
+        // A constant number of statements whatever the number of lines: the user, the prices
+        // of all the products (one IN query), the order, and the details in one JDBC batch
+        OrderDTO orderDTO = checkoutDTO.getOrder();
+        if (orderDTO == null || orderDTO.getUserId() == null) {
+            throw new InvalidParamException("User ID is required");
+        }
+        if (!userRepository.existsById(orderDTO.getUserId())) {
+            throw new DataNotFoundException("User not found");
+        }
+        List<CartItemDTO> cartItems = checkoutDTO.getCartItems();
+        Map<Long, Float> prices = new HashMap<>();
+        for (Object[] row : productRepository.findPricesByIdIn(cartItems.stream()
+                .map(CartItemDTO::getProductId)
+                .collect(Collectors.toSet()))) {
+            prices.put((Long) row[0], (Float) row[1]);
+        }
+        List<Long> missingProductIds = cartItems.stream()
+                .map(CartItemDTO::getProductId)
+                .filter(productId -> !prices.containsKey(productId))
+                .distinct()
+                .toList();
+        if (!missingProductIds.isEmpty()) {
+            throw new DataNotFoundException("Cannot find products with ids: " + missingProductIds);
+        }
+
+        // the total of the order is never taken from the client
+        double totalMoney = 0;
+        for (CartItemDTO cartItem : cartItems) {
+            totalMoney += (double) prices.get(cartItem.getProductId())
+                    * cartItem.getNumberOfProducts();
+        }
+        Order order = newOrder(orderDTO, userRepository.getReferenceById(orderDTO.getUserId()));
+        order.setTotalMoney((float) totalMoney);
+        order = orderRepository.save(order);
+
+        Long orderId = order.getId();
+        // with rewriteBatchedStatements=true the batch is one multi-row INSERT, MySQL returns
+        // the generated ids of all the rows
+        KeyHolder keyHolder = new GeneratedKeyHolder();
+        jdbcTemplate.batchUpdate(
+                connection -> connection.prepareStatement(INSERT_ORDER_DETAIL_SQL,
+                        Statement.RETURN_GENERATED_KEYS),
+                new BatchPreparedStatementSetter() {
+                    @Override
+                    public void setValues(PreparedStatement statement, int i)
+                            throws SQLException {
+                        CartItemDTO cartItem = cartItems.get(i);
+                        float price = prices.get(cartItem.getProductId());
+                        statement.setLong(1, orderId);
+                        statement.setLong(2, cartItem.getProductId());
+                        statement.setFloat(3, price);
+                        statement.setInt(4, cartItem.getNumberOfProducts());
+                        statement.setFloat(5, price * cartItem.getNumberOfProducts());
+                        statement.setString(6, cartItem.getColor());
+                    }
+
+                    @Override
+                    public int getBatchSize() {
+                        return cartItems.size();
+                    }
+                },
+                keyHolder);
+
+        List<Map<String, Object>> generatedKeys = keyHolder.getKeyList();
+        if (generatedKeys.size() != cartItems.size()) {
+            // rolls the order back, an order detail without id cannot be returned
+            throw new DataRetrievalFailureException("Expected " + cartItems.size()
+                    + " generated order detail ids, the driver returned " + generatedKeys.size());
+        }
+        List<OrderDetailResponse> orderDetails = new ArrayList<>(cartItems.size());
+        for (int i = 0; i < cartItems.size(); ++i) {
+            CartItemDTO cartItem = cartItems.get(i);
+            float price = prices.get(cartItem.getProductId());
+            orderDetails.add(OrderDetailResponse.builder()
+                    .id(((Number) generatedKeys.get(i).values().iterator().next()).longValue())
+                    .orderId(orderId)
+                    .productId(cartItem.getProductId())
+                    .price(price)
+                    .numberOfProducts(cartItem.getNumberOfProducts())
+                    .totalMoney(price * cartItem.getNumberOfProducts())
+                    .color(cartItem.getColor())
+                    .build());
+        }
+        OrderResponse orderResponse = modelMapper.map(order, OrderResponse.class);
+        orderResponse.setUserId(orderDTO.getUserId());
+        return CheckoutResponse.builder()
+                .order(orderResponse)
+                .orderDetails(orderDetails)
+                .build();
+    }
+
+    // A new pending order, not saved yet
+    private Order newOrder(OrderDTO orderDTO, User user) throws DataNotFoundException {
         // Map orderDTO to Order entity
         modelMapper.typeMap(OrderDTO.class, Order.class)
                 .addMappings(modelMapper -> modelMapper.skip(Order::setId));
         // Update order from orderDTO
         Order order = modelMapper.map(orderDTO, Order.class);
-        order.setUser(existingUser);
+        order.setUser(user);
         order.setOrderDate(new Date(System.currentTimeMillis()));
         order.setStatus(OrderStatus.PENDING);
         Date shippingDate =
@@ -47,7 +173,7 @@ public class OrderServiceImpl implements OrderService {
         order.setActive(true);
         order.setCreatedAt(LocalDateTime.now());
         order.setUpdatedAt(LocalDateTime.now());
-        return modelMapper.map(orderRepository.save(order), OrderResponse.class);
+        return order;
     }
 
     @Override
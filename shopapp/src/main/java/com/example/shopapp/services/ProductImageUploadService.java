@@ -0,0 +1,23 @@
+package com.example.shopapp.services;
+
+import com.example.shopapp.exceptions.DataNotFoundException;
+import com.example.shopapp.exceptions.InvalidParamException;
+import com.example.shopapp.models.ProductImage;
+import jakarta.servlet.http.HttpServletRequest;
+import java.io.IOException;
+import java.util.List;
+import org.springframework.web.multipart.MultipartFile;
+
+public interface ProductImageUploadService {
+
+    // Store the files and attach them to the product, all or nothing:
+    // if one file cannot be stored or saved, the files already stored are released
+    List<ProductImage> uploadImages(Long productId, List<MultipartFile> files)
+            throws DataNotFoundException, InvalidParamException, IOException;
+
+    // Same as uploadImages, reading the "files" parts of a multipart/form-data request as
+    // they arrive: each part goes straight to the ImageStore, nothing is buffered by the
+    // container. FileUploadSizeException when a file or the request is too large.
+    List<ProductImage> uploadImageStream(Long productId, HttpServletRequest request)
+            throws DataNotFoundException, InvalidParamException, IOException;
+}
@@ -0,0 +1,215 @@
+package com.example.shopapp.services;
+
+import com.example.shopapp.components.ImageStore;
+import com.example.shopapp.components.ImageVariantPipeline;
+import com.example.shopapp.dtos.ProductImageDTO;
+import com.example.shopapp.exceptions.DataNotFoundException;
+import com.example.shopapp.exceptions.InvalidParamException;
+import com.example.shopapp.models.ProductImage;
+import com.example.shopapp.repositories.ProductImageRepository;
+import jakarta.servlet.http.HttpServletRequest;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.fileupload2.core.FileItemInput;
+import org.apache.commons.fileupload2.core.FileItemInputIterator;
+import org.apache.commons.fileupload2.jakarta.servlet6.JakartaServletDiskFileUpload;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.multipart.MultipartFile;
+
+@Slf4j
+@Service
+public class ProductImageUploadServiceImpl implements ProductImageUploadService {
+
+    private final ProductService productService;
+    private final ProductImageRepository productImageRepository;
+    private final ExecutorService imageUploadExecutor;
+    private final ImageVariantPipeline imageVariantPipeline;
+    private final ImageStore imageStore;
+    private final DataSize maximumFileSize;
+    private final DataSize maximumRequestSize;
+
+    public ProductImageUploadServiceImpl(
+            ProductService productService,
+            ProductImageRepository productImageRepository,
+            ExecutorService imageUploadExecutor,
+            ImageVariantPipeline imageVariantPipeline,
+            ImageStore imageStore,
+            // same limits as the buffered uploads
+            @Value("${spring.servlet.multipart.max-file-size}") DataSize maximumFileSize,
+            @Value("${spring.servlet.multipart.max-request-size}") DataSize maximumRequestSize
+    ) {
+        this.productService = productService;
+        this.productImageRepository = productImageRepository;
+        this.imageUploadExecutor = imageUploadExecutor;
+        this.imageVariantPipeline = imageVariantPipeline;
+        this.imageStore = imageStore;
+        this.maximumFileSize = maximumFileSize;
+        this.maximumRequestSize = maximumRequestSize;
+    }
+
+    @Override
+    public List<ProductImage> uploadImages(Long productId, List<MultipartFile> files)
+            throws DataNotFoundException, InvalidParamException, IOException {
+        productService.getProductResponseById(productId);
+        if (files.isEmpty()) {
+            return List.of();
+        }
+        // fail before writing anything to disk, the limit is checked again when the rows are
+        // inserted in case images were added concurrently
+        long numberOfProductImages = productImageRepository.countByProductId(productId);
+        if (numberOfProductImages + files.size() > ProductImage.MAXIMUM_IMAGES_PER_PRODUCT) {
+            throw new InvalidParamException("Number of images exceeded the limit of "
+                    + ProductImage.MAXIMUM_IMAGES_PER_PRODUCT);
+        }
+        // write the files concurrently, the request thread only waits for the slowest one
+        StoredFiles stored = new StoredFiles();
+        List<Future<String>> storedFiles = new ArrayList<>(files.size());
+        List<String> fileNames = new ArrayList<>(files.size());
+        boolean allStored = false;
+        try {
+            for (MultipartFile file : files) {
+                storedFiles.add(imageUploadExecutor.submit(() -> {
+                    String fileName = storeFile(file);
+                    if (!stored.add(fileName)) {
+                        // the upload failed meanwhile, nobody else knows about this file
+                        releaseFiles(List.of(fileName));
+                    }
+                    return fileName;
+                }));
+            }
+            IOException failure = null;
+            for (Future<String> storedFile : storedFiles) {
+                try {
+                    fileNames.add(storedFile.get());
+                } catch (ExecutionException e) {
+                    if (failure == null) {
+                        failure = e.getCause() instanceof IOException ioException
+                                ? ioException : new IOException(e.getCause());
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Upload interrupted", e);
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+            allStored = true;
+        } finally {
+            if (!allStored) {
+                // ImageStore deletes its temporary file when the copy is interrupted
+                storedFiles.forEach(future -> future.cancel(true));
+                // the files still being stored are released by their own task
+                releaseFiles(stored.abandon());
+            }
+        }
+
+        return attachImages(productId, fileNames);
+    }
+
+    @Override
+    public List<ProductImage> uploadImageStream(Long productId, HttpServletRequest request)
+            throws DataNotFoundException, InvalidParamException, IOException {
+        productService.getProductResponseById(productId);
+        long numberOfProductImages = productImageRepository.countByProductId(productId);
+        JakartaServletDiskFileUpload upload = new JakartaServletDiskFileUpload();
+        upload.setFileSizeMax(maximumFileSize.toBytes());
+        upload.setSizeMax(maximumRequestSize.toBytes());
+        List<String> fileNames = new ArrayList<>();
+        try {
+            FileItemInputIterator items = upload.getItemIterator(request);
+            while (items.hasNext()) {
+                FileItemInput item = items.next();
+                if (item.isFormField() || !"files".equals(item.getFieldName())
+                        || item.getName() == null || item.getName().isEmpty()) {
+                    continue;
+                }
+                String contentType = item.getContentType();
+                if (contentType == null || !contentType.startsWith("image/")) {
+                    throw new InvalidParamException("Only image files are supported");
+                }
+                if (numberOfProductImages + fileNames.size()
+                        >= ProductImage.MAXIMUM_IMAGES_PER_PRODUCT) {
+                    throw new InvalidParamException("Number of images exceeded the limit of "
+                            + ProductImage.MAXIMUM_IMAGES_PER_PRODUCT);
+                }
+                // the part is read once from the request; ImageStore still spools it to a
+                // temporary file, as the key is the hash of the bytes and a part declares no
+                // size: only one part is on the local disk at a time, never the whole request
+                try (InputStream inputStream = item.getInputStream()) {
+                    fileNames.add(imageStore.store(inputStream, item.getName()));
+                }
+            }
+        } catch (InvalidParamException | IOException | RuntimeException e) {
+            releaseFiles(fileNames);
+            throw e;
+        }
+        return attachImages(productId, fileNames);
+    }
+
+    private List<ProductImage> attachImages(Long productId, List<String> fileNames)
+            throws DataNotFoundException, InvalidParamException {
+        if (fileNames.isEmpty()) {
+            return List.of();
+        }
+        List<ProductImage> productImages;
+        try {
+            productImages = productService.createProductImages(productId, fileNames.stream()
+                    .map(fileName -> ProductImageDTO.builder().imageUrl(fileName).build())
+                    .toList());
+        } catch (DataNotFoundException | InvalidParamException | RuntimeException e) {
+            // the rows were rolled back, the files would be orphans (unless shared)
+            releaseFiles(fileNames);
+            throw e;
+        }
+        // resized variants and the default thumbnail are generated in the background
+        imageVariantPipeline.submit(productId, productImages);
+        return productImages;
+    }
+
+    private String storeFile(MultipartFile file) throws IOException {
+        try (InputStream inputStream = file.getInputStream()) {
+            return imageStore.store(inputStream, file.getOriginalFilename());
+        }
+    }
+
+    // Files stored by the tasks of one upload
+    // Once the upload is abandoned, a task storing its file later releases it itself
+    private static final class StoredFiles {
+        private final List<String> fileNames = new ArrayList<>();
+        private boolean abandoned = false;
+
+        // false if the upload was abandoned, the file is not kept
+        synchronized boolean add(String fileName) {
+            if (abandoned) {
+                return false;
+            }
+            fileNames.add(fileName);
+            return true;
+        }
+
+        // the files stored so far, to be released by the caller
+        synchronized List<String> abandon() {
+            abandoned = true;
+            return List.copyOf(fileNames);
+        }
+    }
+
+    private void releaseFiles(List<String> fileNames) {
+        for (String fileName : fileNames) {
+            try {
+                imageStore.release(fileName);
+            } catch (RuntimeException e) {
+                log.warn("Cannot release uploaded file {}: {}", fileName, e.getMessage());
+            }
+        }
+    }
+}
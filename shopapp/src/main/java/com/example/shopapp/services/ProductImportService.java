@@ -0,0 +1,16 @@
+package com.example.shopapp.services;
+
+import com.example.shopapp.exceptions.InvalidParamException;
+import com.example.shopapp.responses.ProductImportResponse;
+import java.io.IOException;
+import java.io.InputStream;
+
+public interface ProductImportService {
+    String FORMAT_CSV = "csv";
+    String FORMAT_NDJSON = "ndjson";
+
+    // Insert the products read from the stream, either CSV with a header line
+    // (name,price,thumbnail,description,category_id) or one JSON ProductDTO per line
+    ProductImportResponse importProducts(InputStream inputStream, String format)
+            throws IOException, InvalidParamException;
+}
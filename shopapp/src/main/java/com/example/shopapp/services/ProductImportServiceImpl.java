@@ -0,0 +1,328 @@
+package com.example.shopapp.services;
+
+import com.example.shopapp.components.CatalogVersions;
+import com.example.shopapp.components.ProductCounters;
+import com.example.shopapp.components.ProductSearchIndex;
+import com.example.shopapp.dtos.ProductDTO;
+import com.example.shopapp.exceptions.InvalidParamException;
+import com.example.shopapp.models.Category;
+import com.example.shopapp.responses.ProductImportResponse;
+import com.example.shopapp.responses.ProductImportResponse.BatchProgress;
+import com.example.shopapp.responses.ProductImportResponse.RejectedRow;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+@Slf4j
+@Service
+public class ProductImportServiceImpl implements ProductImportService {
+
+    private static final String INSERT_PRODUCT_SQL = "INSERT INTO products "
+            + "(name, price, thumbnail, description, created_at, updated_at, category_id) "
+            + "VALUES (?, ?, ?, ?, ?, ?, ?)";
+    // only the first rejected rows are returned in the response
+    private static final int MAXIMUM_REPORTED_REJECTED_ROWS = 1000;
+    private static final List<String> CSV_COLUMNS = List.of(
+            "name", "price", "thumbnail", "description", "category_id");
+
+    private final JdbcTemplate jdbcTemplate;
+    private final CategoryService categoryService;
+    private final Validator validator;
+    private final ObjectReader productDTOReader;
+    private final ProductCounters productCounters;
+    private final ProductSearchIndex productSearchIndex;
+    private final CatalogVersions catalogVersions;
+    private final TransactionTemplate batchTransaction;
+    private final int batchSize;
+
+    public ProductImportServiceImpl(
+            JdbcTemplate jdbcTemplate,
+            CategoryService categoryService,
+            Validator validator,
+            ObjectMapper objectMapper,
+            ProductCounters productCounters,
+            ProductSearchIndex productSearchIndex,
+            CatalogVersions catalogVersions,
+            PlatformTransactionManager transactionManager,
+            @Value("${product.import.batch-size}") int batchSize
+    ) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.categoryService = categoryService;
+        this.validator = validator;
+        this.productDTOReader = objectMapper.readerFor(ProductDTO.class);
+        this.productCounters = productCounters;
+        this.productSearchIndex = productSearchIndex;
+        this.catalogVersions = catalogVersions;
+        this.batchTransaction = new TransactionTemplate(transactionManager);
+        this.batchSize = batchSize;
+    }
+
+    @Override
+    public ProductImportResponse importProducts(InputStream inputStream, String format)
+            throws IOException, InvalidParamException {
+        if (!FORMAT_CSV.equals(format) && !FORMAT_NDJSON.equals(format)) {
+            throw new InvalidParamException("Unsupported import format: " + format);
+        }
+        long startTime = System.currentTimeMillis();
+        // resolve categories from memory instead of one lookup per row
+        Set<Long> categoryIds = categoryService.getAllCategories()
+                .stream()
+                .map(Category::getId)
+                .collect(Collectors.toSet());
+
+        ImportProgress progress = new ImportProgress();
+        List<Object[]> batchArgs = new ArrayList<>(batchSize);
+        // line number of each row of the batch, to report the rows the database rejects
+        List<Long> batchLines = new ArrayList<>(batchSize);
+        // the request body is read line by line, it is never held in memory as a whole
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(inputStream, StandardCharsets.UTF_8))) {
+            Map<String, Integer> csvColumnIndexes = null;
+            if (FORMAT_CSV.equals(format)) {
+                String header = reader.readLine();
+                progress.lineNumber++;
+                csvColumnIndexes = parseCsvHeader(header);
+            }
+            String line;
+            while ((line = reader.readLine()) != null) {
+                progress.lineNumber++;
+                if (line.isBlank()) {
+                    continue;
+                }
+                try {
+                    ProductDTO productDTO = FORMAT_CSV.equals(format)
+                            ? parseCsvRow(line, csvColumnIndexes)
+                            : productDTOReader.readValue(line);
+                    validate(productDTO, categoryIds);
+                    batchArgs.add(toInsertArgs(productDTO));
+                    batchLines.add(progress.lineNumber);
+                } catch (InvalidParamException | JsonProcessingException e) {
+                    progress.reject(progress.lineNumber, e.getMessage());
+                }
+                if (batchArgs.size() >= batchSize) {
+                    insertBatch(batchArgs, batchLines, progress);
+                }
+            }
+            insertBatch(batchArgs, batchLines, progress);
+        } finally {
+            if (progress.importedRows > 0) {
+                afterImport();
+            }
+        }
+        return ProductImportResponse.builder()
+                .importedRows(progress.importedRows)
+                .rejectedRows(progress.rejectedRows)
+                .elapsedMs(System.currentTimeMillis() - startTime)
+                .batches(progress.batches)
+                .rejected(progress.rejected)
+                .build();
+    }
+
+    // The rows rejected while the batch was read are counted with it, so every batch entry
+    // tells how far the import got and how many rows it lost on the way
+    private void insertBatch(List<Object[]> batchArgs, List<Long> batchLines,
+            ImportProgress progress) {
+        if (batchArgs.isEmpty() && progress.batchRejectedRows == 0) {
+            return;
+        }
+        int batchNumber = progress.batches.size() + 1;
+        long batchStartTime = System.currentTimeMillis();
+        String error = null;
+        int insertedRows = 0;
+        if (!batchArgs.isEmpty()) {
+            try {
+                // with rewriteBatchedStatements=true the whole batch is one multi-row INSERT;
+                // the transaction makes a failed batch insert nothing, even when the driver
+                // splits it into several statements
+                batchTransaction.executeWithoutResult(status ->
+                        jdbcTemplate.batchUpdate(INSERT_PRODUCT_SQL, batchArgs));
+                insertedRows = batchArgs.size();
+            } catch (DataAccessException e) {
+                // one bad row fails the whole batch: insert the rows one by one to keep the
+                // others and tell which lines were rejected (failures are rare, a batch is
+                // bounded by batch-size)
+                error = e.getMostSpecificCause().getMessage();
+                insertedRows = insertRowByRow(batchArgs, batchLines, progress);
+            }
+            progress.importedRows += insertedRows;
+        }
+        BatchProgress batchProgress = new BatchProgress(batchNumber, insertedRows,
+                progress.batchRejectedRows, progress.importedRows,
+                System.currentTimeMillis() - batchStartTime, error);
+        progress.batches.add(batchProgress);
+        log.info("Product import batch {}: {} rows inserted, {} rejected, {} in total, {} ms{}",
+                batchNumber, insertedRows, progress.batchRejectedRows, progress.importedRows,
+                batchProgress.getElapsedMs(),
+                error == null ? "" : ", retried row by row: " + error);
+        progress.batchRejectedRows = 0;
+        batchArgs.clear();
+        batchLines.clear();
+    }
+
+    // returns the number of rows inserted, the others are rejected with their line number
+    private int insertRowByRow(List<Object[]> batchArgs, List<Long> batchLines,
+            ImportProgress progress) {
+        int insertedRows = 0;
+        for (int i = 0; i < batchArgs.size(); ++i) {
+            try {
+                jdbcTemplate.update(INSERT_PRODUCT_SQL, batchArgs.get(i));
+                ++insertedRows;
+            } catch (DataAccessException e) {
+                progress.reject(batchLines.get(i), e.getMostSpecificCause().getMessage());
+            }
+        }
+        return insertedRows;
+    }
+
+    // rows were inserted behind the back of ProductServiceImpl
+    private void afterImport() {
+        catalogVersions.productsChanged();
+        try {
+            productCounters.reconcile();
+        } catch (DataAccessException e) {
+            log.warn("Cannot reconcile product counters after import: {}", e.getMessage());
+        }
+        productSearchIndex.rebuildInBackground();
+    }
+
+    private void validate(ProductDTO productDTO, Set<Long> categoryIds)
+            throws InvalidParamException {
+        // same constraints as POST /products
+        Set<ConstraintViolation<ProductDTO>> violations = validator.validate(productDTO);
+        if (!violations.isEmpty()) {
+            throw new InvalidParamException(violations.stream()
+                    .map(ConstraintViolation::getMessage)
+                    .collect(Collectors.joining(", ")));
+        }
+        if (productDTO.getPrice() == null) {
+            throw new InvalidParamException("Price is required");
+        }
+        if (!categoryIds.contains(productDTO.getCategoryId())) {
+            throw new InvalidParamException(
+                    "Cannot find category with id: " + productDTO.getCategoryId());
+        }
+    }
+
+    private static Object[] toInsertArgs(ProductDTO productDTO) {
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        return new Object[]{
+                productDTO.getName(),
+                productDTO.getPrice(),
+                productDTO.getThumbnail() == null ? "" : productDTO.getThumbnail(),
+                productDTO.getDescription() == null ? "" : productDTO.getDescription(),
+                now,
+                now,
+                productDTO.getCategoryId()
+        };
+    }
+
+    private static Map<String, Integer> parseCsvHeader(String header)
+            throws InvalidParamException {
+        if (header == null) {
+            throw new InvalidParamException("Missing CSV header: " + String.join(",", CSV_COLUMNS));
+        }
+        List<String> columns = parseCsvLine(header).stream()
+                .map(column -> column.trim().toLowerCase())
+                .toList();
+        if (!columns.containsAll(List.of("name", "price", "category_id"))) {
+            throw new InvalidParamException("CSV header must contain name, price and category_id");
+        }
+        return CSV_COLUMNS.stream()
+                .filter(columns::contains)
+                .collect(Collectors.toMap(column -> column, columns::indexOf));
+    }
+
+    private static ProductDTO parseCsvRow(String line, Map<String, Integer> columnIndexes)
+            throws InvalidParamException {
+        List<String> values = parseCsvLine(line);
+        try {
+            String price = csvValue(values, columnIndexes, "price");
+            String categoryId = csvValue(values, columnIndexes, "category_id");
+            return ProductDTO.builder()
+                    .name(csvValue(values, columnIndexes, "name"))
+                    .price(price == null || price.isBlank() ? null : Float.parseFloat(price))
+                    .thumbnail(csvValue(values, columnIndexes, "thumbnail"))
+                    .description(csvValue(values, columnIndexes, "description"))
+                    .categoryId(categoryId == null || categoryId.isBlank() ? null
+                            : Long.parseLong(categoryId.trim()))
+                    .build();
+        } catch (NumberFormatException e) {
+            throw new InvalidParamException("Invalid number: " + e.getMessage());
+        }
+    }
+
+    private static String csvValue(List<String> values, Map<String, Integer> columnIndexes,
+            String column) {
+        Integer index = columnIndexes.get(column);
+        return index == null || index >= values.size() ? null : values.get(index);
+    }
+
+    // RFC 4180 fields on a single line: comma separated, optionally quoted, "" is a quote
+    // (quoted fields spanning several lines are not supported)
+    private static List<String> parseCsvLine(String line) {
+        List<String> values = new ArrayList<>();
+        StringBuilder value = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); ++i) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    value.append('"');
+                    ++i;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    value.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                values.add(value.toString());
+                value.setLength(0);
+            } else {
+                value.append(c);
+            }
+        }
+        values.add(value.toString());
+        return values;
+    }
+
+    private static class ImportProgress {
+        private final List<BatchProgress> batches = new ArrayList<>();
+        private final List<RejectedRow> rejected = new ArrayList<>();
+        private long lineNumber = 0;
+        private long importedRows = 0;
+        private long rejectedRows = 0;
+        // rows rejected since the previous batch
+        private int batchRejectedRows = 0;
+
+        void reject(long line, String reason) {
+            rejectedRows++;
+            batchRejectedRows++;
+            if (rejected.size() < MAXIMUM_REPORTED_REJECTED_ROWS) {
+                rejected.add(new RejectedRow(line, reason));
+            }
+        }
+    }
+}
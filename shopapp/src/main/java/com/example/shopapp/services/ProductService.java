@@ -6,7 +6,9 @@ import com.example.shopapp.exceptions.DataNotFoundException;
 import com.example.shopapp.exceptions.InvalidParamException;
 import com.example.shopapp.models.Product;
 import com.example.shopapp.models.ProductImage;
+import com.example.shopapp.responses.ProductListResponse;
 import com.example.shopapp.responses.ProductResponse;
+import java.util.List;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 
@@ -16,14 +18,37 @@ public interface ProductService {
 
     Product getProductById(Long id) throws DataNotFoundException;
 
-    Page<ProductResponse> getAllProducts(PageRequest pageRequest);
+    ProductResponse getProductResponseById(Long id) throws DataNotFoundException;
+
+    // categoryId is optional (null = all categories)
+    Page<ProductResponse> getAllProducts(Long categoryId, PageRequest pageRequest);
+
+    // keyset pagination, after is the next_cursor of the previous page (null for the first page)
+    // categoryId is optional (null = all categories)
+    ProductListResponse getProductsAfter(Long categoryId, String after, int limit)
+            throws InvalidParamException;
+
+    // full-text search on name and description, filters are optional (null = no filter)
+    List<ProductResponse> searchProducts(String query, Long categoryId, Float minPrice,
+            Float maxPrice, int limit);
 
     Product updateProduct(Long id, ProductDTO productDTO) throws DataNotFoundException;
 
+    // e.g. with a resized variant of the first uploaded image, a thumbnail that is
+    // already set is kept
+    void setDefaultThumbnail(Long productId, String thumbnail);
+
     void deleteProduct(Long id);
 
     boolean existsByName(String name);
 
     ProductImage createProductImage(Long productId, ProductImageDTO productImageDTO)
             throws DataNotFoundException, InvalidParamException;
+
+    void deleteProductImage(Long productImageId) throws DataNotFoundException;
+
+    // all images are inserted in one transaction, none of them if the limit is exceeded;
+    // concurrent calls for the same product are serialized, so the limit always holds
+    List<ProductImage> createProductImages(Long productId, List<ProductImageDTO> productImageDTOs)
+            throws DataNotFoundException, InvalidParamException;
 }
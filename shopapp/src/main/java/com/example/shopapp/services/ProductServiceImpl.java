@@ -1,5 +1,11 @@
 package com.example.shopapp.services;
 
+import com.example.shopapp.components.CatalogVersions;
+import com.example.shopapp.components.ImageStore;
+import com.example.shopapp.components.ProductCache;
+import com.example.shopapp.components.ProductCounters;
+import com.example.shopapp.components.ProductSearchIndex;
+import com.example.shopapp.dtos.ProductCursor;
 import com.example.shopapp.dtos.ProductDTO;
 import com.example.shopapp.dtos.ProductImageDTO;
 import com.example.shopapp.exceptions.DataNotFoundException;
@@ -10,12 +16,25 @@ import com.example.shopapp.models.ProductImage;
 import com.example.shopapp.repositories.CategoryRepository;
 import com.example.shopapp.repositories.ProductImageRepository;
 import com.example.shopapp.repositories.ProductRepository;
+import com.example.shopapp.responses.ProductListResponse;
 import com.example.shopapp.responses.ProductResponse;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 import lombok.RequiredArgsConstructor;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 @Service
 @RequiredArgsConstructor
@@ -24,6 +43,11 @@ public class ProductServiceImpl implements ProductService {
     private final ProductRepository productRepository;
     private final CategoryRepository categoryRepository;
     private final ProductImageRepository productImageRepository;
+    private final ProductCache productCache;
+    private final ProductCounters productCounters;
+    private final ProductSearchIndex productSearchIndex;
+    private final CatalogVersions catalogVersions;
+    private final ImageStore imageStore;
 
     @Override
     public Product createProduct(ProductDTO productDTO) throws DataNotFoundException {
@@ -40,7 +64,11 @@ public class ProductServiceImpl implements ProductService {
                 .description(productDTO.getDescription())
                 .category(existingCategory)
                 .build();
-        return productRepository.save(newProduct);
+        Product savedProduct = productRepository.save(newProduct);
+        productCounters.increment(existingCategory.getId());
+        productSearchIndex.index(savedProduct);
+        catalogVersions.productsChanged();
+        return savedProduct;
     }
 
     @Override
@@ -50,17 +78,87 @@ public class ProductServiceImpl implements ProductService {
     }
 
     @Override
-    public Page<ProductResponse> getAllProducts(PageRequest pageRequest) {
+    public ProductResponse getProductResponseById(Long id) throws DataNotFoundException {
+        // served from the product cache, the database is only queried on a miss
+        // and then only the columns of ProductResponse are selected
+        return productCache.get(id,
+                        key -> productRepository.findProductResponseById(key).orElse(null))
+                .orElseThrow(() -> new DataNotFoundException("Cannot find product with id: " + id));
+    }
+
+    @Override
+    public Page<ProductResponse> getAllProducts(Long categoryId, PageRequest pageRequest) {
         // get products according to page and limit
         // page is the page number, limit is the number of products per page
         // The implementation of how pageRequest is handled will be done in the controller
-        return productRepository.findAll(pageRequest)
-                .map(ProductResponse::fromProduct);
+        // The page content is read as a Slice (no COUNT(*)) and the total comes from the counters
+        if (categoryId == null) {
+            Slice<ProductResponse> productResponseSlice = productRepository.findProductResponses(
+                    pageRequest);
+            return new PageImpl<>(productResponseSlice.getContent(), pageRequest,
+                    productCounters.count());
+        }
+        Slice<ProductResponse> productResponseSlice = productRepository
+                .findProductResponsesByCategoryId(categoryId, pageRequest);
+        return new PageImpl<>(productResponseSlice.getContent(), pageRequest,
+                productCounters.countByCategory(categoryId));
     }
 
     @Override
+    public ProductListResponse getProductsAfter(Long categoryId, String after, int limit)
+            throws InvalidParamException {
+        // seek past the last product of the previous page instead of using OFFSET
+        // so the cost of a page does not grow with its depth
+        Pageable pageable = Pageable.ofSize(limit);
+        Slice<ProductResponse> productSlice;
+        if (after == null || after.isBlank()) {
+            productSlice = categoryId == null
+                    ? productRepository.findFirstPage(pageable)
+                    : productRepository.findFirstPageByCategoryId(categoryId, pageable);
+        } else {
+            ProductCursor cursor = ProductCursor.decode(after);
+            productSlice = categoryId == null
+                    ? productRepository.findPageAfter(
+                            cursor.getCreatedAt(), cursor.getId(), pageable)
+                    : productRepository.findPageAfterByCategoryId(
+                            categoryId, cursor.getCreatedAt(), cursor.getId(), pageable);
+        }
+        List<ProductResponse> products = productSlice.getContent();
+        String nextCursor = null;
+        if (productSlice.hasNext() && !products.isEmpty()) {
+            ProductResponse lastProduct = products.get(products.size() - 1);
+            nextCursor = new ProductCursor(lastProduct.getCreatedAt(), lastProduct.getId())
+                    .encode();
+        }
+        return ProductListResponse.builder()
+                .products(products)
+                .nextCursor(nextCursor)
+                .build();
+    }
+
+    @Override
+    public List<ProductResponse> searchProducts(String query, Long categoryId, Float minPrice,
+            Float maxPrice, int limit) {
+        // the index only ranks ids, the products are read through the cache and the misses
+        // with one query
+        List<Long> productIds = productSearchIndex.search(query, categoryId, minPrice, maxPrice,
+                limit);
+        Map<Long, ProductResponse> products = productCache.getAll(productIds,
+                missingIds -> productRepository.findProductResponsesByIdIn(List.copyOf(missingIds))
+                        .stream()
+                        .collect(Collectors.toMap(ProductResponse::getId, Function.identity())));
+        // in the order of relevance, without the products deleted in the meantime
+        return productIds.stream()
+                .map(products::get)
+                .filter(Objects::nonNull)
+                .toList();
+    }
+
+    @Override
+    @Transactional
     public Product updateProduct(Long id, ProductDTO productDTO) throws DataNotFoundException {
-        Product existingProduct = getProductById(id);
+        Product existingProduct = productRepository.findById(id)
+                .orElseThrow(() -> new DataNotFoundException("Cannot find product with id: " + id));
 
         // copy product DTO values to existing product
         // we can use object mapper or manually set the values
@@ -71,21 +169,63 @@ public class ProductServiceImpl implements ProductService {
                         "Cannot find category with id: " + productDTO.getCategoryId()));
 
         if (existingProduct != null) {
+            // legacy products may have no category
+            Long oldCategoryId = existingProduct.getCategory() == null ? null
+                    : existingProduct.getCategory().getId();
             existingProduct.setName(productDTO.getName());
             existingProduct.setPrice(productDTO.getPrice());
             existingProduct.setThumbnail(productDTO.getThumbnail());
             existingProduct.setDescription(productDTO.getDescription());
             existingProduct.setCategory(existingCategory);
-            return productRepository.save(existingProduct);
+            Product updatedProduct = productRepository.save(existingProduct);
+            // a read between the invalidation and the commit would cache the old product again
+            Long newCategoryId = existingCategory.getId();
+            afterCommit(() -> {
+                productCache.invalidate(id);
+                productCounters.move(oldCategoryId, newCategoryId);
+                productSearchIndex.index(updatedProduct);
+                catalogVersions.productsChanged();
+            });
+            return updatedProduct;
         }
         return null;
     }
 
     @Override
+    @Transactional
+    public void setDefaultThumbnail(Long productId, String thumbnail) {
+        if (productRepository.updateThumbnailIfEmpty(productId, thumbnail,
+                LocalDateTime.now()) == 0) {
+            return;
+        }
+        productRepository.findById(productId).ifPresent(product -> afterCommit(() -> {
+            productCache.invalidate(productId);
+            productSearchIndex.index(product);
+            catalogVersions.productsChanged();
+        }));
+    }
+
+    @Override
+    @Transactional
     public void deleteProduct(Long id) {
         // no need to throw exception if product does not exist
         Optional<Product> optionalProduct = productRepository.findById(id);
-        optionalProduct.ifPresent(productRepository::delete);
+        optionalProduct.ifPresent(product -> {
+            List<ProductImage> productImages = productImageRepository.findByProductId(id);
+            productImageRepository.deleteAll(productImages);
+            productRepository.delete(product);
+            // the files are shared with identical uploads, give back the references
+            // (in this transaction, the files themselves are deleted after the commit)
+            productImages.forEach(productImage -> imageStore.release(productImage.getImageUrl()));
+            Long categoryId = product.getCategory() == null ? null
+                    : product.getCategory().getId();
+            afterCommit(() -> {
+                productCounters.decrement(categoryId);
+                productSearchIndex.remove(id);
+                catalogVersions.productsChanged();
+            });
+        });
+        afterCommit(() -> productCache.invalidate(id));
     }
 
     @Override
@@ -94,22 +234,71 @@ public class ProductServiceImpl implements ProductService {
     }
 
     @Override
+    @Transactional // createProductImages is called directly, not through the proxy
     public ProductImage createProductImage(Long productId, ProductImageDTO productImageDTO)
             throws DataNotFoundException, InvalidParamException {
-        Product existingProduct = productRepository.findById(productId)
+        return createProductImages(productId, List.of(productImageDTO)).get(0);
+    }
+
+    @Override
+    @Transactional
+    public void deleteProductImage(Long productImageId) throws DataNotFoundException {
+        ProductImage productImage = productImageRepository.findById(productImageId)
                 .orElseThrow(() -> new DataNotFoundException(
-                        "Cannot find product with id: " + productId));
-        ProductImage productImage = ProductImage.builder()
-                .imageUrl(productImageDTO.getImageUrl())
-                .product(existingProduct)
-                .build();
+                        "Cannot find product image with id: " + productImageId));
+        productImageRepository.delete(productImage);
+        imageStore.release(productImage.getImageUrl());
+        Long productId = productImage.getProduct().getId();
+        afterCommit(() -> productCache.invalidate(productId));
+    }
+
+    @Override
+    @Transactional
+    public List<ProductImage> createProductImages(Long productId,
+            List<ProductImageDTO> productImageDTOs)
+            throws DataNotFoundException, InvalidParamException {
+        // lock the product row until the commit: concurrent uploads for the same product
+        // wait here, so the count below includes the images they inserted. The lock is the
+        // first statement: with REPEATABLE READ an earlier read would fix the snapshot the
+        // count reads before the other uploads commit. It also checks that the product exists,
+        // the images are attached to a reference of the product instead of loading the entity.
+        productRepository.lockById(productId).orElseThrow(() ->
+                new DataNotFoundException("Cannot find product with id: " + productId));
+        Product existingProduct = productRepository.getReferenceById(productId);
         // maximum number of images per product is 5
-        int numberOfProductImages = productImageRepository.findByProductId(
-                existingProduct.getId()).size();
-        if (numberOfProductImages >= ProductImage.MAXIMUM_IMAGES_PER_PRODUCT) {
+        long numberOfProductImages = productImageRepository.countByProductId(productId);
+        if (numberOfProductImages + productImageDTOs.size()
+                > ProductImage.MAXIMUM_IMAGES_PER_PRODUCT) {
             throw new InvalidParamException("Number of images exceeded the limit of "
                     + ProductImage.MAXIMUM_IMAGES_PER_PRODUCT);
         }
-        return productImageRepository.save(productImage);
+        List<ProductImage> productImages = productImageDTOs.stream()
+                .map(productImageDTO -> ProductImage.builder()
+                        .imageUrl(productImageDTO.getImageUrl())
+                        .product(existingProduct)
+                        .build())
+                .toList();
+        // one transaction for all the rows (product_images.id is IDENTITY, so Hibernate still sends
+        // one INSERT per row, but they share a single connection and commit)
+        List<ProductImage> savedProductImages = productImageRepository.saveAll(productImages);
+        // the cached product may have changed with its images (e.g. updatedAt)
+        afterCommit(() -> productCache.invalidate(productId));
+        return savedProductImages;
+    }
+
+    // Caches and indexes are updated once the change is visible to other transactions: before
+    // the commit, a concurrent read would cache the old row again
+    private static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(
+                new TransactionSynchronization() {
+                    @Override
+                    public void afterCommit() {
+                        action.run();
+                    }
+                });
     }
 }
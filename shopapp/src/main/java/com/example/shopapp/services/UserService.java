@@ -11,4 +11,10 @@ public interface UserService {
     User createUser(UserDTO userDTO) throws DataNotFoundException, PermissionDenyException;
     String loginUser(String phoneNumber, String password)
             throws DataNotFoundException, InvalidParamException;
+
+    // revokes the token, it is rejected from now on even though it has not expired
+    void logout(String token) throws InvalidParamException;
+
+    // revokes every valid token of the user, returns the number of revoked tokens
+    int revokeTokens(Long userId) throws DataNotFoundException;
 }
@@ -1,22 +1,29 @@
 package com.example.shopapp.services;
 
 import com.example.shopapp.components.JwtUtils;
+import com.example.shopapp.components.JwtUtils.IssuedToken;
+import com.example.shopapp.components.JwtUtils.VerifiedToken;
+import com.example.shopapp.components.PasswordHasher;
+import com.example.shopapp.components.TokenRevocations;
 import com.example.shopapp.dtos.UserDTO;
 import com.example.shopapp.exceptions.DataNotFoundException;
 import com.example.shopapp.exceptions.InvalidParamException;
 import com.example.shopapp.exceptions.PermissionDenyException;
 import com.example.shopapp.models.Role;
+import com.example.shopapp.models.Token;
 import com.example.shopapp.models.User;
 import com.example.shopapp.repositories.RoleRepository;
+import com.example.shopapp.repositories.TokenRepository;
 import com.example.shopapp.repositories.UserRepository;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.List;
 import java.util.Optional;
 import lombok.RequiredArgsConstructor;
 import org.springframework.dao.DataIntegrityViolationException;
-import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.BadCredentialsException;
-import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
-import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 @Service
 @RequiredArgsConstructor
@@ -24,9 +31,11 @@ public class UserServiceImpl implements UserService {
 
     private final UserRepository userRepository;
     private final RoleRepository roleRepository;
-    private final PasswordEncoder passwordEncoder;
+    // BCrypt runs on its own bounded pool, see PasswordHasher
+    private final PasswordHasher passwordHasher;
     private final JwtUtils jwtUtils;
-    private final AuthenticationManager authenticationManager;
+    private final TokenRepository tokenRepository;
+    private final TokenRevocations tokenRevocations;
 
     @Override
     public User createUser(UserDTO userDTO) throws DataNotFoundException, PermissionDenyException {
@@ -59,7 +68,7 @@ public class UserServiceImpl implements UserService {
                 && (userDTO.getGoogleAccountId() == null || userDTO.getGoogleAccountId()
                 .isEmpty())) {
             String password = userDTO.getPassword();
-            String encodedPassword = passwordEncoder.encode(password);
+            String encodedPassword = passwordHasher.encode(password);
             newUser.setPassword(encodedPassword);
         } else {
             newUser.setPassword("");
@@ -71,25 +80,59 @@ public class UserServiceImpl implements UserService {
     public String loginUser(String phoneNumber, String password) throws InvalidParamException {
         Optional<User> optionalUser = userRepository.findByPhoneNumber(phoneNumber);
         if (optionalUser.isEmpty()) {
+            // as slow as a wrong password, the response time does not reveal the phone numbers
+            passwordHasher.matches(password, null);
             throw new BadCredentialsException("Invalid phone number or password");
         }
         User existingUser = optionalUser.get();
-        // check if the user has a password
-        // only check if user signs in with phone number and password
-        // not check if user signs in with Facebook or Google
-        if ((existingUser.getFacebookAccountId() == null || existingUser.getFacebookAccountId()
-                .isEmpty())
-                && (existingUser.getGoogleAccountId() == null || existingUser.getGoogleAccountId()
-                .isEmpty())
-                && !passwordEncoder.matches(password, existingUser.getPassword())) {
+        // Facebook and Google accounts have no password (an empty hash), they cannot sign in
+        // with a phone number and password: rejected after the same work as a wrong password
+        String encodedPassword = existingUser.getPassword();
+        if (!passwordHasher.matches(password,
+                encodedPassword == null || encodedPassword.isEmpty() ? null : encodedPassword)) {
             throw new BadCredentialsException("Invalid phone number or password");
         }
-        // authenticate user with Java Spring Security
-        var authenticationToken = new UsernamePasswordAuthenticationToken(
-                phoneNumber, password,
-                existingUser.getAuthorities());
-        authenticationManager.authenticate(authenticationToken);
+        // the password is verified once, above: authenticating again through the
+        // AuthenticationManager would load the user and run BCrypt a second time
+        IssuedToken issuedToken = jwtUtils.generateToken(existingUser);
+        // the token is recorded so that it can be revoked (logout)
+        tokenRepository.save(Token.builder()
+                .token(issuedToken.tokenId())
+                .tokenType(Token.BEARER)
+                .expirationDate(LocalDateTime.ofInstant(issuedToken.expiresAt(),
+                        ZoneId.systemDefault()))
+                .user(existingUser)
+                .build());
         // return the generated token
-        return jwtUtils.generateToken(existingUser);
+        return issuedToken.token();
+    }
+
+    @Override
+    @Transactional
+    public void logout(String token) throws InvalidParamException {
+        VerifiedToken verifiedToken = jwtUtils.verify(token);
+        if (verifiedToken.tokenId() == null) {
+            throw new InvalidParamException("This token cannot be revoked, it expires at "
+                    + verifiedToken.expiresAt());
+        }
+        tokenRepository.revoke(verifiedToken.tokenId(), LocalDateTime.now());
+        tokenRevocations.revoked(verifiedToken.tokenId(), verifiedToken.expiresAt());
+    }
+
+    @Override
+    @Transactional
+    public int revokeTokens(Long userId) throws DataNotFoundException {
+        if (!userRepository.existsById(userId)) {
+            throw new DataNotFoundException("Cannot find user with id: " + userId);
+        }
+        LocalDateTime now = LocalDateTime.now();
+        List<Object[]> validTokens = tokenRepository.findValidByUserId(userId, now);
+        tokenRepository.revokeByUserId(userId, now);
+        // the other nodes read the revocations at their next refresh
+        for (Object[] validToken : validTokens) {
+            tokenRevocations.revoked((String) validToken[0],
+                    ((LocalDateTime) validToken[1]).atZone(ZoneId.systemDefault()).toInstant());
+        }
+        return validTokens.size();
     }
 }
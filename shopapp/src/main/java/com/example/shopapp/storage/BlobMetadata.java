@@ -0,0 +1,6 @@
+package com.example.shopapp.storage;
+
+// lastModified is in milliseconds since the epoch
+public record BlobMetadata(long size, long lastModified) {
+
+}
@@ -0,0 +1,57 @@
+package com.example.shopapp.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+
+// Where the bytes of the product images live
+// Keys are relative paths with "/" separators (e.g. "ab/cd/abcd...ef.jpg").
+// The backend is chosen with storage.type: local (default), s3 or memory.
+public interface BlobStore {
+
+    // Stores exactly size bytes read from the stream, replacing any blob with the same key
+    // Readers never see a partially written blob
+    void put(String key, InputStream inputStream, long size, String contentType)
+            throws IOException;
+
+    // Stores the content of a file, which the backend may move instead of copying:
+    // the caller must not use the file afterwards
+    default void putFile(String key, Path file, String contentType) throws IOException {
+        try (InputStream inputStream = Files.newInputStream(file)) {
+            put(key, inputStream, Files.size(file), contentType);
+        }
+    }
+
+    // Reads the blob from the given byte offset to the end, the caller closes the stream
+    // and may stop reading early; throws NoSuchFileException when the blob does not exist
+    InputStream get(String key, long offset) throws IOException;
+
+    default InputStream get(String key) throws IOException {
+        return get(key, 0);
+    }
+
+    Optional<BlobMetadata> stat(String key) throws IOException;
+
+    // no error if the blob does not exist
+    void delete(String key) throws IOException;
+
+    // keys starting with the prefix
+    List<String> list(String prefix) throws IOException;
+
+    // URL from which clients can download the blob directly, without going through the
+    // application, valid for the given duration; empty if the backend cannot provide one
+    default Optional<URI> directUrl(String key, Duration validity) {
+        return Optional.empty();
+    }
+
+    // file holding the blob, for zero-copy transfers; empty if the backend is not a
+    // local file system
+    default Optional<Path> localPath(String key) {
+        return Optional.empty();
+    }
+}
@@ -0,0 +1,62 @@
+package com.example.shopapp.storage;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.NoSuchFileException;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+// Blobs kept in the heap, for tests and local experiments, lost on restart
+@Component
+@ConditionalOnProperty(name = "storage.type", havingValue = "memory")
+public class InMemoryBlobStore implements BlobStore {
+
+    private final Map<String, Blob> blobs = new ConcurrentHashMap<>();
+
+    @Override
+    public void put(String key, InputStream inputStream, long size, String contentType)
+            throws IOException {
+        byte[] content = inputStream.readAllBytes();
+        if (content.length != size) {
+            throw new IOException("Expected " + size + " bytes, got " + content.length);
+        }
+        blobs.put(key, new Blob(content, System.currentTimeMillis()));
+    }
+
+    @Override
+    public InputStream get(String key, long offset) throws IOException {
+        Blob blob = blobs.get(key);
+        if (blob == null) {
+            throw new NoSuchFileException(key);
+        }
+        int start = (int) Math.min(offset, blob.content().length);
+        return new ByteArrayInputStream(blob.content(), start, blob.content().length - start);
+    }
+
+    @Override
+    public Optional<BlobMetadata> stat(String key) {
+        return Optional.ofNullable(blobs.get(key))
+                .map(blob -> new BlobMetadata(blob.content().length, blob.lastModified()));
+    }
+
+    @Override
+    public void delete(String key) {
+        blobs.remove(key);
+    }
+
+    @Override
+    public List<String> list(String prefix) {
+        return blobs.keySet().stream()
+                .filter(key -> key.startsWith(prefix))
+                .toList();
+    }
+
+    private record Blob(byte[] content, long lastModified) {
+
+    }
+}
@@ -0,0 +1,262 @@
+package com.example.shopapp.storage;
+
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+import org.springframework.util.unit.DataSize;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.AwsCredentialsProvider;
+import software.amazon.awssdk.auth.credentials.DefaultCredentialsProvider;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.core.exception.SdkException;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.S3Configuration;
+import software.amazon.awssdk.services.s3.model.CompletedMultipartUpload;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+import software.amazon.awssdk.services.s3.model.S3Object;
+import software.amazon.awssdk.services.s3.presigner.S3Presigner;
+
+// Blobs are objects of an S3 bucket, or of any S3-compatible server (MinIO, Ceph, ...)
+// when storage.s3.endpoint is set. Blobs larger than storage.s3.multipart-threshold are
+// uploaded in parts, so that memory usage stays bounded by the part size.
+// Clients download the images with presigned URLs, the bytes do not go through the
+// application. Credentials come from storage.s3.access-key/secret-key if set, otherwise
+// from the default AWS chain (environment, profile, instance role).
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "storage.type", havingValue = "s3")
+public class S3BlobStore implements BlobStore {
+
+    // S3 rejects parts smaller than 5MB (except the last one)
+    private static final long MINIMUM_PART_SIZE = 5L * 1024 * 1024;
+
+    private final S3Client s3Client;
+    private final S3Presigner s3Presigner;
+    private final String bucket;
+    private final long multipartThreshold;
+    private final long partSize;
+
+    public S3BlobStore(
+            @Value("${storage.s3.bucket}") String bucket,
+            @Value("${storage.s3.region}") String region,
+            @Value("${storage.s3.endpoint:}") String endpoint,
+            @Value("${storage.s3.path-style-access}") boolean pathStyleAccess,
+            @Value("${storage.s3.access-key:}") String accessKey,
+            @Value("${storage.s3.secret-key:}") String secretKey,
+            @Value("${storage.s3.multipart-threshold}") DataSize multipartThreshold,
+            @Value("${storage.s3.part-size}") DataSize partSize
+    ) throws URISyntaxException {
+        this.bucket = bucket;
+        this.multipartThreshold = multipartThreshold.toBytes();
+        this.partSize = Math.max(partSize.toBytes(), MINIMUM_PART_SIZE);
+        AwsCredentialsProvider credentialsProvider = StringUtils.hasText(accessKey)
+                ? StaticCredentialsProvider.create(AwsBasicCredentials.create(accessKey, secretKey))
+                : DefaultCredentialsProvider.create();
+        S3Configuration s3Configuration = S3Configuration.builder()
+                .pathStyleAccessEnabled(pathStyleAccess)
+                .build();
+        var clientBuilder = S3Client.builder()
+                .region(Region.of(region))
+                .credentialsProvider(credentialsProvider)
+                .serviceConfiguration(s3Configuration);
+        var presignerBuilder = S3Presigner.builder()
+                .region(Region.of(region))
+                .credentialsProvider(credentialsProvider)
+                .serviceConfiguration(s3Configuration);
+        if (StringUtils.hasText(endpoint)) {
+            clientBuilder.endpointOverride(new URI(endpoint));
+            presignerBuilder.endpointOverride(new URI(endpoint));
+        }
+        this.s3Client = clientBuilder.build();
+        this.s3Presigner = presignerBuilder.build();
+    }
+
+    // for tests, with the part size taken as is
+    S3BlobStore(S3Client s3Client, S3Presigner s3Presigner, String bucket,
+            long multipartThreshold, long partSize) {
+        this.s3Client = s3Client;
+        this.s3Presigner = s3Presigner;
+        this.bucket = bucket;
+        this.multipartThreshold = multipartThreshold;
+        this.partSize = partSize;
+    }
+
+    @PreDestroy
+    public void close() {
+        s3Presigner.close();
+        s3Client.close();
+    }
+
+    @Override
+    public void put(String key, InputStream inputStream, long size, String contentType)
+            throws IOException {
+        if (size >= multipartThreshold) {
+            putMultipart(key, inputStream, size, contentType);
+            return;
+        }
+        // buffered so that the request can be retried
+        byte[] content = inputStream.readNBytes((int) size);
+        if (content.length != size) {
+            throw new IOException("Expected " + size + " bytes, got " + content.length);
+        }
+        try {
+            s3Client.putObject(request -> request.bucket(bucket).key(key)
+                    .contentType(contentType), RequestBody.fromBytes(content));
+        } catch (SdkException e) {
+            throw new IOException("Cannot upload " + key + ": " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void putFile(String key, Path file, String contentType) throws IOException {
+        long size = Files.size(file);
+        if (size >= multipartThreshold) {
+            try (InputStream inputStream = Files.newInputStream(file)) {
+                putMultipart(key, inputStream, size, contentType);
+            }
+            return;
+        }
+        try {
+            s3Client.putObject(request -> request.bucket(bucket).key(key)
+                    .contentType(contentType), RequestBody.fromFile(file));
+        } catch (SdkException e) {
+            throw new IOException("Cannot upload " + key + ": " + e.getMessage(), e);
+        }
+    }
+
+    // One part in memory at a time, the upload is aborted on failure (including a stream
+    // shorter than size) so that S3 does not keep (and bill) the parts already sent
+    private void putMultipart(String key, InputStream inputStream, long size,
+            String contentType) throws IOException {
+        String uploadId;
+        try {
+            uploadId = s3Client.createMultipartUpload(request -> request.bucket(bucket)
+                    .key(key).contentType(contentType)).uploadId();
+        } catch (SdkException e) {
+            throw new IOException("Cannot upload " + key + ": " + e.getMessage(), e);
+        }
+        try {
+            List<CompletedPart> parts = new ArrayList<>();
+            long remaining = size;
+            while (remaining > 0) {
+                int partLength = (int) Math.min(partSize, remaining);
+                byte[] part = inputStream.readNBytes(partLength);
+                if (part.length != partLength) {
+                    throw new IOException("Expected " + size + " bytes, got "
+                            + (size - remaining + part.length));
+                }
+                remaining -= partLength;
+                int partNumber = parts.size() + 1;
+                String eTag = s3Client.uploadPart(request -> request.bucket(bucket).key(key)
+                                .uploadId(uploadId).partNumber(partNumber),
+                        RequestBody.fromBytes(part)).eTag();
+                parts.add(CompletedPart.builder().partNumber(partNumber).eTag(eTag).build());
+            }
+            s3Client.completeMultipartUpload(request -> request.bucket(bucket).key(key)
+                    .uploadId(uploadId)
+                    .multipartUpload(CompletedMultipartUpload.builder().parts(parts).build()));
+        } catch (IOException | SdkException e) {
+            try {
+                s3Client.abortMultipartUpload(request -> request.bucket(bucket).key(key)
+                        .uploadId(uploadId));
+            } catch (SdkException abortException) {
+                log.warn("Cannot abort the multipart upload of {}: {}", key,
+                        abortException.getMessage());
+            }
+            throw e instanceof IOException ioException ? ioException
+                    : new IOException("Cannot upload " + key + ": " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public InputStream get(String key, long offset) throws IOException {
+        try {
+            return s3Client.getObject(request -> {
+                request.bucket(bucket).key(key);
+                if (offset > 0) {
+                    request.range("bytes=" + offset + "-");
+                }
+            });
+        } catch (NoSuchKeyException e) {
+            throw new NoSuchFileException(key);
+        } catch (SdkException e) {
+            throw new IOException("Cannot download " + key + ": " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public Optional<BlobMetadata> stat(String key) throws IOException {
+        try {
+            HeadObjectResponse head = s3Client.headObject(request -> request.bucket(bucket)
+                    .key(key));
+            return Optional.of(new BlobMetadata(head.contentLength(),
+                    head.lastModified().toEpochMilli()));
+        } catch (NoSuchKeyException e) {
+            return Optional.empty();
+        } catch (S3Exception e) {
+            // HEAD responses have no body, a missing key may not be mapped to NoSuchKey
+            if (e.statusCode() == 404) {
+                return Optional.empty();
+            }
+            throw new IOException("Cannot read " + key + ": " + e.getMessage(), e);
+        } catch (SdkException e) {
+            throw new IOException("Cannot read " + key + ": " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void delete(String key) throws IOException {
+        try {
+            s3Client.deleteObject(request -> request.bucket(bucket).key(key));
+        } catch (SdkException e) {
+            throw new IOException("Cannot delete " + key + ": " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public List<String> list(String prefix) throws IOException {
+        try {
+            return s3Client.listObjectsV2Paginator(request -> request.bucket(bucket)
+                            .prefix(prefix))
+                    .contents()
+                    .stream()
+                    .map(S3Object::key)
+                    .toList();
+        } catch (SdkException e) {
+            throw new IOException("Cannot list " + prefix + ": " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public Optional<URI> directUrl(String key, Duration validity) {
+        try {
+            return Optional.of(s3Presigner.presignGetObject(request -> request
+                            .signatureDuration(validity)
+                            .getObjectRequest(getObject -> getObject.bucket(bucket).key(key)))
+                    .url()
+                    .toURI());
+        } catch (URISyntaxException | SdkException e) {
+            log.warn("Cannot presign {}: {}", key, e.getMessage());
+            return Optional.empty();
+        }
+    }
+}
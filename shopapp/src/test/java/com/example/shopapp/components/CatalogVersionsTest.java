@@ -0,0 +1,110 @@
+package com.example.shopapp.components;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.example.shopapp.models.Category;
+import com.example.shopapp.repositories.ProductRepository;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.QueryTimeoutException;
+
+class CatalogVersionsTest {
+
+    private static final LocalDateTime UPDATED_AT = LocalDateTime.of(2024, 10, 1, 10, 0);
+
+    private final ProductRepository productRepository = mock(ProductRepository.class);
+    private final CatalogVersions catalogVersions = new CatalogVersions(productRepository);
+
+    @Test
+    void nodesReadingTheSameRowsAgreeOnTheETags() {
+        givenVersions(new Object[] {1L, 3L, UPDATED_AT}, new Object[] {2L, 1L, UPDATED_AT});
+        CatalogVersions otherNode = new CatalogVersions(productRepository);
+        catalogVersions.onApplicationReady();
+        otherNode.onApplicationReady();
+
+        for (Long categoryId : new Long[] {null, 1L, 2L, 3L}) {
+            assertThat(catalogVersions.productsETag(categoryId))
+                    .isNotNull()
+                    .isEqualTo(otherNode.productsETag(categoryId));
+        }
+        // the driver may return the latest updated_at as a Timestamp
+        givenVersions(new Object[] {1L, 3L, Timestamp.valueOf(UPDATED_AT)},
+                new Object[] {2L, 1L, UPDATED_AT});
+        otherNode.productsChanged();
+        assertThat(otherNode.productsETag(1L)).isEqualTo(catalogVersions.productsETag(1L));
+    }
+
+    @Test
+    void aWriteOfAnotherNodeIsPickedUpByTheScheduledRefresh() {
+        givenVersions(new Object[] {1L, 3L, UPDATED_AT}, new Object[] {2L, 1L, UPDATED_AT});
+        catalogVersions.onApplicationReady();
+        String all = catalogVersions.productsETag(null);
+        String category1 = catalogVersions.productsETag(1L);
+        String category2 = catalogVersions.productsETag(2L);
+
+        // another node (or a direct SQL update) updated a product of category 1
+        givenVersions(new Object[] {1L, 3L, UPDATED_AT.plusSeconds(1)},
+                new Object[] {2L, 1L, UPDATED_AT});
+        assertThat(catalogVersions.productsETag(1L)).isEqualTo(category1);
+        catalogVersions.scheduledRefresh();
+
+        assertThat(catalogVersions.productsETag(null)).isNotEqualTo(all);
+        assertThat(catalogVersions.productsETag(1L)).isNotEqualTo(category1);
+        // the pages of the other categories stay cacheable
+        assertThat(catalogVersions.productsETag(2L)).isEqualTo(category2);
+    }
+
+    @Test
+    void aDeletedProductChangesTheVersionOfItsCategory() {
+        givenVersions(new Object[] {1L, 3L, UPDATED_AT});
+        catalogVersions.productsChanged();
+        String category1 = catalogVersions.productsETag(1L);
+
+        // the deleted product was not the latest one updated
+        givenVersions(new Object[] {1L, 2L, UPDATED_AT});
+        catalogVersions.productsChanged();
+
+        assertThat(catalogVersions.productsETag(1L)).isNotEqualTo(category1);
+    }
+
+    @Test
+    void noETagWhileTheVersionIsUnknown() {
+        assertThat(catalogVersions.productsETag(null)).isNull();
+        givenVersions(new Object[] {1L, 3L, UPDATED_AT});
+        catalogVersions.productsChanged();
+        assertThat(catalogVersions.productsETag(null)).isNotNull();
+
+        // a write the version may not include
+        when(productRepository.versionGroupByCategory())
+                .thenThrow(new QueryTimeoutException("timeout"));
+        catalogVersions.productsChanged();
+
+        assertThat(catalogVersions.productsETag(null)).isNull();
+        assertThat(catalogVersions.productsETag(1L)).isNull();
+    }
+
+    @Test
+    void theCategoriesETagFollowsTheSnapshotContent() {
+        assertThat(catalogVersions.categoriesETag()).isNull();
+        List<Category> categories = List.of(Category.builder().id(1L).name("Phones").build(),
+                Category.builder().id(2L).name("Laptops").build());
+        catalogVersions.categoriesChanged(categories);
+        String eTag = catalogVersions.categoriesETag();
+
+        CatalogVersions otherNode = new CatalogVersions(productRepository);
+        otherNode.categoriesChanged(List.copyOf(categories));
+        assertThat(otherNode.categoriesETag()).isEqualTo(eTag);
+
+        catalogVersions.categoriesChanged(List.of(categories.get(0),
+                Category.builder().id(2L).name("Notebooks").build()));
+        assertThat(catalogVersions.categoriesETag()).isNotEqualTo(eTag);
+    }
+
+    private void givenVersions(Object[]... rows) {
+        when(productRepository.versionGroupByCategory()).thenReturn(List.of(rows));
+    }
+}
@@ -0,0 +1,108 @@
+package com.example.shopapp.components;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.example.shopapp.components.ImageByteCache.CachedImage;
+import com.example.shopapp.storage.BlobMetadata;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Optional;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+class ImageByteCacheTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    // 1000 bytes in total, images of at most 600 bytes
+    private final ImageByteCache imageByteCache = new ImageByteCache(DataSize.ofBytes(1000),
+            DataSize.ofBytes(600), meterRegistry);
+    private final ImageStore imageStore = mock(ImageStore.class);
+
+    @Test
+    void aSmallImageIsReadOnce() throws IOException {
+        givenImage("small.jpg", 100);
+
+        Optional<CachedImage> first = imageByteCache.get("small.jpg", imageStore);
+        Optional<CachedImage> second = imageByteCache.get("small.jpg", imageStore);
+
+        assertThat(first).isPresent();
+        assertThat(second.get()).isSameAs(first.get());
+        assertThat(first.get().content().remaining()).isEqualTo(100);
+        verify(imageStore, times(1)).open("small.jpg", 0);
+        assertThat(gets("hit")).isEqualTo(1);
+        assertThat(gets("miss")).isEqualTo(1);
+    }
+
+    @Test
+    void largeAndMissingImagesBypassTheCache() throws IOException {
+        givenImage("large.jpg", 601);
+        when(imageStore.stat("missing.jpg")).thenReturn(Optional.empty());
+
+        for (int i = 0; i < 3; ++i) {
+            assertThat(imageByteCache.get("large.jpg", imageStore)).isEmpty();
+            assertThat(imageByteCache.get("missing.jpg", imageStore)).isEmpty();
+        }
+
+        // one stat and one miss each, the first time
+        verify(imageStore, times(1)).stat("large.jpg");
+        verify(imageStore, times(1)).stat("missing.jpg");
+        verify(imageStore, never()).open(anyString(), anyLong());
+        assertThat(gets("miss")).isEqualTo(2);
+    }
+
+    @Test
+    void aDeletedImageIsLookedUpAgain() throws IOException {
+        when(imageStore.stat("photo.jpg")).thenReturn(Optional.empty());
+        assertThat(imageByteCache.get("photo.jpg", imageStore)).isEmpty();
+
+        // the same bytes are uploaded again after ImageStore.delete
+        imageByteCache.invalidate("photo.jpg");
+        givenImage("photo.jpg", 100);
+
+        assertThat(imageByteCache.get("photo.jpg", imageStore)).isPresent();
+    }
+
+    @Test
+    void imagesAreEvictedByWeight() throws Exception {
+        for (int i = 0; i < 5; ++i) {
+            givenImage("image-" + i + ".jpg", 400);
+            assertThat(imageByteCache.get("image-" + i + ".jpg", imageStore)).isPresent();
+        }
+
+        // 2000 bytes were loaded, 2 images of 400 bytes fit; eviction runs asynchronously
+        long deadline = System.nanoTime() + 5_000_000_000L;
+        while ((residentBytes() > 1000 || evictions() < 3) && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(residentBytes()).isEqualTo(800);
+        assertThat(evictions()).isEqualTo(3);
+    }
+
+    private void givenImage(String key, int size) throws IOException {
+        when(imageStore.stat(key)).thenReturn(Optional.of(new BlobMetadata(size, 0)));
+        when(imageStore.open(key, 0)).thenAnswer(invocation ->
+                new ByteArrayInputStream(new byte[size]));
+    }
+
+    private double residentBytes() {
+        return meterRegistry.get("product.images.cache.resident-bytes").gauge().value();
+    }
+
+    private double evictions() {
+        return meterRegistry.get("cache.evictions").tag("cache", "product-images")
+                .functionCounter().count();
+    }
+
+    private double gets(String result) {
+        return meterRegistry.get("cache.gets").tag("cache", "product-images")
+                .tag("result", result).functionCounter().count();
+    }
+}
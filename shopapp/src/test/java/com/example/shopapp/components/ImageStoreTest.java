@@ -0,0 +1,175 @@
+package com.example.shopapp.components;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.example.shopapp.storage.InMemoryBlobStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.unit.DataSize;
+
+// Reference counting of the content-addressed images, on H2 and the in-memory BlobStore
+class ImageStoreTest {
+
+    private static final byte[] PHOTO = "the bytes of a photo".getBytes(StandardCharsets.UTF_8);
+
+    private final DriverManagerDataSource dataSource = new DriverManagerDataSource(
+            "jdbc:h2:mem:image-store;MODE=MySQL;DB_CLOSE_DELAY=-1", "sa", "");
+    private final JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+    private final DataSourceTransactionManager transactionManager =
+            new DataSourceTransactionManager(dataSource);
+    private final InMemoryBlobStore blobStore = new InMemoryBlobStore();
+    private final ImageStore imageStore = new ImageStore(jdbcTemplate, blobStore,
+            new ImageByteCache(DataSize.ofMegabytes(1), DataSize.ofKilobytes(64),
+                    new SimpleMeterRegistry()),
+            transactionManager, Duration.ofMinutes(5));
+
+    @BeforeEach
+    void createTable() {
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS image_blobs ("
+                + "blob_key VARCHAR(80) PRIMARY KEY, size BIGINT NOT NULL, "
+                + "ref_count INT NOT NULL DEFAULT 0, "
+                + "created_at DATETIME DEFAULT CURRENT_TIMESTAMP, "
+                + "deleting_since DATETIME NULL)");
+        jdbcTemplate.update("DELETE FROM image_blobs");
+    }
+
+    @Test
+    void identicalUploadsShareAFile() throws IOException {
+        String first = store("photo.jpg");
+        String second = store("copy.JPEG");
+
+        assertThat(second).isEqualTo(first);
+        assertThat(refCount(first)).isEqualTo(2);
+        assertThat(blobStore.list("")).hasSize(1);
+    }
+
+    @Test
+    void theFileIsKeptWhileAReferenceRemains() throws IOException {
+        String key = store("photo.jpg");
+        store("photo.jpg");
+
+        imageStore.release(key);
+
+        assertThat(refCount(key)).isEqualTo(1);
+        assertThat(imageStore.stat(key)).isPresent();
+    }
+
+    @Test
+    void theLastReleaseDeletesTheFileAndItsVariantsAfterTheCommit() throws IOException {
+        String key = store("photo.jpg");
+        store("photo.jpg");
+        String variantKey = ImageStore.variantKey(key, 320, "jpg");
+        imageStore.put(variantKey, PHOTO);
+        // same bytes under another extension: another row, other variants
+        String png = store("photo.png");
+        String pngVariantKey = ImageStore.variantKey(png, 320, "jpg");
+        imageStore.put(pngVariantKey, PHOTO);
+
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            imageStore.release(key);
+            imageStore.release(key);
+            // the caller's transaction may still roll back
+            assertThat(blobStore.list("")).hasSize(4);
+        });
+
+        assertThat(rows(key)).isEmpty();
+        assertThat(blobStore.list("")).hasSize(2);
+        assertThat(imageStore.stat(png)).isPresent();
+        assertThat(imageStore.stat(pngVariantKey)).isPresent();
+    }
+
+    @Test
+    void aRolledBackReleaseKeepsTheReference() throws IOException {
+        String key = store("photo.jpg");
+
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            imageStore.release(key);
+            status.setRollbackOnly();
+        });
+
+        assertThat(refCount(key)).isEqualTo(1);
+        assertThat(imageStore.stat(key)).isPresent();
+    }
+
+    @Test
+    void theOrphanSweepSparesReferencedFiles() throws IOException {
+        String referenced = store("photo.jpg");
+        // a node stopped between the last release and the deletion
+        String orphan = store("photo.png");
+        jdbcTemplate.update("UPDATE image_blobs SET ref_count = 0 WHERE blob_key = ?", orphan);
+
+        imageStore.deleteOrphans();
+
+        assertThat(imageStore.stat(referenced)).isPresent();
+        assertThat(refCount(referenced)).isEqualTo(1);
+        assertThat(imageStore.stat(orphan)).isEmpty();
+        assertThat(rows(orphan)).isEmpty();
+    }
+
+    @Test
+    void aStoreWaitsForTheDeletionOfTheSameBytes() throws Exception {
+        String key = store("photo.jpg");
+        // another node claimed the deletion and is deleting the file
+        jdbcTemplate.update("UPDATE image_blobs SET ref_count = 0, deleting_since = ? "
+                + "WHERE blob_key = ?", LocalDateTime.now(), key);
+
+        CompletableFuture<String> upload = CompletableFuture.supplyAsync(() -> {
+            try {
+                return store("photo.jpg");
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        Thread.sleep(200);
+        assertThat(upload).isNotDone();
+        imageStore.delete(key);
+        jdbcTemplate.update("DELETE FROM image_blobs WHERE blob_key = ?", key);
+
+        assertThat(upload.get(10, TimeUnit.SECONDS)).isEqualTo(key);
+        // stored again after the deletion
+        assertThat(imageStore.stat(key)).isPresent();
+        assertThat(refCount(key)).isEqualTo(1);
+    }
+
+    @Test
+    void anAbandonedDeletionIsTakenOver() throws IOException {
+        String key = store("photo.jpg");
+        jdbcTemplate.update("UPDATE image_blobs SET ref_count = 0, deleting_since = ? "
+                + "WHERE blob_key = ?", LocalDateTime.now().minusMinutes(5), key);
+
+        assertThat(store("photo.jpg")).isEqualTo(key);
+
+        assertThat(refCount(key)).isEqualTo(1);
+        assertThat(rows(key).get(0)).isNull();
+        assertThat(imageStore.stat(key)).isPresent();
+    }
+
+    private String store(String filename) throws IOException {
+        return imageStore.store(new ByteArrayInputStream(PHOTO), filename);
+    }
+
+    private int refCount(String key) {
+        return jdbcTemplate.queryForObject("SELECT ref_count FROM image_blobs WHERE blob_key = ?",
+                Integer.class, key);
+    }
+
+    // deleting_since of the row of the key, empty without row
+    private List<LocalDateTime> rows(String key) {
+        return jdbcTemplate.queryForList(
+                "SELECT deleting_since FROM image_blobs WHERE blob_key = ?", LocalDateTime.class,
+                key);
+    }
+}
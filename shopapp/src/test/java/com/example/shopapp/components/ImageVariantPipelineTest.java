@@ -0,0 +1,207 @@
+package com.example.shopapp.components;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.example.shopapp.models.ProductImage;
+import com.example.shopapp.models.ProductImageVariant;
+import com.example.shopapp.repositories.ProductImageRepository;
+import com.example.shopapp.repositories.ProductImageVariantRepository;
+import com.example.shopapp.services.ProductService;
+import com.example.shopapp.storage.InMemoryBlobStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.util.unit.DataSize;
+
+// Variants of the uploaded images, on H2 and the in-memory BlobStore, with mocked repositories
+class ImageVariantPipelineTest {
+
+    private static final long PRODUCT_ID = 1L;
+    private static final long TIMEOUT_MILLIS = 10_000;
+
+    private final DriverManagerDataSource dataSource = new DriverManagerDataSource(
+            "jdbc:h2:mem:image-variants;MODE=MySQL;DB_CLOSE_DELAY=-1", "sa", "");
+    private final JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+    private final InMemoryBlobStore blobStore = new InMemoryBlobStore();
+    private final ImageStore imageStore = new ImageStore(jdbcTemplate, blobStore,
+            new ImageByteCache(DataSize.ofMegabytes(1), DataSize.ofKilobytes(64),
+                    new SimpleMeterRegistry()),
+            new DataSourceTransactionManager(dataSource), Duration.ofMinutes(5));
+    private final ProductService productService = mock(ProductService.class);
+    private final ProductImageRepository productImageRepository =
+            mock(ProductImageRepository.class);
+    private final ProductImageVariantRepository productImageVariantRepository =
+            mock(ProductImageVariantRepository.class);
+    private final ConcurrentLinkedQueue<ProductImageVariant> savedVariants =
+            new ConcurrentLinkedQueue<>();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private ImageVariantPipeline pipeline;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS image_blobs ("
+                + "blob_key VARCHAR(80) PRIMARY KEY, size BIGINT NOT NULL, "
+                + "ref_count INT NOT NULL DEFAULT 0, "
+                + "created_at DATETIME DEFAULT CURRENT_TIMESTAMP, "
+                + "deleting_since DATETIME NULL)");
+        jdbcTemplate.update("DELETE FROM image_blobs");
+        when(productImageRepository.getReferenceById(anyLong())).thenAnswer(invocation ->
+                ProductImage.builder().id(invocation.getArgument(0)).build());
+        when(productImageVariantRepository.saveAll(any())).thenAnswer(invocation -> {
+            Iterable<ProductImageVariant> variants = invocation.getArgument(0);
+            variants.forEach(savedVariants::add);
+            return variants;
+        });
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (pipeline != null) {
+            pipeline.shutdown();
+        }
+    }
+
+    @Test
+    void resizesToEachWidthAsJpeg() throws IOException {
+        pipeline = pipeline(2, 10);
+        // with an alpha channel, which JPEG does not have
+        ProductImage image = upload(10L, 2000, 1000, BufferedImage.TYPE_INT_ARGB);
+
+        pipeline.submit(PRODUCT_ID, List.of(image));
+
+        String thumbnail = ImageStore.variantKey(image.getImageUrl(), 512, "jpg");
+        verify(productService, timeout(TIMEOUT_MILLIS)).setDefaultThumbnail(PRODUCT_ID, thumbnail);
+        assertThat(savedVariants).extracting(ProductImageVariant::getWidth)
+                .containsExactly(128, 512, 1024);
+        for (ProductImageVariant variant : savedVariants) {
+            assertThat(variant.getProductImage().getId()).isEqualTo(10L);
+            assertThat(variant.getImageUrl()).isEqualTo(ImageStore.variantKey(
+                    image.getImageUrl(), variant.getWidth(), "jpg"));
+            try (InputStream inputStream = imageStore.open(variant.getImageUrl(), 0)) {
+                byte[] content = inputStream.readAllBytes();
+                assertThat(formatName(content)).isEqualToIgnoringCase("jpeg");
+                BufferedImage resized = ImageIO.read(new ByteArrayInputStream(content));
+                // the aspect ratio is kept
+                assertThat(resized.getWidth()).isEqualTo(variant.getWidth());
+                assertThat(resized.getHeight()).isEqualTo(variant.getWidth() / 2);
+            }
+        }
+    }
+
+    @Test
+    void neverUpscales() throws IOException {
+        pipeline = pipeline(2, 10);
+        ProductImage medium = upload(10L, 600, 300, BufferedImage.TYPE_INT_RGB);
+        ProductImage small = upload(11L, 100, 50, BufferedImage.TYPE_INT_RGB);
+
+        pipeline.submit(PRODUCT_ID, List.of(medium));
+        verify(productService, timeout(TIMEOUT_MILLIS)).setDefaultThumbnail(PRODUCT_ID,
+                ImageStore.variantKey(medium.getImageUrl(), 512, "jpg"));
+        pipeline.submit(PRODUCT_ID, List.of(small));
+        // narrower than every width: the original is the thumbnail
+        verify(productService, timeout(TIMEOUT_MILLIS)).setDefaultThumbnail(PRODUCT_ID,
+                small.getImageUrl());
+
+        assertThat(savedVariants).extracting(ProductImageVariant::getWidth)
+                .containsExactly(128, 512);
+        assertThat(blobStore.list("")).hasSize(4);
+    }
+
+    @Test
+    void aFullQueueLeavesTheImageWithoutVariants() throws Exception {
+        pipeline = pipeline(1, 1);
+        CountDownLatch workerBusy = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(productImageRepository.getReferenceById(10L)).thenAnswer(invocation -> {
+            workerBusy.countDown();
+            release.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            return ProductImage.builder().id(10L).build();
+        });
+        ProductImage running = upload(10L, 400, 200, BufferedImage.TYPE_INT_RGB);
+        ProductImage queued = upload(11L, 401, 200, BufferedImage.TYPE_INT_RGB);
+        ProductImage rejected = upload(12L, 402, 200, BufferedImage.TYPE_INT_RGB);
+
+        pipeline.submit(PRODUCT_ID, List.of(running));
+        assertThat(workerBusy.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)).isTrue();
+        // one image waits in the queue, the next one does not fit
+        pipeline.submit(PRODUCT_ID, List.of(queued, rejected));
+        assertThat(meterRegistry.get("product.images.variants.rejected").counter().count())
+                .isEqualTo(1);
+        assertThat(meterRegistry.get("product.images.variants.queue").gauge().value())
+                .isEqualTo(1);
+        release.countDown();
+
+        verify(productService, timeout(TIMEOUT_MILLIS)).setDefaultThumbnail(PRODUCT_ID,
+                ImageStore.variantKey(queued.getImageUrl(), 128, "jpg"));
+        verify(productService).setDefaultThumbnail(PRODUCT_ID,
+                ImageStore.variantKey(running.getImageUrl(), 128, "jpg"));
+        verify(productImageRepository, never()).getReferenceById(12L);
+        verify(productService, never()).setDefaultThumbnail(eq(PRODUCT_ID),
+                eq(rejected.getImageUrl()));
+        assertThat(savedVariants).extracting(variant -> variant.getProductImage().getId())
+                .containsExactlyInAnyOrder(10L, 11L);
+        for (int width : List.of(128, 512, 1024)) {
+            assertThat(imageStore.stat(ImageStore.variantKey(rejected.getImageUrl(), width,
+                    "jpg"))).isEmpty();
+        }
+    }
+
+    private ImageVariantPipeline pipeline(int workers, int queueCapacity) {
+        return new ImageVariantPipeline(productService, productImageRepository,
+                productImageVariantRepository, imageStore, List.of(1024, 128, 512), 512,
+                workers, queueCapacity, meterRegistry);
+    }
+
+    // a PNG of the given size, stored as an upload would be
+    private ProductImage upload(long id, int width, int height, int type) throws IOException {
+        BufferedImage image = new BufferedImage(width, height, type);
+        Graphics2D graphics = image.createGraphics();
+        try {
+            graphics.setColor(Color.ORANGE);
+            graphics.fillRect(0, 0, width / 2, height);
+        } finally {
+            graphics.dispose();
+        }
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", outputStream);
+        String key = imageStore.store(new ByteArrayInputStream(outputStream.toByteArray()),
+                "photo.png");
+        return ProductImage.builder().id(id).imageUrl(key).build();
+    }
+
+    private static String formatName(byte[] content) throws IOException {
+        try (ImageInputStream inputStream = ImageIO.createImageInputStream(
+                new ByteArrayInputStream(content))) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(inputStream);
+            return readers.hasNext() ? readers.next().getFormatName() : null;
+        }
+    }
+}
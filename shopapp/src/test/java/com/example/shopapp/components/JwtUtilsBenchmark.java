@@ -0,0 +1,76 @@
+package com.example.shopapp.components;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.io.Decoders;
+import io.jsonwebtoken.security.Keys;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.util.Date;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+// Cost per request of the token verification, not part of the regular build:
+// mvn test -Dtest=JwtUtilsBenchmark -Dbenchmark=true
+// The previous JwtTokenFilter rebuilt the key and the parser for each of its three parses
+// (extractPhoneNumber, then validateToken: extractPhoneNumber and isTokenExpired).
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class JwtUtilsBenchmark {
+
+    private static final int ITERATIONS = 100_000;
+    // distinct clients sending their token again and again
+    private static final int TOKENS = 100;
+
+    @Test
+    void compareWithThePreviousFilter() throws Exception {
+        JwtUtils cached = JwtUtilsTest.jwtUtils(JwtUtilsTest.SECRET, 3_600_000);
+        // without cache entries every verification parses the token
+        JwtUtils uncached = new JwtUtils(3_600_000, JwtUtilsTest.SECRET, 0,
+                Duration.ofMinutes(5), new SimpleMeterRegistry());
+        String[] tokens = new String[TOKENS];
+        for (int i = 0; i < TOKENS; ++i) {
+            tokens[i] = cached.generateToken(JwtUtilsTest.user()).token();
+        }
+        // twice, the first round warms up
+        for (int round = 0; round < 2; ++round) {
+            long start = System.nanoTime();
+            int valid = 0;
+            for (int i = 0; i < ITERATIONS; ++i) {
+                String token = tokens[i % TOKENS];
+                String phoneNumber = extractAllClaims(token).getSubject();
+                if (phoneNumber.equals(extractAllClaims(token).getSubject())
+                        && !extractAllClaims(token).getExpiration().before(new Date())) {
+                    ++valid;
+                }
+            }
+            long previousNanos = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (int i = 0; i < ITERATIONS; ++i) {
+                if (uncached.verify(tokens[i % TOKENS]).phoneNumber() != null) {
+                    ++valid;
+                }
+            }
+            long uncachedNanos = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (int i = 0; i < ITERATIONS; ++i) {
+                if (cached.verify(tokens[i % TOKENS]).phoneNumber() != null) {
+                    ++valid;
+                }
+            }
+            long cachedNanos = System.nanoTime() - start;
+            System.out.printf("previous filter: %.2f us/request, one parse: %.2f us/request, "
+                            + "cached: %.2f us/request (%d valid)%n",
+                    previousNanos / 1e3 / ITERATIONS, uncachedNanos / 1e3 / ITERATIONS,
+                    cachedNanos / 1e3 / ITERATIONS, valid);
+        }
+    }
+
+    // JwtUtils.extractAllClaims before the key and the parser were built once
+    private static Claims extractAllClaims(String token) {
+        return Jwts.parser()
+                .verifyWith(Keys.hmacShaKeyFor(Decoders.BASE64.decode(JwtUtilsTest.SECRET)))
+                .build()
+                .parseSignedClaims(token)
+                .getPayload();
+    }
+}
@@ -0,0 +1,75 @@
+package com.example.shopapp.components;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.example.shopapp.components.JwtUtils.IssuedToken;
+import com.example.shopapp.components.JwtUtils.VerifiedToken;
+import com.example.shopapp.models.Role;
+import com.example.shopapp.models.User;
+import io.jsonwebtoken.ExpiredJwtException;
+import io.jsonwebtoken.JwtException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.util.Base64;
+import org.junit.jupiter.api.Test;
+
+class JwtUtilsTest {
+
+    static final String SECRET = Base64.getEncoder()
+            .encodeToString("a secret of at least 256 bits for HS256".getBytes());
+
+    private final JwtUtils jwtUtils = jwtUtils(SECRET, 60_000);
+
+    @Test
+    void verifiesTheTokensItIssues() throws Exception {
+        IssuedToken issuedToken = jwtUtils.generateToken(user());
+
+        VerifiedToken verifiedToken = jwtUtils.verify(issuedToken.token());
+
+        assertThat(verifiedToken.phoneNumber()).isEqualTo("0912345678");
+        assertThat(verifiedToken.tokenId()).isEqualTo(issuedToken.tokenId());
+        assertThat(verifiedToken.claims().get(JwtUtils.ROLE_CLAIM)).isEqualTo(Role.USER);
+        assertThat(jwtUtils.extractPhoneNumber(issuedToken.token())).isEqualTo("0912345678");
+    }
+
+    @Test
+    void aTokenIsVerifiedOnce() throws Exception {
+        String token = jwtUtils.generateToken(user()).token();
+
+        // the cached verification is returned as is
+        assertThat(jwtUtils.verify(token)).isSameAs(jwtUtils.verify(token));
+    }
+
+    @Test
+    void rejectsForgedTamperedAndExpiredTokens() throws Exception {
+        String forged = jwtUtils(Base64.getEncoder().encodeToString(
+                "another secret of at least 256 bits".getBytes()), 60_000)
+                .generateToken(user()).token();
+        String token = jwtUtils.generateToken(user()).token();
+        String[] parts = token.split("\\.");
+        String tampered = parts[0] + "." + Base64.getUrlEncoder().withoutPadding()
+                .encodeToString("{\"sub\":\"0900000000\",\"exp\":4102444800}".getBytes())
+                + "." + parts[2];
+        String expired = jwtUtils(SECRET, -60_000).generateToken(user()).token();
+
+        assertThatThrownBy(() -> jwtUtils.verify(forged)).isInstanceOf(JwtException.class);
+        assertThatThrownBy(() -> jwtUtils.verify(tampered)).isInstanceOf(JwtException.class);
+        assertThatThrownBy(() -> jwtUtils.verify(expired))
+                .isInstanceOf(ExpiredJwtException.class);
+        assertThatThrownBy(() -> jwtUtils.verify("not.a.token"))
+                .isInstanceOf(JwtException.class);
+    }
+
+    static JwtUtils jwtUtils(String secret, long expiration) {
+        return new JwtUtils(expiration, secret, 1000, Duration.ofMinutes(5),
+                new SimpleMeterRegistry());
+    }
+
+    static User user() {
+        return User.builder()
+                .phoneNumber("0912345678")
+                .role(Role.builder().id(1L).name(Role.USER).build())
+                .build();
+    }
+}
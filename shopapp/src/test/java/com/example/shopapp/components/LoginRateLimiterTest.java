@@ -0,0 +1,78 @@
+package com.example.shopapp.components;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import org.junit.jupiter.api.Test;
+
+class LoginRateLimiterTest {
+
+    // 60 requests per minute: one per second per IP, bursts of 3
+    // 6 requests per minute: one per 10 seconds per phone number, bursts of 2
+    private static final long SECOND = Duration.ofSeconds(1).toNanos();
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void allowsABurstThenTheSustainedRate() {
+        LoginRateLimiter limiter = limiter(100);
+        long now = 0;
+
+        for (int i = 0; i < 3; ++i) {
+            assertThat(limiter.tryAcquire("10.0.0.1", null, now)).isZero();
+        }
+        assertThat(limiter.tryAcquire("10.0.0.1", null, now)).isEqualTo(Duration.ofSeconds(1));
+        assertThat(limiter.tryAcquire("10.0.0.1", null, now + SECOND)).isZero();
+        assertThat(limiter.tryAcquire("10.0.0.1", null, now + SECOND)).isPositive();
+        // other IPs have their own bucket
+        assertThat(limiter.tryAcquire("10.0.0.2", null, now)).isZero();
+        assertThat(meterRegistry.counter("login.rate-limit.rejected", "key", "ip").count())
+                .isEqualTo(2);
+    }
+
+    @Test
+    void limitsAPhoneNumberAcrossIps() {
+        LoginRateLimiter limiter = limiter(100);
+
+        assertThat(limiter.tryAcquire("10.0.0.1", "0912345678", 0)).isZero();
+        assertThat(limiter.tryAcquire("10.0.0.2", "0912345678", 0)).isZero();
+        assertThat(limiter.tryAcquire("10.0.0.3", "0912345678", 0))
+                .isEqualTo(Duration.ofSeconds(10));
+        assertThat(limiter.tryAcquire("10.0.0.3", "0987654321", 0)).isZero();
+    }
+
+    @Test
+    void aRejectedPhoneNumberDoesNotConsumeTheIpBucket() {
+        LoginRateLimiter limiter = limiter(100);
+        assertThat(limiter.tryAcquire("10.0.0.9", "0912345678", 0)).isZero();
+        assertThat(limiter.tryAcquire("10.0.0.9", "0912345678", 0)).isZero();
+
+        // the phone number is limited, however often the client retries it
+        for (int i = 0; i < 5; ++i) {
+            assertThat(limiter.tryAcquire("10.0.0.9", "0912345678", 0)).isPositive();
+        }
+        // the IP used 2 of its burst of 3, the rejected retries cost nothing
+        assertThat(limiter.tryAcquire("10.0.0.9", "0987654321", 0)).isZero();
+        assertThat(limiter.tryAcquire("10.0.0.9", null, 0)).isPositive();
+        assertThat(meterRegistry.counter("login.rate-limit.rejected", "key", "ip").count())
+                .isEqualTo(1);
+    }
+
+    @Test
+    void aFloodOfNewKeysNeverRejectsOtherKeys() {
+        LoginRateLimiter limiter = limiter(10);
+
+        // every key of the flood is new and active, far more than max-keys
+        for (int i = 0; i < 1000; ++i) {
+            assertThat(limiter.tryAcquire("192.168.0." + i, null, 0)).isZero();
+        }
+        assertThat(limiter.tryAcquire("10.0.0.1", null, 0)).isZero();
+        assertThat(meterRegistry.counter("login.rate-limit.rejected", "key", "ip").count())
+                .isZero();
+    }
+
+    private LoginRateLimiter limiter(int maximumKeys) {
+        return new LoginRateLimiter(60, 3, 6, 2, maximumKeys, meterRegistry);
+    }
+}
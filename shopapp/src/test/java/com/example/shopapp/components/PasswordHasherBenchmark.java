@@ -0,0 +1,80 @@
+package com.example.shopapp.components;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Predicate;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+// Login throughput and latency under concurrent load, not part of the regular build:
+// mvn test -Dtest=PasswordHasherBenchmark -Dbenchmark=true
+// CLIENTS request threads log in at the same time with the default BCrypt cost. Previously a
+// login ran BCrypt twice on the request thread (matches, then the AuthenticationManager),
+// now once on the hashing pool, whose full queue rejects logins (503) instead of piling up.
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class PasswordHasherBenchmark {
+
+    private static final int CLIENTS = 32;
+    private static final int LOGINS = 200;
+
+    @Test
+    void compareWithTheDoubleCheckOnRequestThreads() throws Exception {
+        BCryptPasswordEncoder passwordEncoder = new BCryptPasswordEncoder();
+        String hash = passwordEncoder.encode("secret");
+        run("previous, 2 BCrypt on the request thread", password ->
+                passwordEncoder.matches(password, hash)
+                        && passwordEncoder.matches(password, hash));
+        PasswordHasher passwordHasher = new PasswordHasher(passwordEncoder, 0, 64,
+                Duration.ofSeconds(5), new SimpleMeterRegistry());
+        try {
+            run("1 BCrypt on the hashing pool", password ->
+                    passwordHasher.matches(password, hash));
+        } finally {
+            passwordHasher.shutdown();
+        }
+    }
+
+    private static void run(String name, Predicate<String> login) throws Exception {
+        ExecutorService clients = Executors.newFixedThreadPool(CLIENTS);
+        try {
+            List<Future<Long>> latencies = new ArrayList<>(LOGINS);
+            long start = System.nanoTime();
+            for (int i = 0; i < LOGINS; ++i) {
+                latencies.add(clients.submit(() -> {
+                    long loginStart = System.nanoTime();
+                    try {
+                        login.test("secret");
+                    } catch (RejectedExecutionException e) {
+                        // 503, the client retries later
+                        return -1L;
+                    }
+                    return System.nanoTime() - loginStart;
+                }));
+            }
+            long[] served = new long[LOGINS];
+            int count = 0;
+            for (Future<Long> latency : latencies) {
+                long nanos = latency.get();
+                if (nanos >= 0) {
+                    served[count++] = nanos;
+                }
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            long[] sorted = Arrays.copyOf(served, count);
+            Arrays.sort(sorted);
+            System.out.printf("%s: %.1f logins/s, p50 %d ms, p99 %d ms, %d rejected%n", name,
+                    count / seconds, sorted[count / 2] / 1_000_000,
+                    sorted[count * 99 / 100] / 1_000_000, LOGINS - count);
+        } finally {
+            clients.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.example.shopapp.components;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+class PasswordHasherTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final ExecutorService callers = Executors.newCachedThreadPool();
+    private PasswordHasher passwordHasher;
+
+    @AfterEach
+    void shutdown() {
+        callers.shutdownNow();
+        if (passwordHasher != null) {
+            passwordHasher.shutdown();
+        }
+    }
+
+    @Test
+    void verifiesPasswords() {
+        // the lowest BCrypt cost, the test is about the pool
+        PasswordEncoder passwordEncoder = spy(new BCryptPasswordEncoder(4));
+        passwordHasher = hasher(passwordEncoder, 1, 1, Duration.ofSeconds(10));
+        String hash = passwordHasher.encode("secret");
+
+        assertThat(passwordHasher.matches("secret", hash)).isTrue();
+        assertThat(passwordHasher.matches("wrong", hash)).isFalse();
+        // an unknown user costs a BCrypt check as well
+        assertThat(passwordHasher.matches("secret", null)).isFalse();
+        verify(passwordEncoder, times(3)).matches(anyString(), anyString());
+    }
+
+    @Test
+    void rejectsRightAwayWhenThePoolAndTheQueueAreFull() throws Exception {
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        PasswordEncoder passwordEncoder = mock(PasswordEncoder.class);
+        when(passwordEncoder.matches(any(), any())).thenAnswer(invocation -> {
+            running.countDown();
+            release.await();
+            return true;
+        });
+        passwordHasher = hasher(passwordEncoder, 1, 1, Duration.ofSeconds(10));
+        // one hash running, one waiting
+        callers.submit(() -> passwordHasher.matches("a", "hash"));
+        running.await();
+        callers.submit(() -> passwordHasher.matches("b", "hash"));
+        while (meterRegistry.get("login.hashing.queue").gauge().value() < 1) {
+            Thread.onSpinWait();
+        }
+
+        long start = System.nanoTime();
+        assertThatThrownBy(() -> passwordHasher.matches("c", "hash"))
+                .isInstanceOf(RejectedExecutionException.class);
+        assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofSeconds(1));
+        assertThat(meterRegistry.get("login.hashing.rejected").counter().count()).isEqualTo(1);
+        release.countDown();
+    }
+
+    @Test
+    void withoutQueueRejectsWhenEveryThreadIsBusy() throws Exception {
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        PasswordEncoder passwordEncoder = mock(PasswordEncoder.class);
+        when(passwordEncoder.matches(any(), any())).thenAnswer(invocation -> {
+            running.countDown();
+            release.await();
+            return true;
+        });
+        passwordHasher = hasher(passwordEncoder, 1, 0, Duration.ofSeconds(10));
+        callers.submit(() -> passwordHasher.matches("a", "hash"));
+        running.await();
+
+        assertThatThrownBy(() -> passwordHasher.matches("b", "hash"))
+                .isInstanceOf(RejectedExecutionException.class);
+        assertThat(meterRegistry.get("login.hashing.queue").gauge().value()).isZero();
+        release.countDown();
+    }
+
+    @Test
+    void rejectsANegativeQueueCapacity() {
+        assertThatThrownBy(() -> hasher(mock(PasswordEncoder.class), 1, -1, Duration.ofSeconds(1)))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("login.hashing-queue-capacity");
+    }
+
+    @Test
+    void rejectsAHashTakingLongerThanTheTimeout() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        PasswordEncoder passwordEncoder = mock(PasswordEncoder.class);
+        when(passwordEncoder.matches(any(), any())).thenAnswer(invocation -> {
+            release.await();
+            return true;
+        });
+        passwordHasher = hasher(passwordEncoder, 1, 1, Duration.ofMillis(50));
+
+        assertThatThrownBy(() -> passwordHasher.matches("a", "hash"))
+                .isInstanceOf(RejectedExecutionException.class)
+                .hasMessage("Password hashing timed out");
+        release.countDown();
+    }
+
+    private PasswordHasher hasher(PasswordEncoder passwordEncoder, int threads,
+            int queueCapacity, Duration timeout) {
+        return new PasswordHasher(passwordEncoder, threads, queueCapacity, timeout,
+                meterRegistry);
+    }
+}
@@ -0,0 +1,72 @@
+package com.example.shopapp.components;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.example.shopapp.responses.ProductResponse;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.Test;
+
+class ProductCacheTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final ProductCache productCache = new ProductCache(100, Duration.ofMinutes(10),
+            meterRegistry);
+    private final AtomicInteger loads = new AtomicInteger();
+
+    @Test
+    void loadsAProductOnceUntilItIsInvalidated() {
+        assertThat(productCache.get(1L, this::load)).contains(product(1L));
+        assertThat(productCache.get(1L, this::load)).contains(product(1L));
+        assertThat(loads).hasValue(1);
+
+        productCache.invalidate(1L);
+
+        assertThat(productCache.get(1L, this::load)).contains(product(1L));
+        assertThat(loads).hasValue(2);
+        assertThat(meterRegistry.get("cache.gets").tag("cache", "products")
+                .tag("result", "hit").functionCounter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void missingProductsAreNotCached() {
+        assertThat(productCache.get(1L, id -> null)).isEmpty();
+
+        // created in the meantime
+        assertThat(productCache.get(1L, this::load)).contains(product(1L));
+    }
+
+    @Test
+    void getAllLoadsOnlyTheMissesTogether() {
+        productCache.get(1L, this::load);
+        AtomicInteger batches = new AtomicInteger();
+
+        // product 3 does not exist
+        Map<Long, ProductResponse> products = productCache.getAll(List.of(1L, 2L, 3L),
+                ids -> {
+                    batches.incrementAndGet();
+                    assertThat(Set.copyOf(ids)).isEqualTo(Set.of(2L, 3L));
+                    return ids.stream()
+                            .filter(id -> id != 3L)
+                            .collect(Collectors.toMap(Function.identity(), this::load));
+                });
+
+        assertThat(products).containsOnlyKeys(1L, 2L);
+        assertThat(batches).hasValue(1);
+    }
+
+    private ProductResponse load(Long id) {
+        loads.incrementAndGet();
+        return product(id);
+    }
+
+    private static ProductResponse product(Long id) {
+        return ProductResponse.builder().id(id).name("Product " + id).price(10f).build();
+    }
+}
@@ -0,0 +1,69 @@
+package com.example.shopapp.components;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.example.shopapp.repositories.ProductRepository;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class ProductCountersTest {
+
+    private final ProductRepository productRepository = mock(ProductRepository.class);
+    private final ProductCounters productCounters = new ProductCounters(productRepository);
+
+    @Test
+    void productsWithoutCategoryCountInTheTotalOnly() {
+        givenCounts(new Object[] {1L, 2L}, new Object[] {null, 3L});
+        productCounters.reconcile();
+
+        productCounters.increment(null);
+        productCounters.move(null, 1L);
+        productCounters.decrement(null);
+
+        assertThat(productCounters.count()).isEqualTo(5);
+        assertThat(productCounters.countByCategory(1L)).isEqualTo(3);
+        assertThat(productCounters.countByCategory(null)).isZero();
+    }
+
+    @Test
+    void reconcileKeepsTheWritesMadeWhileItRuns() {
+        givenCounts(new Object[] {1L, 2L}, new Object[] {2L, 1L});
+        productCounters.reconcile();
+        // a product added to category 1 and one removed from category 2 while the database
+        // is read, the query does not see them yet
+        when(productRepository.countGroupByCategory()).thenAnswer(invocation -> {
+            productCounters.increment(1L);
+            productCounters.decrement(2L);
+            List<Object[]> rows = new ArrayList<>();
+            rows.add(new Object[] {1L, 2L});
+            rows.add(new Object[] {2L, 1L});
+            return rows;
+        });
+
+        productCounters.reconcile();
+
+        assertThat(productCounters.count()).isEqualTo(3);
+        assertThat(productCounters.countByCategory(1L)).isEqualTo(3);
+        assertThat(productCounters.countByCategory(2L)).isZero();
+    }
+
+    @Test
+    void reconcileResetsCategoriesMissingFromTheDatabase() {
+        givenCounts(new Object[] {1L, 2L});
+        productCounters.reconcile();
+        productCounters.increment(7L);
+
+        givenCounts(new Object[] {1L, 2L});
+        productCounters.reconcile();
+
+        assertThat(productCounters.count()).isEqualTo(2);
+        assertThat(productCounters.countByCategory(7L)).isZero();
+    }
+
+    private void givenCounts(Object[]... rows) {
+        when(productRepository.countGroupByCategory()).thenReturn(List.of(rows));
+    }
+}
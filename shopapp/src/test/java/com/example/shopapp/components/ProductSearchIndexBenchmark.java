@@ -0,0 +1,122 @@
+package com.example.shopapp.components;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.example.shopapp.repositories.ProductRepository;
+import com.example.shopapp.responses.ProductResponse;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.data.domain.Pageable;
+
+// Search latency over 1M synthetic products, not part of the regular build:
+// mvn test -Dtest=ProductSearchIndexBenchmark -Dbenchmark=true
+// Names and descriptions draw words from a Zipf-distributed vocabulary, queries mix frequent
+// and rare terms with and without filters. Prints the build time and latency percentiles.
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class ProductSearchIndexBenchmark {
+
+    private static final int PRODUCTS = 1_000_000;
+    private static final int VOCABULARY = 50_000;
+    private static final int QUERIES = 5_000;
+
+    @Test
+    void searchOneMillionProducts() {
+        String[] words = new String[VOCABULARY];
+        for (int i = 0; i < VOCABULARY; ++i) {
+            words[i] = "w" + Integer.toString(i, 36);
+        }
+        double[] cumulative = zipf(VOCABULARY);
+        ProductRepository productRepository = mock(ProductRepository.class);
+        when(productRepository.findProductResponsesAfterId(anyLong(), any(Pageable.class)))
+                .thenAnswer(invocation -> {
+                    long after = invocation.getArgument(0);
+                    int size = ((Pageable) invocation.getArgument(1)).getPageSize();
+                    List<ProductResponse> page = new ArrayList<>(size);
+                    for (long id = after + 1; id <= Math.min(PRODUCTS, after + size); ++id) {
+                        // the same product for the same id
+                        Random random = new Random(id);
+                        page.add(ProductResponse.builder()
+                                .id(id)
+                                .name(text(random, words, cumulative, 3))
+                                .description(text(random, words, cumulative, 20))
+                                .categoryId(1L + random.nextInt(20))
+                                .price(1f + random.nextInt(2000))
+                                .build());
+                    }
+                    return page;
+                });
+        ProductSearchIndex index = new ProductSearchIndex(productRepository);
+        long buildStart = System.nanoTime();
+        index.rebuild();
+        System.out.printf("built %d products in %d ms, heap used %d MB%n", index.size(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - buildStart), usedMegabytes());
+
+        Random random = new Random(1);
+        String[] queries = new String[QUERIES];
+        for (int i = 0; i < QUERIES; ++i) {
+            queries[i] = text(random, words, cumulative, 1 + random.nextInt(3));
+        }
+        // warm up
+        for (String query : queries) {
+            index.search(query, null, null, null, 20);
+        }
+        long[] latencies = new long[QUERIES];
+        long[] filteredLatencies = new long[QUERIES];
+        for (int i = 0; i < QUERIES; ++i) {
+            long start = System.nanoTime();
+            index.search(queries[i], null, null, null, 20);
+            latencies[i] = System.nanoTime() - start;
+            start = System.nanoTime();
+            index.search(queries[i], 3L, 100f, 900f, 20);
+            filteredLatencies[i] = System.nanoTime() - start;
+        }
+        print("no filter", latencies);
+        print("category and price", filteredLatencies);
+    }
+
+    private static void print(String name, long[] latencies) {
+        long[] sorted = latencies.clone();
+        Arrays.sort(sorted);
+        System.out.printf("%s: p50 %.3f ms, p99 %.3f ms, max %.3f ms%n", name,
+                sorted[sorted.length / 2] / 1e6, sorted[sorted.length * 99 / 100] / 1e6,
+                sorted[sorted.length - 1] / 1e6);
+    }
+
+    private static String text(Random random, String[] words, double[] cumulative, int length) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < length; ++i) {
+            int word = Arrays.binarySearch(cumulative, random.nextDouble());
+            text.append(words[Math.min(words.length - 1, word < 0 ? -word - 1 : word)])
+                    .append(' ');
+        }
+        return text.toString();
+    }
+
+    // cumulative probabilities of the ranks with an exponent of 1
+    private static double[] zipf(int size) {
+        double[] cumulative = new double[size];
+        double sum = 0;
+        for (int rank = 0; rank < size; ++rank) {
+            sum += 1.0 / (rank + 1);
+            cumulative[rank] = sum;
+        }
+        for (int rank = 0; rank < size; ++rank) {
+            cumulative[rank] /= sum;
+        }
+        return cumulative;
+    }
+
+    private static long usedMegabytes() {
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        return (runtime.totalMemory() - runtime.freeMemory()) >> 20;
+    }
+}
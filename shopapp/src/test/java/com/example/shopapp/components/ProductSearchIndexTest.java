@@ -0,0 +1,162 @@
+package com.example.shopapp.components;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.example.shopapp.models.Category;
+import com.example.shopapp.models.Product;
+import com.example.shopapp.repositories.ProductRepository;
+import com.example.shopapp.responses.ProductResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Pageable;
+
+class ProductSearchIndexTest {
+
+    private ProductRepository productRepository;
+    private ProductSearchIndex index;
+
+    @BeforeEach
+    void createIndex() {
+        productRepository = mock(ProductRepository.class);
+        index = new ProductSearchIndex(productRepository);
+    }
+
+    @Test
+    void matchesInTheNameRankFirst() {
+        index.index(product(1, "Leather case", "A case for the phone", 1, 10f));
+        index.index(product(2, "Phone", "Smart phone", 1, 500f));
+
+        assertThat(index.search("phone", null, null, null, 10)).containsExactly(2L, 1L);
+    }
+
+    @Test
+    void everyTermMustMatch() {
+        index.index(product(1, "Red phone", "", 1, 100f));
+        index.index(product(2, "Blue phone", "", 1, 100f));
+        index.index(product(3, "Red shoes", "", 2, 50f));
+
+        assertThat(index.search("red phone", null, null, null, 10)).containsExactly(1L);
+        assertThat(index.search("red unknown", null, null, null, 10)).isEmpty();
+        // accents and case are ignored
+        assertThat(index.search("RÉD", null, null, null, 10)).containsExactlyInAnyOrder(1L, 3L);
+    }
+
+    @Test
+    void filtersByCategoryAndPrice() {
+        index.index(product(1, "Phone", "", 1, 100f));
+        index.index(product(2, "Phone", "", 1, 300f));
+        index.index(product(3, "Phone", "", 2, 200f));
+
+        assertThat(index.search("phone", 1L, null, null, 10))
+                .containsExactlyInAnyOrder(1L, 2L);
+        assertThat(index.search("phone", null, 150f, 250f, 10)).containsExactly(3L);
+        assertThat(index.search("phone", 1L, 150f, null, 10)).containsExactly(2L);
+    }
+
+    @Test
+    void updatesAndRemovalsAreVisibleInTheBaseAndTheDelta() {
+        List<ProductResponse> products = List.of(
+                productResponse(1, "Phone", "", 1, 100f),
+                productResponse(2, "Tablet", "", 1, 200f));
+        givenDatabase(products);
+        index.rebuild();
+
+        // base documents
+        index.index(product(1, "Laptop", "", 1, 100f));
+        index.remove(2L);
+        // delta documents
+        index.index(product(3, "Phone", "", 1, 100f));
+        index.index(product(3, "Phone case", "", 1, 10f));
+
+        assertThat(index.search("phone", null, null, null, 10)).containsExactly(3L);
+        assertThat(index.search("laptop", null, null, null, 10)).containsExactly(1L);
+        assertThat(index.search("tablet", null, null, null, 10)).isEmpty();
+        assertThat(index.size()).isEqualTo(2);
+
+        index.merge();
+
+        assertThat(index.search("phone", null, null, null, 10)).containsExactly(3L);
+        assertThat(index.search("laptop", null, null, null, 10)).containsExactly(1L);
+        assertThat(index.search("tablet", null, null, null, 10)).isEmpty();
+        assertThat(index.size()).isEqualTo(2);
+    }
+
+    @Test
+    void topResultsDoNotDependOnTheLimit() {
+        // enough documents per term for several blocks, so that blocks are skipped
+        Random random = new Random(42);
+        String[] words = {"phone", "case", "red", "blue", "cheap", "leather", "smart", "new"};
+        List<ProductResponse> products = new ArrayList<>();
+        for (int id = 1; id <= 5000; ++id) {
+            StringBuilder description = new StringBuilder();
+            for (int word = random.nextInt(20); word >= 0; --word) {
+                description.append(words[random.nextInt(words.length)]).append(' ');
+            }
+            products.add(productResponse(id, words[random.nextInt(words.length)],
+                    description.toString(), 1 + random.nextInt(3), 1 + random.nextInt(1000)));
+        }
+        givenDatabase(products);
+        index.rebuild();
+        // some documents in the delta too
+        for (int id = 5001; id <= 5100; ++id) {
+            index.index(product(id, "red phone", "cheap", 1, 10f));
+        }
+
+        for (String query : List.of("phone", "red phone", "cheap leather case", "new")) {
+            List<Long> all = index.search(query, null, null, null, 10_000);
+            assertThat(index.search(query, null, null, null, 10))
+                    .isEqualTo(all.subList(0, Math.min(10, all.size())));
+            assertThat(index.search(query, 2L, null, 500f, 10))
+                    .isEqualTo(index.search(query, 2L, null, 500f, 10_000).stream()
+                            .limit(10).toList());
+        }
+    }
+
+    @Test
+    void gallopFindsTheFirstDocumentNotBeforeTheTarget() {
+        int[] documents = {1, 3, 5, 7, 9, 11, 13, 15, 17};
+
+        assertThat(ProductSearchIndex.gallop(documents, 0, 0)).isEqualTo(0);
+        assertThat(ProductSearchIndex.gallop(documents, 0, 9)).isEqualTo(4);
+        assertThat(ProductSearchIndex.gallop(documents, 0, 10)).isEqualTo(5);
+        assertThat(ProductSearchIndex.gallop(documents, 6, 3)).isEqualTo(6);
+        assertThat(ProductSearchIndex.gallop(documents, 2, 17)).isEqualTo(8);
+        assertThat(ProductSearchIndex.gallop(documents, 2, 18)).isEqualTo(documents.length);
+    }
+
+    // the repository returns the products in id order, by pages
+    private void givenDatabase(List<ProductResponse> products) {
+        when(productRepository.findProductResponsesAfterId(anyLong(), any(Pageable.class)))
+                .thenAnswer(invocation -> {
+                    long after = invocation.getArgument(0);
+                    Pageable pageable = invocation.getArgument(1);
+                    return products.stream()
+                            .filter(product -> product.getId() > after)
+                            .limit(pageable.getPageSize())
+                            .toList();
+                });
+    }
+
+    private static Product product(long id, String name, String description, long categoryId,
+            float price) {
+        return Product.builder()
+                .id(id)
+                .name(name)
+                .description(description)
+                .price(price)
+                .category(Category.builder().id(categoryId).build())
+                .build();
+    }
+
+    private static ProductResponse productResponse(long id, String name, String description,
+            long categoryId, float price) {
+        return ProductResponse.fromProduct(product(id, name, description, categoryId, price));
+    }
+}
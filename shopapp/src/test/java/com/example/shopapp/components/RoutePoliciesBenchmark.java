@@ -0,0 +1,118 @@
+package com.example.shopapp.components;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.data.util.Pair;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.security.web.util.matcher.AntPathRequestMatcher;
+import org.springframework.security.web.util.matcher.RequestMatcher;
+
+// Cost per request of the authorization lookup, not part of the regular build:
+// mvn test -Dtest=RoutePoliciesBenchmark -Dbenchmark=true
+// RoutePolicies against what it replaced: the bypass list of JwtTokenFilter (String.format and
+// a new list per request) followed by the sequential requestMatchers of WebSecurityConfig.
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class RoutePoliciesBenchmark {
+
+    private static final String API_PREFIX = "/api/v1";
+    private static final int ITERATIONS = 2_000_000;
+
+    // a mix of the routes of the catalog and of the orders
+    private static final MockHttpServletRequest[] REQUESTS = {
+            new MockHttpServletRequest("GET", "/api/v1/products"),
+            new MockHttpServletRequest("GET", "/api/v1/products/42"),
+            new MockHttpServletRequest("GET", "/api/v1/products/images/abcd.jpg"),
+            new MockHttpServletRequest("GET", "/api/v1/categories"),
+            new MockHttpServletRequest("POST", "/api/v1/users/login"),
+            new MockHttpServletRequest("POST", "/api/v1/orders"),
+            new MockHttpServletRequest("GET", "/api/v1/orders/user/7"),
+            new MockHttpServletRequest("DELETE", "/api/v1/order_details/3"),
+    };
+
+    @Test
+    void compareWithTheMatcherChain() {
+        RoutePolicies routePolicies = new RoutePolicies(API_PREFIX);
+        List<RequestMatcher> chain = previousChain();
+        // twice, the first round warms up
+        for (int round = 0; round < 2; ++round) {
+            long start = System.nanoTime();
+            int matches = 0;
+            for (int i = 0; i < ITERATIONS; ++i) {
+                MockHttpServletRequest request = REQUESTS[i % REQUESTS.length];
+                if (routePolicies.isPublic(request)) {
+                    ++matches;
+                }
+                if (routePolicies.accessOf(request) != RoutePolicies.Access.AUTHENTICATED) {
+                    ++matches;
+                }
+            }
+            long tableNanos = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (int i = 0; i < ITERATIONS; ++i) {
+                MockHttpServletRequest request = REQUESTS[i % REQUESTS.length];
+                if (isBypassToken(request)) {
+                    ++matches;
+                }
+                for (RequestMatcher matcher : chain) {
+                    if (matcher.matches(request)) {
+                        ++matches;
+                        break;
+                    }
+                }
+            }
+            long chainNanos = System.nanoTime() - start;
+            System.out.printf("route table: %.1f ns/request, matcher chain: %.1f ns/request "
+                            + "(%d matches)%n", (double) tableNanos / ITERATIONS,
+                    (double) chainNanos / ITERATIONS, matches);
+        }
+    }
+
+    // JwtTokenFilter.isBypassToken before RoutePolicies
+    private static boolean isBypassToken(MockHttpServletRequest request) {
+        final List<Pair<String, String>> bypassTokens = Arrays.asList(
+                Pair.of(String.format("%s/users/register", API_PREFIX), "POST"),
+                Pair.of(String.format("%s/users/login", API_PREFIX), "POST"),
+                Pair.of(String.format("%s/products", API_PREFIX), "GET"),
+                Pair.of(String.format("%s/categories", API_PREFIX), "GET")
+        );
+        if (request.getRequestURI().startsWith(String.format("%s/products/images/", API_PREFIX))
+                && (request.getMethod().equals("GET") || request.getMethod().equals("HEAD"))) {
+            return true;
+        }
+        for (Pair<String, String> bypassToken : bypassTokens) {
+            if (request.getRequestURI().equals(bypassToken.getFirst())
+                    && request.getMethod().equals(bypassToken.getSecond())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // the requestMatchers of WebSecurityConfig before RoutePolicies, in order
+    private static List<RequestMatcher> previousChain() {
+        List<RequestMatcher> chain = new ArrayList<>();
+        chain.add(new AntPathRequestMatcher(API_PREFIX + "/users/register"));
+        chain.add(new AntPathRequestMatcher(API_PREFIX + "/users/login"));
+        chain.add(new AntPathRequestMatcher(API_PREFIX + "/categories**", "GET"));
+        for (String method : List.of("POST", "PUT", "DELETE")) {
+            chain.add(new AntPathRequestMatcher(API_PREFIX + "/categories/**", method));
+        }
+        chain.add(new AntPathRequestMatcher(API_PREFIX + "/products/images/**", "GET"));
+        chain.add(new AntPathRequestMatcher(API_PREFIX + "/products/images/**", "HEAD"));
+        chain.add(new AntPathRequestMatcher(API_PREFIX + "/products/export", "GET"));
+        chain.add(new AntPathRequestMatcher(API_PREFIX + "/products**", "GET"));
+        for (String method : List.of("GET", "POST", "PUT", "DELETE")) {
+            chain.add(new AntPathRequestMatcher(API_PREFIX + "/products/**", method));
+        }
+        chain.add(new AntPathRequestMatcher(API_PREFIX + "/orders/export", "GET"));
+        for (String resource : List.of("/orders/**", "/order_details/**")) {
+            for (String method : List.of("GET", "POST", "PUT", "DELETE")) {
+                chain.add(new AntPathRequestMatcher(API_PREFIX + resource, method));
+            }
+        }
+        return chain;
+    }
+}
@@ -0,0 +1,91 @@
+package com.example.shopapp.components;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.example.shopapp.components.RoutePolicies.Access;
+import java.util.Arrays;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.web.access.intercept.RequestAuthorizationContext;
+
+class RoutePoliciesTest {
+
+    private final RoutePolicies routePolicies = new RoutePolicies("/api/v1");
+
+    @Test
+    void literalSegmentsWinOverVariables() {
+        assertThat(access("GET", "/api/v1/products/search")).isEqualTo(Access.PUBLIC);
+        assertThat(access("GET", "/api/v1/products/export")).isEqualTo(Access.ADMIN);
+        assertThat(access("GET", "/api/v1/products/42")).isEqualTo(Access.PUBLIC);
+        assertThat(access("GET", "/api/v1/orders/export")).isEqualTo(Access.ADMIN);
+        assertThat(access("GET", "/api/v1/orders/user/7")).isEqualTo(Access.USER_OR_ADMIN);
+    }
+
+    @Test
+    void theMethodSelectsTheAccess() {
+        assertThat(access("GET", "/api/v1/categories")).isEqualTo(Access.PUBLIC);
+        assertThat(access("POST", "/api/v1/categories")).isEqualTo(Access.ADMIN);
+        assertThat(access("PUT", "/api/v1/products/42")).isEqualTo(Access.ADMIN);
+        assertThat(access("DELETE", "/api/v1/products/images/3")).isEqualTo(Access.ADMIN);
+    }
+
+    @Test
+    void headHasTheAccessOfGet() {
+        assertThat(access("HEAD", "/api/v1/products/images/abcd.jpg")).isEqualTo(Access.PUBLIC);
+        assertThat(access("HEAD", "/api/v1/products/export")).isEqualTo(Access.ADMIN);
+        assertThat(access("HEAD", "/api/v1/orders/1")).isEqualTo(Access.USER_OR_ADMIN);
+    }
+
+    @Test
+    void unknownRoutesAndMethodsRequireAuthentication() {
+        assertThat(access("GET", "/api/v1/unknown")).isEqualTo(Access.AUTHENTICATED);
+        assertThat(access("GET", "/api/v1/products/1/2")).isEqualTo(Access.AUTHENTICATED);
+        assertThat(access("GET", "/products")).isEqualTo(Access.AUTHENTICATED);
+        assertThat(access("TRACE", "/api/v1/products")).isEqualTo(Access.AUTHENTICATED);
+        assertThat(access("PATCH", "/api/v1/products/1")).isEqualTo(Access.AUTHENTICATED);
+    }
+
+    @Test
+    void emptySegmentsAreSkipped() {
+        assertThat(access("GET", "/api/v1//products/")).isEqualTo(Access.PUBLIC);
+        assertThat(access("POST", "/api/v1/users/login/")).isEqualTo(Access.PUBLIC);
+    }
+
+    @Test
+    void checkGrantsTheRolesOfTheRoute() {
+        Authentication anonymous = new AnonymousAuthenticationToken("key", "anonymous",
+                AuthorityUtils.createAuthorityList("ROLE_ANONYMOUS"));
+        Authentication user = authenticated("ROLE_USER");
+        Authentication admin = authenticated("ROLE_ADMIN");
+
+        assertThat(isGranted(anonymous, "GET", "/api/v1/products")).isTrue();
+        assertThat(isGranted(anonymous, "POST", "/api/v1/users/logout")).isFalse();
+        assertThat(isGranted(user, "POST", "/api/v1/users/logout")).isTrue();
+        assertThat(isGranted(user, "POST", "/api/v1/orders")).isTrue();
+        assertThat(isGranted(admin, "POST", "/api/v1/orders")).isFalse();
+        assertThat(isGranted(user, "DELETE", "/api/v1/products/1")).isFalse();
+        assertThat(isGranted(admin, "DELETE", "/api/v1/products/1")).isTrue();
+        assertThat(isGranted(user, "GET", "/api/v1/order_details/order/1")).isTrue();
+        assertThat(isGranted(admin, "GET", "/api/v1/order_details/order/1")).isTrue();
+    }
+
+    private Access access(String method, String uri) {
+        return routePolicies.accessOf(new MockHttpServletRequest(method, uri));
+    }
+
+    private boolean isGranted(Authentication authentication, String method, String uri) {
+        return routePolicies.check(() -> authentication,
+                new RequestAuthorizationContext(new MockHttpServletRequest(method, uri)))
+                .isGranted();
+    }
+
+    private static Authentication authenticated(String... authorities) {
+        return new UsernamePasswordAuthenticationToken("0912345678", null,
+                Arrays.stream(authorities).map(SimpleGrantedAuthority::new).toList());
+    }
+}
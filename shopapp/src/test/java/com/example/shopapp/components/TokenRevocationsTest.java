@@ -0,0 +1,91 @@
+package com.example.shopapp.components;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.example.shopapp.repositories.TokenRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+class TokenRevocationsTest {
+
+    private static final Instant IN_ONE_HOUR = Instant.now().plus(Duration.ofHours(1));
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final TokenRepository tokenRepository = mock(TokenRepository.class);
+    private final TokenRevocations tokenRevocations = new TokenRevocations(tokenRepository,
+            1000, 100, meterRegistry);
+
+    @Test
+    void aRevokedTokenIsRejectedTheOthersPass() {
+        tokenRevocations.revoked("revoked", IN_ONE_HOUR);
+
+        assertThat(tokenRevocations.isRevoked("revoked")).isTrue();
+        assertThat(tokenRevocations.isRevoked("valid")).isFalse();
+        assertThat(tokenRevocations.isRevoked(null)).isFalse();
+    }
+
+    @Test
+    void beyondTheExpectedTokensNoneIsLostAndNoValidTokenIsRejected() {
+        // the Bloom filter is sized for 1024 entries and rebuilt larger
+        for (int i = 0; i < 5000; ++i) {
+            tokenRevocations.revoked("revoked-" + i, IN_ONE_HOUR);
+        }
+
+        for (int i = 0; i < 5000; ++i) {
+            assertThat(tokenRevocations.isRevoked("revoked-" + i)).isTrue();
+            // a false positive of the filter is settled by the exact map
+            assertThat(tokenRevocations.isRevoked("valid-" + i)).isFalse();
+        }
+        assertThat(meterRegistry.get("jwt.revoked-tokens").gauge().value()).isEqualTo(5000);
+    }
+
+    @Test
+    void expiredTokensArePurgedInBatches() {
+        tokenRevocations.revoked("expired", Instant.now().minusSeconds(1));
+        tokenRevocations.revoked("revoked", IN_ONE_HOUR);
+        // two full batches, then the rest
+        when(tokenRepository.deleteExpired(any(), eq(100))).thenReturn(100, 100, 7);
+
+        tokenRevocations.purge();
+
+        verify(tokenRepository, times(3)).deleteExpired(any(), eq(100));
+        // the parser rejects an expired token, it no longer needs to be in memory
+        assertThat(tokenRevocations.isRevoked("expired")).isFalse();
+        assertThat(tokenRevocations.isRevoked("revoked")).isTrue();
+        assertThat(meterRegistry.get("jwt.revoked-tokens").gauge().value()).isEqualTo(1);
+    }
+
+    @Test
+    void aRevocationOfAnotherNodeIsPickedUpAtTheNextRefresh() {
+        LocalDateTime watermark = LocalDateTime.now().minusMinutes(5);
+        LocalDateTime expiresAt = LocalDateTime.now().plusHours(1);
+        when(tokenRepository.findRevokedSince(any(), any())).thenReturn(
+                List.<Object[]>of(new Object[] {"loaded", expiresAt, watermark}),
+                // committed late by another node: revoked before the watermark, read anyway
+                List.<Object[]>of(new Object[] {"late", expiresAt, watermark.minusSeconds(30)},
+                        new Object[] {"loaded", expiresAt, watermark}));
+
+        tokenRevocations.onApplicationReady();
+        assertThat(tokenRevocations.isRevoked("loaded")).isTrue();
+        assertThat(tokenRevocations.isRevoked("late")).isFalse();
+        tokenRevocations.scheduledRefresh();
+
+        assertThat(tokenRevocations.isRevoked("late")).isTrue();
+        ArgumentCaptor<LocalDateTime> since = ArgumentCaptor.forClass(LocalDateTime.class);
+        verify(tokenRepository, times(2)).findRevokedSince(since.capture(), any());
+        // everything the first time, then one minute before the latest revocation read
+        assertThat(since.getAllValues().get(0)).isEqualTo(LocalDateTime.of(1970, 1, 1, 0, 0));
+        assertThat(since.getAllValues().get(1)).isEqualTo(watermark.minusMinutes(1));
+    }
+}
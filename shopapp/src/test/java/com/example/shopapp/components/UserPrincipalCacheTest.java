@@ -0,0 +1,100 @@
+package com.example.shopapp.components;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.example.shopapp.components.JwtUtils.VerifiedToken;
+import com.example.shopapp.models.Role;
+import com.example.shopapp.models.User;
+import com.example.shopapp.repositories.RoleRepository;
+import com.example.shopapp.repositories.UserRepository;
+import io.jsonwebtoken.Jwts;
+import java.time.Instant;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+
+// A cached principal is evicted on this node when its user or its role is updated or deleted
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:user-principals;MODE=MySQL;DB_CLOSE_DELAY=-1",
+        "spring.datasource.username=sa",
+        "spring.datasource.driver-class-name=org.h2.Driver",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.show-sql=false"
+})
+class UserPrincipalCacheTest {
+
+    @Autowired
+    private UserPrincipalCache userPrincipalCache;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private RoleRepository roleRepository;
+
+    private Role role;
+    private User user;
+    private VerifiedToken token;
+
+    @BeforeEach
+    void insertUser() {
+        userPrincipalCache.invalidateAll();
+        userRepository.deleteAll();
+        role = roleRepository.save(Role.builder().name("user").build());
+        user = userRepository.save(User.builder()
+                .fullName("Customer")
+                .phoneNumber("0912345678")
+                .password("hash")
+                .active(true)
+                .role(role)
+                .build());
+        token = new VerifiedToken(user.getPhoneNumber(), "token id",
+                Instant.now().plusSeconds(60), Jwts.claims().build());
+    }
+
+    @Test
+    void theUserIsReadOnce() {
+        UserPrincipal principal = userPrincipalCache.get(token);
+
+        assertThat(principal.id()).isEqualTo(user.getId());
+        assertThat(userPrincipalCache.get(token)).isSameAs(principal);
+    }
+
+    @Test
+    void anUpdatedUserIsReadAgain() {
+        UserPrincipal principal = userPrincipalCache.get(token);
+        Role admin = roleRepository.save(Role.builder().name("admin").build());
+
+        user.setRole(admin);
+        userRepository.save(user);
+
+        assertThat(userPrincipalCache.get(token)).isNotSameAs(principal);
+        assertThat(userPrincipalCache.get(token).getAuthorities())
+                .extracting(Object::toString)
+                .containsExactly("ROLE_ADMIN");
+    }
+
+    @Test
+    void anUpdatedRoleEvictsItsUsers() {
+        userPrincipalCache.get(token);
+
+        role.setName("customer");
+        roleRepository.save(role);
+
+        assertThat(userPrincipalCache.get(token).getAuthorities())
+                .extracting(Object::toString)
+                .containsExactly("ROLE_CUSTOMER");
+    }
+
+    @Test
+    void aDeletedUserIsRejected() {
+        userPrincipalCache.get(token);
+
+        userRepository.delete(user);
+
+        assertThatThrownBy(() -> userPrincipalCache.get(token))
+                .isInstanceOf(UsernameNotFoundException.class);
+    }
+}
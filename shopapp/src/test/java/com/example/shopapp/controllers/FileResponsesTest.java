@@ -0,0 +1,175 @@
+package com.example.shopapp.controllers;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.example.shopapp.storage.BlobMetadata;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+class FileResponsesTest {
+
+    private static final byte[] CONTENT = "0123456789".getBytes(StandardCharsets.US_ASCII);
+    private static final long LAST_MODIFIED = 1_700_000_000_000L;
+    // "<last modified>-<length>" in hexadecimal
+    private static final String E_TAG = "\"18bcfe56800-a\"";
+
+    @TempDir
+    private Path directory;
+
+    @Test
+    void writesTheWholeFileWithCachingHeaders() throws IOException {
+        MockHttpServletResponse response = writeBuffer(request("GET"));
+
+        assertThat(response.getStatus()).isEqualTo(200);
+        assertThat(response.getContentAsString()).isEqualTo("0123456789");
+        assertThat(response.getContentLengthLong()).isEqualTo(10);
+        assertThat(response.getContentType()).isEqualTo("image/jpeg");
+        assertThat(response.getHeader(HttpHeaders.ETAG)).isEqualTo(E_TAG);
+        assertThat(response.getHeader(HttpHeaders.ACCEPT_RANGES)).isEqualTo("bytes");
+        assertThat(response.getHeader(HttpHeaders.CACHE_CONTROL)).contains("immutable");
+    }
+
+    @Test
+    void writesASingleRange() throws IOException {
+        MockHttpServletResponse response = writeBuffer(range("bytes=2-5"));
+
+        assertThat(response.getStatus()).isEqualTo(206);
+        assertThat(response.getContentAsString()).isEqualTo("2345");
+        assertThat(response.getContentLengthLong()).isEqualTo(4);
+        assertThat(response.getHeader(HttpHeaders.CONTENT_RANGE)).isEqualTo("bytes 2-5/10");
+    }
+
+    @Test
+    void writesOpenAndSuffixRanges() throws IOException {
+        assertThat(writeBuffer(range("bytes=7-")).getContentAsString()).isEqualTo("789");
+        assertThat(writeBuffer(range("bytes=-3")).getContentAsString()).isEqualTo("789");
+        // a last byte past the end is the end of the file
+        MockHttpServletResponse response = writeBuffer(range("bytes=8-100"));
+        assertThat(response.getContentAsString()).isEqualTo("89");
+        assertThat(response.getHeader(HttpHeaders.CONTENT_RANGE)).isEqualTo("bytes 8-9/10");
+    }
+
+    @Test
+    void rejectsARangePastTheEnd() throws IOException {
+        MockHttpServletResponse response = writeBuffer(range("bytes=10-"));
+
+        assertThat(response.getStatus()).isEqualTo(416);
+        assertThat(response.getHeader(HttpHeaders.CONTENT_RANGE)).isEqualTo("bytes */10");
+        assertThat(response.getContentAsByteArray()).isEmpty();
+    }
+
+    @Test
+    void servesTheWholeFileForSeveralOrMalformedRanges() throws IOException {
+        for (String header : new String[] {"bytes=0-1,4-5", "bytes=abc", "lines=1-2"}) {
+            MockHttpServletResponse response = writeBuffer(range(header));
+            assertThat(response.getStatus()).isEqualTo(200);
+            assertThat(response.getContentAsString()).isEqualTo("0123456789");
+        }
+    }
+
+    @Test
+    void ifRangeServesTheRangeOnlyForTheCurrentFile() throws IOException {
+        MockHttpServletRequest current = range("bytes=0-1");
+        current.addHeader(HttpHeaders.IF_RANGE, E_TAG);
+        assertThat(writeBuffer(current).getStatus()).isEqualTo(206);
+
+        MockHttpServletRequest stale = range("bytes=0-1");
+        stale.addHeader(HttpHeaders.IF_RANGE, "\"other\"");
+        MockHttpServletResponse response = writeBuffer(stale);
+        assertThat(response.getStatus()).isEqualTo(200);
+        assertThat(response.getContentAsString()).isEqualTo("0123456789");
+
+        MockHttpServletRequest olderDate = range("bytes=0-1");
+        olderDate.addHeader(HttpHeaders.IF_RANGE, LAST_MODIFIED - 60_000);
+        assertThat(writeBuffer(olderDate).getStatus()).isEqualTo(200);
+    }
+
+    @Test
+    void answersConditionalAndHeadRequestsWithoutBody() throws IOException {
+        MockHttpServletRequest conditional = request("GET");
+        conditional.addHeader(HttpHeaders.IF_NONE_MATCH, E_TAG);
+        MockHttpServletResponse notModified = writeBuffer(conditional);
+        assertThat(notModified.getStatus()).isEqualTo(304);
+        assertThat(notModified.getContentAsByteArray()).isEmpty();
+
+        MockHttpServletResponse head = writeBuffer(request("HEAD"));
+        assertThat(head.getStatus()).isEqualTo(200);
+        assertThat(head.getContentLengthLong()).isEqualTo(10);
+        assertThat(head.getContentAsByteArray()).isEmpty();
+    }
+
+    @Test
+    void writesARangeOfAStream() throws IOException {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        FileResponses.writeStream(range("bytes=3-4"), response, "image.jpg",
+                new BlobMetadata(CONTENT.length, LAST_MODIFIED),
+                offset -> new ByteArrayInputStream(CONTENT, (int) offset,
+                        CONTENT.length - (int) offset));
+
+        assertThat(response.getStatus()).isEqualTo(206);
+        assertThat(response.getContentAsString()).isEqualTo("34");
+    }
+
+    @Test
+    void writesARangeOfALocalFile() throws IOException {
+        Path file = localFile();
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        FileResponses.writeFile(range("bytes=1-3"), response, file);
+
+        assertThat(response.getStatus()).isEqualTo(206);
+        assertThat(response.getContentAsString()).isEqualTo("123");
+    }
+
+    @Test
+    void leavesTheRangeOfALocalFileToSendfile() throws IOException {
+        Path file = localFile();
+        MockHttpServletRequest request = range("bytes=1-3");
+        request.setAttribute("org.apache.tomcat.sendfile.support", true);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        FileResponses.writeFile(request, response, file);
+
+        assertThat(response.getStatus()).isEqualTo(206);
+        assertThat(response.getContentAsByteArray()).isEmpty();
+        assertThat(request.getAttribute("org.apache.tomcat.sendfile.filename"))
+                .isEqualTo(file.toAbsolutePath().toString());
+        assertThat(request.getAttribute("org.apache.tomcat.sendfile.start")).isEqualTo(1L);
+        // exclusive end
+        assertThat(request.getAttribute("org.apache.tomcat.sendfile.end")).isEqualTo(4L);
+    }
+
+    private Path localFile() throws IOException {
+        Path file = Files.write(directory.resolve("image.jpg"), CONTENT);
+        Files.setLastModifiedTime(file, FileTime.fromMillis(LAST_MODIFIED));
+        return file;
+    }
+
+    private static MockHttpServletResponse writeBuffer(MockHttpServletRequest request)
+            throws IOException {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        FileResponses.writeBuffer(request, response, "image.jpg", ByteBuffer.wrap(CONTENT),
+                LAST_MODIFIED);
+        return response;
+    }
+
+    private static MockHttpServletRequest range(String range) {
+        MockHttpServletRequest request = request("GET");
+        request.addHeader(HttpHeaders.RANGE, range);
+        return request;
+    }
+
+    private static MockHttpServletRequest request(String method) {
+        return new MockHttpServletRequest(method, "/api/v1/products/images/image.jpg");
+    }
+}
@@ -0,0 +1,56 @@
+package com.example.shopapp.dtos;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.example.shopapp.exceptions.InvalidParamException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
+import org.junit.jupiter.api.Test;
+
+class ProductCursorTest {
+
+    @Test
+    void decodesWhatItEncodes() throws InvalidParamException {
+        for (ProductCursor cursor : new ProductCursor[] {
+                new ProductCursor(LocalDateTime.of(2024, 10, 1, 10, 0), 123L),
+                // sub-second precision is kept, the next page must not repeat the product
+                new ProductCursor(LocalDateTime.of(2024, 2, 29, 23, 59, 59, 123_456_789),
+                        Long.MAX_VALUE),
+                new ProductCursor(LocalDateTime.of(1970, 1, 1, 0, 0, 1), 1L)}) {
+            assertThat(ProductCursor.decode(cursor.encode())).isEqualTo(cursor);
+        }
+    }
+
+    @Test
+    void tokensAreUrlSafeWithoutPadding() {
+        String token = new ProductCursor(LocalDateTime.of(2024, 10, 1, 10, 0, 0, 1_000),
+                1L).encode();
+
+        assertThat(token).matches("[A-Za-z0-9_-]+");
+    }
+
+    @Test
+    void decodesTheDocumentedExample() throws InvalidParamException {
+        assertThat(ProductCursor.decode("MjAyNC0xMC0wMVQxMDowMDowMHwxMjM"))
+                .isEqualTo(new ProductCursor(LocalDateTime.of(2024, 10, 1, 10, 0), 123L));
+    }
+
+    @Test
+    void rejectsInvalidTokens() {
+        for (String token : new String[] {"", "not base64!", encoded("2024-10-01T10:00"),
+                encoded("yesterday|1"), encoded("2024-10-01T10:00|abc"),
+                encoded("2024-10-01T10:00|")}) {
+            assertThatThrownBy(() -> ProductCursor.decode(token))
+                    .as(token)
+                    .isInstanceOf(InvalidParamException.class)
+                    .hasMessageStartingWith("Invalid cursor");
+        }
+    }
+
+    private static String encoded(String raw) {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,81 @@
+package com.example.shopapp.filters;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.example.shopapp.components.UploadLimiter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.http.HttpServletResponse;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+class UploadAdmissionFilterTest {
+
+    private static final String UPLOAD_URI = "/api/v1/products/uploads/1";
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final UploadLimiter uploadLimiter = new UploadLimiter(1, meterRegistry);
+    private final UploadAdmissionFilter filter = new UploadAdmissionFilter(uploadLimiter,
+            "/api/v1", Duration.ofSeconds(5));
+
+    @Test
+    void rejectsAnUploadWhenAllSlotsAreTaken() throws Exception {
+        AtomicInteger admitted = new AtomicInteger();
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        try (UploadLimiter.Slot slot = uploadLimiter.tryAcquire(1024)) {
+            assertThat(slot).isNotNull();
+
+            filter.doFilter(upload(), response,
+                    (request, servletResponse) -> admitted.incrementAndGet());
+        }
+
+        assertThat(response.getStatus()).isEqualTo(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+        assertThat(response.getHeader(HttpHeaders.RETRY_AFTER)).isEqualTo("5");
+        assertThat(admitted).hasValue(0);
+        assertThat(meterRegistry.get("product.images.uploads.rejected").counter().count())
+                .isEqualTo(1);
+    }
+
+    @Test
+    void releasesTheSlotOnceTheUploadIsDone() throws Exception {
+        AtomicInteger admitted = new AtomicInteger();
+        for (int i = 0; i < 3; ++i) {
+            MockHttpServletResponse response = new MockHttpServletResponse();
+            filter.doFilter(upload(), response, (request, servletResponse) -> {
+                admitted.incrementAndGet();
+                // the slot is held while the upload is processed
+                assertThat(meterRegistry.get("product.images.uploads.active").gauge().value())
+                        .isEqualTo(1);
+            });
+            assertThat(response.getStatus()).isEqualTo(HttpServletResponse.SC_OK);
+        }
+
+        assertThat(admitted).hasValue(3);
+        assertThat(meterRegistry.get("product.images.uploads.active").gauge().value())
+                .isZero();
+        assertThat(meterRegistry.get("product.images.uploads.rejected").counter().count())
+                .isZero();
+    }
+
+    @Test
+    void otherRequestsAreNotCounted() throws Exception {
+        try (UploadLimiter.Slot slot = uploadLimiter.tryAcquire(1024)) {
+            MockHttpServletRequest list = new MockHttpServletRequest("GET", UPLOAD_URI);
+            MockHttpServletResponse response = new MockHttpServletResponse();
+
+            filter.doFilter(list, response, new MockFilterChain());
+
+            assertThat(response.getStatus()).isEqualTo(HttpServletResponse.SC_OK);
+        }
+    }
+
+    private static MockHttpServletRequest upload() {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", UPLOAD_URI);
+        request.setContent(new byte[1024]);
+        return request;
+    }
+}
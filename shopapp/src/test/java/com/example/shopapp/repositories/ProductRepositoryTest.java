@@ -0,0 +1,122 @@
+package com.example.shopapp.repositories;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.example.shopapp.components.CatalogVersions;
+import com.example.shopapp.models.Category;
+import com.example.shopapp.responses.ProductResponse;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+// Keyset pagination of one category: every product exactly once, newest first, and products
+// created at the same time ordered by id
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:product-keyset;MODE=MySQL;DB_CLOSE_DELAY=-1",
+        "spring.datasource.username=sa",
+        "spring.datasource.driver-class-name=org.h2.Driver",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.show-sql=false"
+})
+class ProductRepositoryTest {
+
+    private static final LocalDateTime CREATED_AT = LocalDateTime.of(2024, 10, 1, 10, 0);
+
+    @Autowired
+    private ProductRepository productRepository;
+    @Autowired
+    private CategoryRepository categoryRepository;
+    @Autowired
+    private CatalogVersions catalogVersions;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private Long phonesId;
+    private Long laptopsId;
+
+    @BeforeEach
+    void insertProducts() {
+        jdbcTemplate.update("DELETE FROM products");
+        phonesId = categoryRepository.save(Category.builder().name("Phones").build()).getId();
+        laptopsId = categoryRepository.save(Category.builder().name("Laptops").build()).getId();
+        // the two categories interleaved, with runs of products created in the same second
+        int[] secondsAgo = {0, 0, 0, 5, 5, 9, 12, 12, 12, 12, 30};
+        for (int i = 0; i < secondsAgo.length; ++i) {
+            Timestamp createdAt = Timestamp.valueOf(CREATED_AT.minusSeconds(secondsAgo[i]));
+            jdbcTemplate.update("INSERT INTO products (name, price, category_id, created_at, "
+                    + "updated_at) VALUES (?, ?, ?, ?, ?)", "Product " + i, 10f,
+                    i % 3 == 0 ? laptopsId : phonesId, createdAt, createdAt);
+        }
+    }
+
+    @Test
+    void pagesOfACategoryFollowCreatedAtThenId() {
+        for (int pageSize = 1; pageSize <= 4; ++pageSize) {
+            List<ProductResponse> expected = productRepository.findAll().stream()
+                    .filter(product -> product.getCategory().getId().equals(phonesId))
+                    .map(ProductResponse::fromProduct)
+                    .sorted(Comparator.comparing(ProductResponse::getCreatedAt)
+                            .thenComparing(ProductResponse::getId)
+                            .reversed())
+                    .toList();
+
+            assertThat(readAllPages(phonesId, pageSize))
+                    .as("page size " + pageSize)
+                    .extracting(ProductResponse::getId)
+                    .containsExactlyElementsOf(expected.stream()
+                            .map(ProductResponse::getId)
+                            .toList());
+        }
+    }
+
+    @Test
+    void aPageNeverContainsProductsOfAnotherCategory() {
+        assertThat(readAllPages(laptopsId, 2))
+                .hasSize(4)
+                .allSatisfy(product -> assertThat(product.getCategoryId()).isEqualTo(laptopsId));
+        assertThat(readAllPages(-1L, 2)).isEmpty();
+    }
+
+    @Test
+    void theETagOfACategoryChangesWithItsProductsOnly() {
+        catalogVersions.productsChanged();
+        String phones = catalogVersions.productsETag(phonesId);
+        String laptops = catalogVersions.productsETag(laptopsId);
+        String all = catalogVersions.productsETag(null);
+
+        // a write the application did not make, as on another node
+        jdbcTemplate.update("UPDATE products SET name = 'Renamed', updated_at = ? "
+                + "WHERE category_id = ? AND name = 'Product 1'",
+                Timestamp.valueOf(CREATED_AT.plusSeconds(1)), phonesId);
+        catalogVersions.scheduledRefresh();
+
+        assertThat(catalogVersions.productsETag(phonesId)).isNotEqualTo(phones);
+        assertThat(catalogVersions.productsETag(laptopsId)).isEqualTo(laptops);
+        assertThat(catalogVersions.productsETag(null)).isNotEqualTo(all);
+    }
+
+    private List<ProductResponse> readAllPages(Long categoryId, int pageSize) {
+        List<ProductResponse> products = new ArrayList<>();
+        Slice<ProductResponse> page = productRepository.findFirstPageByCategoryId(categoryId,
+                Pageable.ofSize(pageSize));
+        products.addAll(page.getContent());
+        while (page.hasNext()) {
+            ProductResponse last = products.get(products.size() - 1);
+            page = productRepository.findPageAfterByCategoryId(categoryId, last.getCreatedAt(),
+                    last.getId(), Pageable.ofSize(pageSize));
+            assertThat(page.getContent()).isNotEmpty();
+            products.addAll(page.getContent());
+        }
+        return products;
+    }
+}
@@ -0,0 +1,109 @@
+package com.example.shopapp.repositories;
+
+import com.example.shopapp.models.Category;
+import com.example.shopapp.responses.ProductResponse;
+import java.lang.management.ManagementFactory;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntConsumer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+// Heap and latency of a product listing page, not part of the regular build:
+// mvn test -Dtest=ProductResponseProjectionBenchmark -Dbenchmark=true
+// Entities mapped with ProductResponse.fromProduct (the listing before the projections, with
+// its COUNT(*)) against the ProductResponse constructor expression, on an in-memory database:
+// the difference is the work of Hibernate, the network of a real database is not included.
+// The table is small so that sorting it in H2 does not hide that difference.
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:product-listing;MODE=MySQL;DB_CLOSE_DELAY=-1",
+        "spring.datasource.username=sa",
+        "spring.datasource.driver-class-name=org.h2.Driver",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.show-sql=false"
+})
+class ProductResponseProjectionBenchmark {
+
+    private static final int PRODUCTS = 5_000;
+    private static final int PAGE_SIZE = 100;
+    private static final int PAGES = 2_000;
+
+    @Autowired
+    private ProductRepository productRepository;
+    @Autowired
+    private CategoryRepository categoryRepository;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void compareEntitiesWithTheProjection() {
+        insertProducts();
+        Sort sort = Sort.by("createdAt").descending();
+        // twice, the first round warms up
+        for (int round = 0; round < 2; ++round) {
+            measure("entities + fromProduct", page -> {
+                List<ProductResponse> products = productRepository
+                        .findAll(PageRequest.of(page, PAGE_SIZE, sort))
+                        .map(ProductResponse::fromProduct)
+                        .getContent();
+                check(products);
+            });
+            measure("projection", page -> check(productRepository
+                    .findProductResponses(PageRequest.of(page, PAGE_SIZE, sort))
+                    .getContent()));
+        }
+    }
+
+    private void insertProducts() {
+        List<Long> categoryIds = new ArrayList<>();
+        for (int i = 0; i < 20; ++i) {
+            categoryIds.add(categoryRepository.save(Category.builder()
+                    .name("Category " + i)
+                    .build()).getId());
+        }
+        List<Object[]> rows = new ArrayList<>(PRODUCTS);
+        LocalDateTime now = LocalDateTime.now();
+        for (int i = 0; i < PRODUCTS; ++i) {
+            Timestamp createdAt = Timestamp.valueOf(now.minusSeconds(i));
+            rows.add(new Object[] {"Product " + i, 1f + i % 2000, "thumbnail-" + i + ".jpg",
+                    "Description of the product " + i, categoryIds.get(i % categoryIds.size()),
+                    createdAt, createdAt});
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO products (name, price, thumbnail, description, "
+                + "category_id, created_at, updated_at) VALUES (?, ?, ?, ?, ?, ?, ?)", rows);
+    }
+
+    // pages spread over the first fifth of the table
+    private static void measure(String name, IntConsumer loadPage) {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long[] latencies = new long[PAGES];
+        long allocatedBefore = threads.getCurrentThreadAllocatedBytes();
+        for (int i = 0; i < PAGES; ++i) {
+            long start = System.nanoTime();
+            loadPage.accept(i % (PRODUCTS / PAGE_SIZE / 5));
+            latencies[i] = System.nanoTime() - start;
+        }
+        long allocated = threads.getCurrentThreadAllocatedBytes() - allocatedBefore;
+        Arrays.sort(latencies);
+        System.out.printf("%s: %d KB allocated per page, p50 %.2f ms, p99 %.2f ms%n", name,
+                allocated / PAGES / 1024, latencies[PAGES / 2] / 1e6,
+                latencies[PAGES * 99 / 100] / 1e6);
+    }
+
+    private static void check(List<ProductResponse> products) {
+        if (products.size() != PAGE_SIZE || products.get(0).getCategoryId() == null) {
+            throw new IllegalStateException("Unexpected page of " + products.size());
+        }
+    }
+}
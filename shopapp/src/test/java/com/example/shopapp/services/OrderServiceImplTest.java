@@ -0,0 +1,212 @@
+package com.example.shopapp.services;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.groups.Tuple.tuple;
+
+import com.example.shopapp.dtos.CartItemDTO;
+import com.example.shopapp.dtos.CheckoutDTO;
+import com.example.shopapp.dtos.OrderDTO;
+import com.example.shopapp.exceptions.DataNotFoundException;
+import com.example.shopapp.models.Category;
+import com.example.shopapp.models.Product;
+import com.example.shopapp.models.Role;
+import com.example.shopapp.models.User;
+import com.example.shopapp.repositories.CategoryRepository;
+import com.example.shopapp.repositories.ProductRepository;
+import com.example.shopapp.repositories.RoleRepository;
+import com.example.shopapp.repositories.UserRepository;
+import com.example.shopapp.responses.CheckoutResponse;
+import com.example.shopapp.responses.OrderDetailResponse;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+import javax.sql.DataSource;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+// POST /orders/checkout: prices and totals come from the products, unknown products are
+// rejected before anything is written, and the number of statements does not depend on the
+// number of lines
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:checkout;MODE=MySQL;DB_CLOSE_DELAY=-1",
+        "spring.datasource.username=sa",
+        "spring.datasource.driver-class-name=org.h2.Driver",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.show-sql=false"
+})
+class OrderServiceImplTest {
+
+    // statements prepared on the connections of the application
+    private static final AtomicInteger statements = new AtomicInteger();
+
+    @Autowired
+    private OrderService orderService;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private RoleRepository roleRepository;
+    @Autowired
+    private CategoryRepository categoryRepository;
+    @Autowired
+    private ProductRepository productRepository;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private Long userId;
+    private final List<Long> productIds = new ArrayList<>();
+
+    @BeforeEach
+    void insertUserAndProducts() {
+        Role role = roleRepository.save(Role.builder().name(Role.USER).build());
+        userId = userRepository.save(User.builder()
+                .fullName("Customer")
+                .phoneNumber("0912345678")
+                .password("hash")
+                .active(true)
+                .role(role)
+                .build()).getId();
+        Category category = categoryRepository.save(Category.builder().name("Phones").build());
+        productIds.clear();
+        for (int i = 1; i <= 20; ++i) {
+            productIds.add(productRepository.save(Product.builder()
+                    .name("Phone " + i)
+                    .price(100f * i)
+                    .category(category)
+                    .build()).getId());
+        }
+    }
+
+    @Test
+    void pricesAndTotalsComeFromTheProducts() throws Exception {
+        CheckoutDTO checkoutDTO = checkout(List.of(
+                cartItem(productIds.get(0), 2), cartItem(productIds.get(2), 1)));
+        // whatever the client claims
+        checkoutDTO.getOrder().setTotalMoney(1f);
+
+        CheckoutResponse checkoutResponse = orderService.checkout(checkoutDTO);
+
+        assertThat(checkoutResponse.getOrder().getTotalMoney()).isEqualTo(500f);
+        assertThat(checkoutResponse.getOrderDetails())
+                .extracting(OrderDetailResponse::getPrice, OrderDetailResponse::getTotalMoney)
+                .containsExactly(tuple(100f, 200f), tuple(300f, 300f));
+        // every line got the id of its row
+        for (OrderDetailResponse orderDetail : checkoutResponse.getOrderDetails()) {
+            assertThat(jdbcTemplate.queryForObject(
+                    "SELECT price FROM order_details WHERE id = ?", Float.class,
+                    orderDetail.getId())).isEqualTo(orderDetail.getPrice());
+        }
+        assertThat(jdbcTemplate.queryForObject("SELECT total_money FROM orders WHERE id = ?",
+                Float.class, checkoutResponse.getOrder().getId())).isEqualTo(500f);
+    }
+
+    @Test
+    void unknownProductsAreRejectedBeforeAnyWrite() {
+        long orders = count("orders");
+        long orderDetails = count("order_details");
+
+        assertThatThrownBy(() -> orderService.checkout(checkout(List.of(
+                cartItem(productIds.get(0), 1), cartItem(-1L, 1), cartItem(-2L, 3)))))
+                .isInstanceOf(DataNotFoundException.class)
+                .hasMessageContaining("-1")
+                .hasMessageContaining("-2");
+
+        assertThat(count("orders")).isEqualTo(orders);
+        assertThat(count("order_details")).isEqualTo(orderDetails);
+    }
+
+    @Test
+    void theNumberOfStatementsDoesNotDependOnTheNumberOfLines() throws Exception {
+        int[] statementsPerCheckout = new int[2];
+        int[] lines = {1, 20};
+        for (int i = 0; i < lines.length; ++i) {
+            CheckoutDTO checkoutDTO = checkout(IntStream.range(0, lines[i])
+                    .mapToObj(line -> cartItem(productIds.get(line), 1))
+                    .toList());
+            statements.set(0);
+            CheckoutResponse checkoutResponse = orderService.checkout(checkoutDTO);
+            statementsPerCheckout[i] = statements.get();
+            assertThat(checkoutResponse.getOrderDetails()).hasSize(lines[i]);
+        }
+
+        // the user, the prices, the order and the batch of details
+        assertThat(statementsPerCheckout[0]).isPositive();
+        assertThat(statementsPerCheckout[1]).isEqualTo(statementsPerCheckout[0]);
+    }
+
+    private long count(String table) {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM " + table, Long.class);
+    }
+
+    private CheckoutDTO checkout(List<CartItemDTO> cartItems) {
+        return CheckoutDTO.builder()
+                .order(OrderDTO.builder()
+                        .userId(userId)
+                        .fullName("Customer")
+                        .email("customer@example.com")
+                        .phoneNumber("0912345678")
+                        .address("1 Main Street")
+                        .build())
+                .cartItems(cartItems)
+                .build();
+    }
+
+    private static CartItemDTO cartItem(Long productId, int numberOfProducts) {
+        return CartItemDTO.builder()
+                .productId(productId)
+                .numberOfProducts(numberOfProducts)
+                .build();
+    }
+
+    @TestConfiguration
+    static class StatementCounting {
+
+        // wraps the data source of the application, JPA and JdbcTemplate both go through it
+        @Bean
+        static BeanPostProcessor statementCountingDataSource() {
+            return new BeanPostProcessor() {
+                @Override
+                public Object postProcessAfterInitialization(Object bean, String beanName) {
+                    if (!(bean instanceof DataSource dataSource)) {
+                        return bean;
+                    }
+                    return new DelegatingDataSource(dataSource) {
+                        @Override
+                        public Connection getConnection() throws SQLException {
+                            return counting(super.getConnection());
+                        }
+                    };
+                }
+            };
+        }
+
+        private static Connection counting(Connection connection) {
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                    new Class<?>[] {Connection.class}, (proxy, method, args) -> {
+                        if (method.getName().equals("prepareStatement")
+                                || method.getName().equals("createStatement")
+                                || method.getName().equals("prepareCall")) {
+                            statements.incrementAndGet();
+                        }
+                        try {
+                            return method.invoke(connection, args);
+                        } catch (InvocationTargetException e) {
+                            throw e.getCause();
+                        }
+                    });
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.example.shopapp.services;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.example.shopapp.dtos.ProductImageDTO;
+import com.example.shopapp.exceptions.InvalidParamException;
+import com.example.shopapp.models.Category;
+import com.example.shopapp.models.Product;
+import com.example.shopapp.models.ProductImage;
+import com.example.shopapp.repositories.CategoryRepository;
+import com.example.shopapp.repositories.ProductImageRepository;
+import com.example.shopapp.repositories.ProductRepository;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+// Parallel uploads for one product must never exceed MAXIMUM_IMAGES_PER_PRODUCT:
+// createProductImages locks the product row before counting its images
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:product-images;MODE=MySQL;LOCK_TIMEOUT=10000;"
+                + "DB_CLOSE_DELAY=-1",
+        "spring.datasource.username=sa",
+        "spring.datasource.driver-class-name=org.h2.Driver",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.show-sql=false"
+})
+class ProductImageLimitConcurrencyTest {
+
+    private static final int UPLOADS = 16;
+
+    @Autowired
+    private ProductService productService;
+    @Autowired
+    private CategoryRepository categoryRepository;
+    @Autowired
+    private ProductRepository productRepository;
+    @Autowired
+    private ProductImageRepository productImageRepository;
+
+    private Long productId;
+
+    @BeforeEach
+    void createProduct() {
+        Category category = categoryRepository.save(Category.builder().name("Phones").build());
+        productId = productRepository.save(Product.builder()
+                .name("Phone")
+                .price(100f)
+                .category(category)
+                .build()).getId();
+    }
+
+    @Test
+    void parallelSingleImageUploadsStopAtTheLimit() throws Exception {
+        int accepted = uploadConcurrently(1);
+
+        assertThat(accepted).isEqualTo(ProductImage.MAXIMUM_IMAGES_PER_PRODUCT);
+        assertThat(productImageRepository.countByProductId(productId))
+                .isEqualTo(ProductImage.MAXIMUM_IMAGES_PER_PRODUCT);
+    }
+
+    @Test
+    void parallelBatchUploadsNeverExceedTheLimit() throws Exception {
+        int imagesPerUpload = 2;
+        int accepted = uploadConcurrently(imagesPerUpload);
+
+        // whole batches only: 2 uploads of 2 images, the third would make 6
+        assertThat(accepted)
+                .isEqualTo(ProductImage.MAXIMUM_IMAGES_PER_PRODUCT / imagesPerUpload);
+        assertThat(productImageRepository.countByProductId(productId))
+                .isEqualTo((long) accepted * imagesPerUpload);
+    }
+
+    // Starts all the uploads at the same time, returns the number that succeeded
+    private int uploadConcurrently(int imagesPerUpload) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(UPLOADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Boolean>> uploads = new ArrayList<>(UPLOADS);
+        try {
+            for (int i = 0; i < UPLOADS; ++i) {
+                List<ProductImageDTO> images = IntStream.range(0, imagesPerUpload)
+                        .mapToObj(image -> ProductImageDTO.builder()
+                                .imageUrl("image-" + image + ".jpg")
+                                .build())
+                        .toList();
+                uploads.add(executor.submit(() -> {
+                    start.await();
+                    try {
+                        productService.createProductImages(productId, images);
+                        return true;
+                    } catch (InvalidParamException e) {
+                        // over the limit, the expected failure
+                        return false;
+                    }
+                }));
+            }
+            start.countDown();
+            int accepted = 0;
+            for (Future<Boolean> upload : uploads) {
+                // any other exception fails the test
+                if (upload.get(30, TimeUnit.SECONDS)) {
+                    ++accepted;
+                }
+            }
+            return accepted;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.example.shopapp.services;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.example.shopapp.components.ImageStore;
+import com.example.shopapp.components.ImageVariantPipeline;
+import com.example.shopapp.repositories.ProductImageRepository;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.multipart.MultipartFile;
+
+class ProductImageUploadServiceImplTest {
+
+    private final ProductService productService = mock(ProductService.class);
+    private final ImageStore imageStore = mock(ImageStore.class);
+    private ExecutorService imageUploadExecutor;
+    private ProductImageUploadServiceImpl uploadService;
+
+    @BeforeEach
+    void createService() {
+        imageUploadExecutor = Executors.newFixedThreadPool(2);
+        uploadService = new ProductImageUploadServiceImpl(productService,
+                mock(ProductImageRepository.class), imageUploadExecutor,
+                mock(ImageVariantPipeline.class), imageStore, DataSize.ofMegabytes(10),
+                DataSize.ofMegabytes(10));
+    }
+
+    @AfterEach
+    void stopExecutor() {
+        imageUploadExecutor.shutdownNow();
+    }
+
+    @Test
+    void aFailedFileReleasesTheOthers() throws Exception {
+        when(imageStore.store(any(InputStream.class), eq("a.jpg"))).thenReturn("a");
+        when(imageStore.store(any(InputStream.class), eq("b.jpg")))
+                .thenThrow(new IOException("disk full"));
+
+        assertThatThrownBy(() -> uploadService.uploadImages(1L,
+                List.of(file("a.jpg"), file("b.jpg"))))
+                .isInstanceOf(IOException.class)
+                .hasMessage("disk full");
+
+        verify(imageStore).release("a");
+        verify(productService, never()).createProductImages(any(), any());
+    }
+
+    @Test
+    void anInterruptedUploadReleasesEveryStoredFile() throws Exception {
+        CountDownLatch storing = new CountDownLatch(2);
+        CountDownLatch finishB = new CountDownLatch(1);
+        when(imageStore.store(any(InputStream.class), eq("a.jpg"))).thenAnswer(invocation -> {
+            storing.countDown();
+            return "a";
+        });
+        // a copy that ignores the interrupt and completes after the upload gave up
+        when(imageStore.store(any(InputStream.class), eq("b.jpg"))).thenAnswer(invocation -> {
+            storing.countDown();
+            while (true) {
+                try {
+                    finishB.await();
+                    return "b";
+                } catch (InterruptedException e) {
+                    // keeps copying
+                }
+            }
+        });
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        AtomicBoolean interruptRestored = new AtomicBoolean();
+        Thread request = new Thread(() -> {
+            try {
+                uploadService.uploadImages(1L, List.of(file("a.jpg"), file("b.jpg")));
+            } catch (Exception e) {
+                failure.set(e);
+                interruptRestored.set(Thread.currentThread().isInterrupted());
+            }
+        });
+        request.start();
+        // a is stored and b is being copied
+        storing.await();
+        request.interrupt();
+        request.join(5000);
+
+        assertThat(failure.get()).isInstanceOf(IOException.class)
+                .hasMessage("Upload interrupted");
+        assertThat(interruptRestored).isTrue();
+        verify(imageStore, timeout(5000)).release("a");
+        finishB.countDown();
+        verify(imageStore, timeout(5000)).release("b");
+        verify(productService, never()).createProductImages(any(), any());
+    }
+
+    private static MultipartFile file(String name) {
+        return new MockMultipartFile("files", name, "image/jpeg", new byte[] {1, 2, 3});
+    }
+}
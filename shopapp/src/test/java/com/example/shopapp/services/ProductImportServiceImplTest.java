@@ -0,0 +1,155 @@
+package com.example.shopapp.services;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.groups.Tuple.tuple;
+
+import com.example.shopapp.dtos.CategoryDTO;
+import com.example.shopapp.exceptions.InvalidParamException;
+import com.example.shopapp.responses.ProductImportResponse;
+import com.example.shopapp.responses.ProductImportResponse.BatchProgress;
+import com.example.shopapp.responses.ProductImportResponse.RejectedRow;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+// POST /products/import: CSV and NDJSON parsing, validation of each row, and batches of
+// product.import.batch-size rows where a row the database rejects does not lose the others
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:product-import;MODE=MySQL;DB_CLOSE_DELAY=-1",
+        "spring.datasource.username=sa",
+        "spring.datasource.driver-class-name=org.h2.Driver",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.show-sql=false",
+        "product.import.batch-size=3"
+})
+class ProductImportServiceImplTest {
+
+    @Autowired
+    private ProductImportService productImportService;
+    @Autowired
+    private CategoryService categoryService;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private Long categoryId;
+
+    @BeforeEach
+    void createCategory() {
+        categoryId = categoryService.createCategory(new CategoryDTO("Laptops")).getId();
+    }
+
+    @Test
+    void importsCsvRowsAndRejectsInvalidOnes() throws Exception {
+        // columns in any order, quoted fields with commas and quotes
+        String csv = "category_id,Name,price,description\n"
+                + categoryId + ",\"Laptop 13\"\", silver\",1200.5,\"Light, fast\"\n"
+                + categoryId + ",Laptop 15,abc,\n"
+                + "\n"
+                + categoryId + ",,900,\n"
+                + "999999,Laptop 17,1500,\n"
+                + categoryId + ",Laptop 14,-1,\n"
+                + categoryId + ",Laptop 16,1300,\n";
+
+        ProductImportResponse response = importProducts(csv, ProductImportService.FORMAT_CSV);
+
+        assertThat(response.getImportedRows()).isEqualTo(2);
+        assertThat(response.getRejectedRows()).isEqualTo(4);
+        assertThat(response.getRejected()).extracting(RejectedRow::getLine)
+                .containsExactly(3L, 5L, 6L, 7L);
+        assertThat(response.getRejected()).extracting(RejectedRow::getReason)
+                .satisfiesExactly(
+                        reason -> assertThat(reason).startsWith("Invalid number"),
+                        reason -> assertThat(reason).contains("Product title is required"),
+                        reason -> assertThat(reason)
+                                .isEqualTo("Cannot find category with id: 999999"),
+                        reason -> assertThat(reason)
+                                .isEqualTo("Price must be greater than or equal to 0"));
+        assertThat(products()).containsExactly(
+                Map.of("NAME", "Laptop 13\", silver", "DESCRIPTION", "Light, fast"),
+                Map.of("NAME", "Laptop 16", "DESCRIPTION", ""));
+    }
+
+    @Test
+    void importsNdjsonRowsAndRejectsInvalidOnes() throws Exception {
+        String ndjson = "{\"name\":\"Phone 1\",\"price\":300,\"category_id\":" + categoryId + "}\n"
+                + "{\"name\":\"Phone 2\",\"price\":\n"
+                + "{\"name\":\"Phone 3\",\"category_id\":" + categoryId + "}\n"
+                + "{\"name\":\"Phone 4\",\"price\":400,\"description\":\"Dual SIM\","
+                + "\"category_id\":" + categoryId + "}\n";
+
+        ProductImportResponse response = importProducts(ndjson,
+                ProductImportService.FORMAT_NDJSON);
+
+        assertThat(response.getImportedRows()).isEqualTo(2);
+        // a truncated line and a missing price
+        assertThat(response.getRejected()).extracting(RejectedRow::getLine)
+                .containsExactly(2L, 3L);
+        assertThat(response.getRejected().get(1).getReason()).isEqualTo("Price is required");
+        assertThat(products()).containsExactly(
+                Map.of("NAME", "Phone 1", "DESCRIPTION", ""),
+                Map.of("NAME", "Phone 4", "DESCRIPTION", "Dual SIM"));
+    }
+
+    @Test
+    void aRowTheDatabaseRejectsOnlyLosesThatRow() throws Exception {
+        // the thumbnail column holds 300 characters, which the validation does not check
+        String csv = "name,price,thumbnail,category_id\n"
+                + row("Tablet 1", "") + row("Tablet 2", "x".repeat(400)) + row("Tablet 3", "")
+                + row("Tablet 4", "") + "Tablet 5,oops,," + categoryId + "\n";
+
+        ProductImportResponse response = importProducts(csv, ProductImportService.FORMAT_CSV);
+
+        assertThat(response.getImportedRows()).isEqualTo(3);
+        assertThat(response.getRejected()).extracting(RejectedRow::getLine)
+                .containsExactly(3L, 6L);
+        // the first batch was retried row by row, the second one was inserted at once
+        List<BatchProgress> batches = response.getBatches();
+        assertThat(batches).extracting(BatchProgress::getBatch, BatchProgress::getInsertedRows,
+                        BatchProgress::getRejectedRows, BatchProgress::getTotalInsertedRows)
+                .containsExactly(tuple(1, 2, 1, 2L), tuple(2, 1, 1, 3L));
+        assertThat(batches.get(0).getError()).isNotNull();
+        assertThat(batches.get(1).getError()).isNull();
+        // the rows of the failed batch were not inserted twice
+        assertThat(products()).extracting(product -> product.get("NAME"))
+                .containsExactly("Tablet 1", "Tablet 3", "Tablet 4");
+    }
+
+    @Test
+    void rejectsAnIncompleteCsvHeaderAndUnknownFormats() {
+        assertThatThrownBy(() -> importProducts("name,price\nPhone,1\n",
+                ProductImportService.FORMAT_CSV))
+                .isInstanceOf(InvalidParamException.class)
+                .hasMessage("CSV header must contain name, price and category_id");
+        assertThatThrownBy(() -> importProducts("", ProductImportService.FORMAT_CSV))
+                .isInstanceOf(InvalidParamException.class)
+                .hasMessageStartingWith("Missing CSV header");
+        assertThatThrownBy(() -> importProducts("", "xml"))
+                .isInstanceOf(InvalidParamException.class)
+                .hasMessage("Unsupported import format: xml");
+    }
+
+    private ProductImportResponse importProducts(String body, String format)
+            throws IOException, InvalidParamException {
+        return productImportService.importProducts(
+                new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)), format);
+    }
+
+    private String row(String name, String thumbnail) {
+        return name + ",100," + thumbnail + "," + categoryId + "\n";
+    }
+
+    // the products of the category of the test, in insertion order
+    private List<Map<String, Object>> products() {
+        return jdbcTemplate.queryForList("SELECT name, description FROM products "
+                + "WHERE category_id = ? ORDER BY id", categoryId);
+    }
+}
@@ -0,0 +1,95 @@
+package com.example.shopapp.services;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.example.shopapp.components.CatalogVersions;
+import com.example.shopapp.components.ImageStore;
+import com.example.shopapp.components.ProductCache;
+import com.example.shopapp.components.ProductCounters;
+import com.example.shopapp.components.ProductSearchIndex;
+import com.example.shopapp.dtos.ProductDTO;
+import com.example.shopapp.models.Category;
+import com.example.shopapp.models.Product;
+import com.example.shopapp.repositories.CategoryRepository;
+import com.example.shopapp.repositories.ProductImageRepository;
+import com.example.shopapp.repositories.ProductRepository;
+import com.example.shopapp.responses.ProductResponse;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+class ProductServiceImplTest {
+
+    private final ProductRepository productRepository = mock(ProductRepository.class);
+    private final CategoryRepository categoryRepository = mock(CategoryRepository.class);
+    private final ProductCache productCache = new ProductCache(100, Duration.ofMinutes(10),
+            new SimpleMeterRegistry());
+    private final ProductCounters productCounters = mock(ProductCounters.class);
+    private final ProductSearchIndex productSearchIndex = mock(ProductSearchIndex.class);
+    private final CatalogVersions catalogVersions = new CatalogVersions(productRepository);
+    private final ProductServiceImpl productService = new ProductServiceImpl(productRepository,
+            categoryRepository, mock(ProductImageRepository.class), productCache,
+            productCounters, productSearchIndex, catalogVersions, mock(ImageStore.class));
+
+    @AfterEach
+    void clearSynchronization() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void anUpdateIsVisibleOnlyAfterTheCommit() throws Exception {
+        Category oldCategory = Category.builder().id(1L).name("Old").build();
+        Category newCategory = Category.builder().id(2L).name("New").build();
+        Product product = Product.builder().id(10L).name("Before").price(5f)
+                .category(oldCategory).build();
+        when(productRepository.findById(10L)).thenReturn(Optional.of(product));
+        when(categoryRepository.findById(2L)).thenReturn(Optional.of(newCategory));
+        when(productRepository.save(any())).thenAnswer(invocation -> invocation.getArgument(0));
+        productCache.get(10L, id -> ProductResponse.fromProduct(product));
+        LocalDateTime createdAt = LocalDateTime.of(2024, 10, 1, 10, 0);
+        givenVersions(new Object[] {1L, 1L, createdAt});
+        catalogVersions.productsChanged();
+        String eTag = catalogVersions.productsETag(2L);
+
+        TransactionSynchronizationManager.initSynchronization();
+        productService.updateProduct(10L, ProductDTO.builder().name("After").price(6f)
+                .categoryId(2L).build());
+
+        // before the commit other requests still get the committed product
+        assertThat(productCache.get(10L, id -> null).orElseThrow().getName())
+                .isEqualTo("Before");
+        assertThat(catalogVersions.productsETag(2L)).isEqualTo(eTag);
+        verify(productCounters, never()).move(any(), any());
+        verify(productSearchIndex, never()).index(any());
+
+        // committed: the product moved to category 2
+        givenVersions(new Object[] {2L, 1L, createdAt.plusMinutes(1)});
+        TransactionSynchronizationManager.getSynchronizations()
+                .forEach(TransactionSynchronization::afterCommit);
+
+        ProductResponse updated = productCache.get(10L,
+                id -> ProductResponse.fromProduct(product)).orElseThrow();
+        assertThat(updated.getName()).isEqualTo("After");
+        assertThat(updated.getCategoryId()).isEqualTo(2L);
+        assertThat(catalogVersions.productsETag(2L)).isNotEqualTo(eTag);
+        verify(productCounters).move(1L, 2L);
+        verify(productSearchIndex).index(product);
+    }
+
+    private void givenVersions(Object[]... rows) {
+        when(productRepository.versionGroupByCategory()).thenReturn(List.of(rows));
+    }
+}
@@ -0,0 +1,89 @@
+package com.example.shopapp.services;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.example.shopapp.components.JwtUtils;
+import com.example.shopapp.components.JwtUtils.IssuedToken;
+import com.example.shopapp.components.PasswordHasher;
+import com.example.shopapp.components.TokenRevocations;
+import com.example.shopapp.models.Role;
+import com.example.shopapp.models.User;
+import com.example.shopapp.repositories.RoleRepository;
+import com.example.shopapp.repositories.TokenRepository;
+import com.example.shopapp.repositories.UserRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Optional;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+class UserServiceImplTest {
+
+    // the lowest BCrypt cost, the test counts the checks
+    private final PasswordEncoder passwordEncoder = spy(new BCryptPasswordEncoder(4));
+    private final PasswordHasher passwordHasher = new PasswordHasher(passwordEncoder, 1, 10,
+            Duration.ofSeconds(10), new SimpleMeterRegistry());
+    private final UserRepository userRepository = mock(UserRepository.class);
+    private final JwtUtils jwtUtils = mock(JwtUtils.class);
+    private final TokenRepository tokenRepository = mock(TokenRepository.class);
+    private final UserServiceImpl userService = new UserServiceImpl(userRepository,
+            mock(RoleRepository.class), passwordHasher, jwtUtils, tokenRepository,
+            mock(TokenRevocations.class));
+
+    @AfterEach
+    void shutdown() {
+        passwordHasher.shutdown();
+    }
+
+    @Test
+    void aLoginRunsBCryptOnce() throws Exception {
+        givenUser(passwordEncoder.encode("secret"));
+        when(jwtUtils.generateToken(any())).thenReturn(
+                new IssuedToken("token", "id", Instant.now().plusSeconds(60)));
+
+        assertThat(userService.loginUser("0912345678", "secret")).isEqualTo("token");
+        verify(passwordEncoder, times(1)).matches(anyString(), anyString());
+        verify(tokenRepository).save(any());
+    }
+
+    @Test
+    void wrongPasswordsUnknownUsersAndEmptyHashesCostOneCheck() throws Exception {
+        givenUser(passwordEncoder.encode("secret"));
+        assertThatThrownBy(() -> userService.loginUser("0912345678", "wrong"))
+                .isInstanceOf(BadCredentialsException.class);
+
+        givenUser("");
+        // the empty hash of a Facebook or Google account never matches, even an empty password
+        assertThatThrownBy(() -> userService.loginUser("0912345678", ""))
+                .isInstanceOf(BadCredentialsException.class);
+
+        when(userRepository.findByPhoneNumber("0900000000")).thenReturn(Optional.empty());
+        assertThatThrownBy(() -> userService.loginUser("0900000000", "secret"))
+                .isInstanceOf(BadCredentialsException.class);
+
+        verify(passwordEncoder, times(3)).matches(anyString(), anyString());
+        verify(jwtUtils, never()).generateToken(any());
+    }
+
+    private void givenUser(String encodedPassword) {
+        when(userRepository.findByPhoneNumber("0912345678")).thenReturn(Optional.of(
+                User.builder()
+                        .phoneNumber("0912345678")
+                        .password(encodedPassword)
+                        .role(Role.builder().id(1L).name(Role.USER).build())
+                        .build()));
+    }
+}
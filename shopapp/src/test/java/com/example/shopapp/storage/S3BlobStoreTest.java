@@ -0,0 +1,207 @@
+package com.example.shopapp.storage;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadResponse;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadResponse;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadResponse;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.PutObjectResponse;
+import software.amazon.awssdk.services.s3.model.UploadPartRequest;
+import software.amazon.awssdk.services.s3.model.UploadPartResponse;
+import software.amazon.awssdk.services.s3.presigner.S3Presigner;
+
+// Single and multipart uploads against an in-memory S3Client
+class S3BlobStoreTest {
+
+    private static final int PART_SIZE = 1024;
+    private static final int MULTIPART_THRESHOLD = 2048;
+
+    private final FakeS3Client s3Client = new FakeS3Client();
+    private final S3BlobStore blobStore = new S3BlobStore(s3Client, mock(S3Presigner.class),
+            "images", MULTIPART_THRESHOLD, PART_SIZE);
+
+    @Test
+    void smallBlobsAreUploadedAtOnce() throws IOException {
+        byte[] content = bytes(1000);
+
+        blobStore.put("ab/cd/photo.jpg", new ByteArrayInputStream(content), content.length,
+                "image/jpeg");
+
+        assertThat(s3Client.objects.get("ab/cd/photo.jpg")).isEqualTo(content);
+        assertThat(s3Client.createdUploads).isZero();
+    }
+
+    @Test
+    void aShortStreamIsNotUploaded() {
+        byte[] content = bytes(1000);
+
+        assertThatThrownBy(() -> blobStore.put("photo.jpg", new ByteArrayInputStream(content),
+                1200, "image/jpeg"))
+                .isInstanceOf(IOException.class)
+                .hasMessage("Expected 1200 bytes, got 1000");
+        assertThat(s3Client.objects).isEmpty();
+    }
+
+    @Test
+    void largeBlobsAreUploadedInParts() throws IOException {
+        byte[] content = bytes(2 * PART_SIZE + 100);
+
+        blobStore.put("photo.jpg", new ByteArrayInputStream(content), content.length,
+                "image/jpeg");
+
+        assertThat(s3Client.partSizes).containsExactly(PART_SIZE, PART_SIZE, 100);
+        assertThat(s3Client.objects.get("photo.jpg")).isEqualTo(content);
+        assertThat(s3Client.abortedUploads).isZero();
+    }
+
+    @Test
+    void largeFilesAreUploadedInParts(@TempDir Path directory) throws IOException {
+        byte[] content = bytes(3 * PART_SIZE);
+        Path file = Files.write(directory.resolve("photo.part"), content);
+
+        blobStore.putFile("photo.jpg", file, "image/jpeg");
+
+        assertThat(s3Client.partSizes).containsExactly(PART_SIZE, PART_SIZE, PART_SIZE);
+        assertThat(s3Client.objects.get("photo.jpg")).isEqualTo(content);
+    }
+
+    @Test
+    void aFailedPartAbortsTheUpload() {
+        byte[] content = bytes(3 * PART_SIZE);
+        s3Client.failingPartNumber = 2;
+
+        assertThatThrownBy(() -> blobStore.put("photo.jpg", new ByteArrayInputStream(content),
+                content.length, "image/jpeg"))
+                .isInstanceOf(IOException.class)
+                .hasCauseInstanceOf(SdkClientException.class);
+        assertThat(s3Client.abortedUploads).isEqualTo(1);
+        assertThat(s3Client.parts).isEmpty();
+        assertThat(s3Client.objects).isEmpty();
+    }
+
+    @Test
+    void aShortStreamAbortsTheMultipartUpload() {
+        byte[] content = bytes(PART_SIZE + 500);
+
+        // the first part is sent before the stream ends
+        assertThatThrownBy(() -> blobStore.put("photo.jpg", new ByteArrayInputStream(content),
+                3 * PART_SIZE, "image/jpeg"))
+                .isInstanceOf(IOException.class)
+                .hasMessage("Expected " + 3 * PART_SIZE + " bytes, got " + content.length);
+        assertThat(s3Client.partSizes).containsExactly(PART_SIZE);
+        assertThat(s3Client.abortedUploads).isEqualTo(1);
+        assertThat(s3Client.objects).isEmpty();
+    }
+
+    private static byte[] bytes(int length) {
+        byte[] content = new byte[length];
+        new Random(length).nextBytes(content);
+        return content;
+    }
+
+    // Objects and the parts of the pending multipart uploads, kept in memory
+    private static final class FakeS3Client implements S3Client {
+        private final Map<String, byte[]> objects = new HashMap<>();
+        private final Map<String, List<byte[]>> parts = new HashMap<>();
+        private final List<Integer> partSizes = new ArrayList<>();
+        private int createdUploads = 0;
+        private int abortedUploads = 0;
+        private int failingPartNumber = 0;
+
+        @Override
+        public PutObjectResponse putObject(PutObjectRequest request, RequestBody requestBody) {
+            objects.put(request.key(), read(requestBody));
+            return PutObjectResponse.builder().build();
+        }
+
+        @Override
+        public CreateMultipartUploadResponse createMultipartUpload(
+                CreateMultipartUploadRequest request) {
+            String uploadId = "upload-" + ++createdUploads;
+            parts.put(uploadId, new ArrayList<>());
+            return CreateMultipartUploadResponse.builder().uploadId(uploadId).build();
+        }
+
+        @Override
+        public UploadPartResponse uploadPart(UploadPartRequest request, RequestBody requestBody) {
+            if (request.partNumber() == failingPartNumber) {
+                throw SdkClientException.create("Connection reset");
+            }
+            byte[] part = read(requestBody);
+            partSizes.add(part.length);
+            List<byte[]> uploadParts = parts.get(request.uploadId());
+            assertThat(request.partNumber()).isEqualTo(uploadParts.size() + 1);
+            uploadParts.add(part);
+            return UploadPartResponse.builder().eTag("etag-" + request.partNumber()).build();
+        }
+
+        @Override
+        public CompleteMultipartUploadResponse completeMultipartUpload(
+                CompleteMultipartUploadRequest request) {
+            List<byte[]> uploadParts = parts.remove(request.uploadId());
+            // every part, in order, with the eTag returned for it
+            List<CompletedPart> completedParts = request.multipartUpload().parts();
+            assertThat(completedParts).hasSize(uploadParts.size());
+            for (int i = 0; i < completedParts.size(); ++i) {
+                assertThat(completedParts.get(i).partNumber()).isEqualTo(i + 1);
+                assertThat(completedParts.get(i).eTag()).isEqualTo("etag-" + (i + 1));
+            }
+            int length = uploadParts.stream().mapToInt(part -> part.length).sum();
+            byte[] content = new byte[length];
+            int offset = 0;
+            for (byte[] part : uploadParts) {
+                System.arraycopy(part, 0, content, offset, part.length);
+                offset += part.length;
+            }
+            objects.put(request.key(), content);
+            return CompleteMultipartUploadResponse.builder().build();
+        }
+
+        @Override
+        public AbortMultipartUploadResponse abortMultipartUpload(
+                AbortMultipartUploadRequest request) {
+            parts.remove(request.uploadId());
+            ++abortedUploads;
+            return AbortMultipartUploadResponse.builder().build();
+        }
+
+        @Override
+        public String serviceName() {
+            return "s3";
+        }
+
+        @Override
+        public void close() {
+        }
+
+        private static byte[] read(RequestBody requestBody) {
+            try {
+                return requestBody.contentStreamProvider().newStream().readAllBytes();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}